@@ -17,10 +17,23 @@
 package org.nuxeo.tools.gatling.report;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +48,13 @@ public class App implements Runnable {
 
     protected List<SimulationContext> stats;
 
+    protected SummaryCache summaryCache;
+
+    protected HistoryStore history;
+
+    // shared by all the parsed simulations, so the budget bounds the durations kept until rendering
+    protected HeapBudget heapBudget;
+
     public App(String[] args) {
         options = new Options();
         JCommander command = new JCommander(options, args);
@@ -43,6 +63,11 @@ public class App implements Runnable {
             command.usage();
             System.exit(0);
         }
+        if (options.simulations.isEmpty() && options.history == null) {
+            System.err.println("Missing simulation log");
+            command.usage();
+            System.exit(-1);
+        }
     }
 
     public static void main(String args[]) {
@@ -51,41 +76,238 @@ public class App implements Runnable {
 
     @Override
     public void run() {
+        if (options.transcodeDirectory != null) {
+            transcodeSimulationFiles();
+            return;
+        }
         parseSimulationFiles();
+        recordHistory();
         render();
+        stats.forEach(SimulationContext::release);
     }
 
     protected void parseSimulationFiles() {
         stats = new ArrayList<>(options.simulations.size());
-        options.simulations.forEach(simulation -> parseSimulationFile(new File(simulation)));
+        // cached summaries have no user events to merge
+        summaryCache = options.merge ? null : options.getSummaryCache();
+        // each archive is read once for all its selected simulations
+        Map<File, SimulationArchive> archives = new LinkedHashMap<>();
+        for (String simulation : options.simulations) {
+            if (SimulationArchive.isArchivePath(simulation)) {
+                archives.computeIfAbsent(SimulationArchive.getArchiveFile(simulation), SimulationArchive::new)
+                        .select(simulation);
+            }
+        }
+        heapBudget = HeapBudget.of(options.getMaxHeapBudget());
+        Map<String, List<SimulationContext>> archived = new HashMap<>();
+        archives.values().forEach(archive -> parseSimulationArchive(archive, archived));
+        // logs to merge are parsed concurrently, each one on a single thread
+        ExecutorService executor = options.merge ? Executors.newFixedThreadPool(ParallelGzipInputStream.DEFAULT_THREADS)
+                : null;
+        try {
+            List<CompletableFuture<List<SimulationContext>>> parsed = new ArrayList<>();
+            for (String simulation : options.simulations) {
+                if (SimulationArchive.isArchivePath(simulation)) {
+                    parsed.add(CompletableFuture.completedFuture(
+                            archived.getOrDefault(simulation, Collections.emptyList())));
+                } else if (executor != null) {
+                    parsed.add(CompletableFuture.supplyAsync(() -> parseSimulationFile(new File(simulation)),
+                            executor));
+                } else {
+                    parsed.add(CompletableFuture.completedFuture(parseSimulationFile(new File(simulation))));
+                }
+            }
+            parsed.forEach(contexts -> stats.addAll(contexts.join()));
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        if (options.merge && !stats.isEmpty()) {
+            mergeSimulations();
+        }
     }
 
-    protected void parseSimulationFile(File file) {
+    protected void mergeSimulations() {
+        final long startTime = System.currentTimeMillis();
+        String name = stats.get(0).getSimulationName();
+        stats.stream()
+             .filter(context -> !Objects.equals(name, context.getSimulationName()))
+             .forEach(context -> log.warn("Merging simulation " + context.getSimulationName() + " into " + name));
+        String filePath = stats.stream().map(context -> context.filePath).collect(Collectors.joining(", "));
+        SimulationContext merged = SimulationContext.merge(filePath, stats, heapBudget);
+        log.info("Merged " + stats.size() + " simulations in " + (System.currentTimeMillis() - startTime) + " ms");
+        stats = new ArrayList<>(List.of(merged));
+    }
+
+    protected void transcodeSimulationFiles() {
+        File dir = new File(options.transcodeDirectory);
+        dir.mkdirs();
+        for (String simulation : options.simulations) {
+            File file = new File(simulation);
+            File output = new File(dir, Transcoder.getTranscodedName(file));
+            final long startTime = System.currentTimeMillis();
+            try {
+                Transcoder.transcode(file, output);
+                log.info("Transcoded in " + (System.currentTimeMillis() - startTime) + " ms. File "
+                        + output.getAbsolutePath());
+            } catch (IOException e) {
+                log.error("Can not transcode: " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    protected void recordHistory() {
+        try {
+            history = options.getHistoryStore();
+            if (history == null) {
+                return;
+            }
+            if (options.getRequestFilter() != null || options.getFrom() != Long.MIN_VALUE
+                    || options.getTo() != Long.MAX_VALUE) {
+                // partial runs would be compared with full ones in trends
+                log.warn("Filtered or windowed simulations are not recorded in history " + options.history);
+                return;
+            }
+            for (SimulationContext stat : stats) {
+                if (history.append(stat)) {
+                    log.info("Run " + stat.getSimulationName() + " recorded in history " + options.history);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Can not record history: " + options.history, e);
+        }
+    }
+
+    /**
+     * Returns the parsed simulation, or nothing when the file is invalid.
+     */
+    protected List<SimulationContext> parseSimulationFile(File file) {
         final long startTime = System.currentTimeMillis();
         log.info("Parsing " + file.getAbsolutePath());
         try {
-            SimulationParser parser = ParserFactory.getParser(file, options.apdexT);
-            stats.add(parser.parse());
+            SimulationParser parser = ParserFactory.getParser(file, options.apdexT)
+                                                   .setTimeIndex(options.getTimeIndexFile(file));
+            if (options.merge) {
+                parser.setThreads(1);
+            }
+            SimulationContext ret = parse(parser, summaryCache);
             final long endTime = System.currentTimeMillis();
             log.info("Parsing finished in " + (endTime - startTime) + " ms. File " + file.getAbsolutePath());
+            return List.of(ret);
         } catch (IOException e) {
             log.error("Invalid file: " + file.getAbsolutePath(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Parses the selected simulations of an archive in a single pass, contexts are grouped by selecting path.
+     */
+    protected void parseSimulationArchive(SimulationArchive archive, Map<String, List<SimulationContext>> contexts) {
+        final long startTime = System.currentTimeMillis();
+        log.info("Parsing archive " + archive.getFile().getAbsolutePath());
+        try {
+            archive.read(options.apdexT, (selection, parser) -> {
+                try {
+                    contexts.computeIfAbsent(selection, k -> new ArrayList<>()).add(parse(parser, null));
+                } catch (IOException e) {
+                    log.error("Invalid file: " + parser.file.getPath(), e);
+                }
+            });
+            final long endTime = System.currentTimeMillis();
+            log.info("Parsing finished in " + (endTime - startTime) + " ms. Archive "
+                    + archive.getFile().getAbsolutePath());
+        } catch (IOException e) {
+            log.error("Invalid archive: " + archive.getFile().getAbsolutePath(), e);
+        }
+    }
+
+    protected SimulationContext parse(SimulationParser parser, SummaryCache cache) throws IOException {
+        parser.setHeapBudget(heapBudget)
+              .setFilter(options.getRequestFilter())
+              .setTimeWindow(options.getFrom(), options.getTo())
+              .setMergeable(options.merge);
+        File recordFile = options.getRecordFile(parser.file);
+        try (RecordWriter records = recordFile == null ? null : new RecordWriter(recordFile)) {
+            parser.setRecordListener(records);
+            SimulationContext context = cache == null ? parser.parse() : cache.parse(parser);
+            if (records != null) {
+                records.setContext(context);
+                log.info("Requests exported to " + recordFile.getAbsolutePath());
+            }
+            return context;
         }
     }
 
     protected void render() {
-        if (options.outputDirectory == null) {
+        Set<Report.Format> formats = options.getFormats();
+        if (!formats.isEmpty()) {
+            renderFormats(formats);
+        } else if (options.outputDirectory == null) {
             renderAsCsv();
         } else {
             try {
-                renderAsReport();
+                renderReport(createOutputDirectory(), options.yaml, options.outputName);
             } catch (IOException e) {
                 log.error("Can not generate report", e);
             }
         }
     }
 
-    protected void renderAsReport() throws IOException {
+    /**
+     * Renders all the formats from the parsed simulations, each renderer on its own thread except HTML and YAML that
+     * share the template contexts and are rendered one after the other.
+     */
+    protected void renderFormats(Set<Report.Format> formats) {
+        if (options.outputDirectory == null) {
+            log.error("An output directory is required to render " + formats);
+            return;
+        }
+        File dir = createOutputDirectory();
+        String name = getOutputBaseName();
+        List<Runnable> renderers = new ArrayList<>();
+        if (formats.contains(Report.Format.HTML) || formats.contains(Report.Format.YAML)) {
+            renderers.add(() -> {
+                for (Report.Format format : List.of(Report.Format.HTML, Report.Format.YAML)) {
+                    if (formats.contains(format)) {
+                        try {
+                            renderReport(dir, format == Report.Format.YAML, name + "." + format.getExtension());
+                        } catch (IOException e) {
+                            log.error("Can not generate " + format + " report", e);
+                        }
+                    }
+                }
+            });
+        }
+        if (formats.contains(Report.Format.CSV)) {
+            String extension = Report.Format.CSV.getExtension() + (options.csvGzip ? ".gz" : "");
+            renderers.add(() -> renderAsCsv(new File(dir, name + "." + extension)));
+        }
+        if (formats.contains(Report.Format.JSON)) {
+            renderers.add(() -> renderAsJson(new File(dir, name + "." + Report.Format.JSON.getExtension())));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(renderers.size());
+        try {
+            CompletableFuture.allOf(renderers.stream()
+                                             .map(renderer -> CompletableFuture.runAsync(renderer, executor))
+                                             .toArray(CompletableFuture[]::new))
+                             .join();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the report file name without extension, shared by all the formats.
+     */
+    protected String getOutputBaseName() {
+        String name = options.outputName == null ? Report.DEFAULT_FILENAME : options.outputName;
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    protected File createOutputDirectory() {
         File dir = new File(options.outputDirectory);
         if (!dir.mkdirs()) {
             if (!options.force) {
@@ -94,20 +316,61 @@ public class App implements Runnable {
             }
             log.warn("Overriding existing report directory" + options.outputDirectory);
         }
+        return dir;
+    }
+
+    protected void renderReport(File dir, boolean yaml, String filename) throws IOException {
         String reportPath = new Report(stats).setOutputDirectory(dir)
+                                             .setHistory(history)
                                              .includeJs(options.includeJs)
                                              .setTemplate(options.template)
                                              .includeGraphite(options.graphiteUrl, options.user, options.password,
                                                      options.getZoneId())
-                                             .yamlReport(options.yaml)
+                                             .setGraphiteCache(options.getGraphiteCacheDirectory())
+                                             .yamlReport(yaml)
                                              .withMap(options.map)
-                                             .setFilename(options.outputName)
+                                             .setFilename(filename)
+                                             .setChartData(options.getChartDataMode())
+                                             .setChartPoints(options.chartPoints)
+                                             .multiPage(options.multiPage)
+                                             .setPrecompression(options.getPrecompression())
+                                             .setAssetDirectory(options.getAssetDirectory())
                                              .create();
         log.info("Report generated: " + reportPath);
     }
 
+    protected void renderAsCsv(File file) {
+        // a gzipped CSV is not compressed again
+        try (CsvWriter out = new CsvWriter(options.csvGzip ? new FileOutputStream(file)
+                : PrecompressedOutputStream.open(file, options.getPrecompression()), options.csvGzip)) {
+            writeCsv(out);
+            log.info("CSV generated: " + file.getAbsolutePath());
+        } catch (IOException e) {
+            log.error("Can not write CSV: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    protected void renderAsJson(File file) {
+        try (OutputStream out = PrecompressedOutputStream.open(file, options.getPrecompression())) {
+            new JsonReport(stats).setHistory(history).write(out);
+            log.info("JSON generated: " + file.getAbsolutePath());
+        } catch (IOException e) {
+            log.error("Can not write JSON: " + file.getAbsolutePath(), e);
+        }
+    }
+
     protected void renderAsCsv() {
-        System.out.println(RequestStat.header());
-        stats.forEach(System.out::println);
+        try (CsvWriter out = new CsvWriter(CloseShieldOutputStream.wrap(System.out), options.csvGzip)) {
+            writeCsv(out);
+        } catch (IOException e) {
+            log.error("Can not write CSV", e);
+        }
+    }
+
+    protected void writeCsv(CsvWriter out) throws IOException {
+        out.writeHeader();
+        for (SimulationContext stat : stats) {
+            out.write(stat);
+        }
     }
 }
@@ -0,0 +1,201 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Box plot statistics of request durations, rendered with the Plotly precomputed box API so the report size does not
+ * depend on the number of requests.
+ * <p>
+ * Quartiles follow the percentile estimation of {@link RequestStat}, fences are the extreme durations within 1.5 IQR
+ * of the quartiles. Durations outside of the fences are outliers, an evenly spaced sample including the extremes is
+ * kept when there are too many.
+ *
+ * @since 7.0
+ */
+public class BoxStat {
+    public static final int MAX_OUTLIERS = 1000;
+
+    protected static final double WHISKER = 1.5;
+
+    protected static final long[] NO_OUTLIER = new long[0];
+
+    protected double q1, median, q3, lowerFence, upperFence, mean, sd;
+
+    protected long[] outliers = NO_OUTLIER;
+
+    /**
+     * Computes the box with two passes over the sorted durations, plus one to sample the outliers if any.
+     */
+    public static BoxStat of(DurationStore durations, double mean, double sd, int maxOutliers) {
+        BoxStat ret = new BoxStat();
+        ret.mean = round(mean);
+        ret.sd = round(sd);
+        long n = durations.count();
+        if (n == 0) {
+            return ret;
+        }
+        try {
+            double[] quartiles = quartiles(durations, n);
+            ret.q1 = round(quartiles[0]);
+            ret.median = round(quartiles[1]);
+            ret.q3 = round(quartiles[2]);
+            double iqr = quartiles[2] - quartiles[0];
+            double lowerLimit = quartiles[0] - WHISKER * iqr;
+            double upperLimit = quartiles[2] + WHISKER * iqr;
+            long lowerFence = Long.MAX_VALUE;
+            long upperFence = Long.MIN_VALUE;
+            long count = 0;
+            try (DurationStore.SortedCursor cursor = durations.sortedCursor()) {
+                while (cursor.hasNext()) {
+                    long value = cursor.next();
+                    if (value < lowerLimit || value > upperLimit) {
+                        count++;
+                    } else {
+                        lowerFence = Math.min(lowerFence, value);
+                        upperFence = Math.max(upperFence, value);
+                    }
+                }
+            }
+            ret.lowerFence = lowerFence;
+            ret.upperFence = upperFence;
+            if (count > 0 && maxOutliers > 0) {
+                ret.outliers = sampleOutliers(durations, lowerLimit, upperLimit, count, maxOutliers);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not read spilled durations", e);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the 25th, 50th and 75th percentiles estimated like commons-math {@code Percentile}.
+     */
+    protected static double[] quartiles(DurationStore durations, long n) throws IOException {
+        double[] percentiles = { 25.0, 50.0, 75.0 };
+        long[] lowerRanks = new long[percentiles.length];
+        double[] lowers = new double[percentiles.length];
+        double[] uppers = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            double pos = percentiles[i] * (n + 1) / 100;
+            lowerRanks[i] = pos < 1 ? 0 : Math.min(n - 1, (long) Math.floor(pos) - 1);
+        }
+        double min = 0;
+        double max = 0;
+        try (DurationStore.SortedCursor cursor = durations.sortedCursor()) {
+            long rank = 0;
+            while (cursor.hasNext()) {
+                double value = cursor.next();
+                if (rank == 0) {
+                    min = value;
+                }
+                max = value;
+                for (int i = 0; i < percentiles.length; i++) {
+                    if (rank == lowerRanks[i]) {
+                        lowers[i] = value;
+                    }
+                    if (rank == lowerRanks[i] + 1) {
+                        uppers[i] = value;
+                    }
+                }
+                rank++;
+            }
+        }
+        double[] ret = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            double pos = percentiles[i] * (n + 1) / 100;
+            if (n == 1 || pos < 1) {
+                ret[i] = min;
+            } else if (pos >= n) {
+                ret[i] = max;
+            } else {
+                ret[i] = lowers[i] + (pos - Math.floor(pos)) * (uppers[i] - lowers[i]);
+            }
+        }
+        return ret;
+    }
+
+    protected static long[] sampleOutliers(DurationStore durations, double lowerLimit, double upperLimit, long count,
+            int maxOutliers) throws IOException {
+        int size = (int) Math.min(count, maxOutliers);
+        long[] ret = new long[size];
+        try (DurationStore.SortedCursor cursor = durations.sortedCursor()) {
+            long index = 0;
+            int next = 0;
+            while (cursor.hasNext() && next < size) {
+                long value = cursor.next();
+                if (value >= lowerLimit && value <= upperLimit) {
+                    continue;
+                }
+                // index of the outlier kept at this position, the first and the last are always kept
+                long kept = size == 1 ? 0 : Math.round((double) next * (count - 1) / (size - 1));
+                if (index++ == kept) {
+                    ret[next++] = value;
+                }
+            }
+        }
+        return ret;
+    }
+
+    protected static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    public double getQ1() {
+        return q1;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+
+    public double getQ3() {
+        return q3;
+    }
+
+    public double getLowerFence() {
+        return lowerFence;
+    }
+
+    public double getUpperFence() {
+        return upperFence;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getSd() {
+        return sd;
+    }
+
+    /**
+     * Returns the outliers as a JavaScript array.
+     */
+    public String getOutliers() {
+        StringBuilder ret = new StringBuilder("[");
+        for (int i = 0; i < outliers.length; i++) {
+            if (i > 0) {
+                ret.append(',');
+            }
+            ret.append(outliers[i]);
+        }
+        return ret.append(']').toString();
+    }
+}
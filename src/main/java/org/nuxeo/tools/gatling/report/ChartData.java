@@ -0,0 +1,304 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Chart series of a report, rendered as JavaScript array literals or packed into a compressed binary payload.
+ * <p>
+ * The payload holds typed arrays: a type byte, a little endian int32 length and the little endian values, the whole
+ * payload is gzipped then base64 encoded, embedded in the report or written next to it. Templates get a reference to
+ * the decoded typed array instead of a literal, chart code must run in the {@code onReportData(function (payload) {})}
+ * callback defined by {@link #getLoader()}, and {@link #getPayload()} must be rendered after all the series.
+ * <p>
+ * Over-time series are rendered as a {@link #pyramid(long[], double[], double[], int) pyramid} of resolutions, the
+ * loader plots the coarsest level and switches to finer levels on zoom, keeping each trace under the point budget.
+ *
+ * @since 7.0
+ */
+public class ChartData {
+    public enum Mode {
+        /** JavaScript array literals */
+        INLINE,
+        /** base64 payload embedded in the report */
+        EMBEDDED,
+        /** base64 payload in a script next to the report */
+        FILE
+    }
+
+    protected static final byte INT32 = 1;
+
+    protected static final byte FLOAT32 = 2;
+
+    protected static final byte FLOAT64 = 3;
+
+    protected static final String LOADER = "/html/chart-data.js";
+
+    public static final int DEFAULT_POINTS = 2000;
+
+    // resolution ratio between two levels of a pyramid
+    protected static final int LEVEL_RATIO = 4;
+
+    protected final Mode mode;
+
+    protected final File file;
+
+    protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    protected int count;
+
+    protected int points = DEFAULT_POINTS;
+
+    protected Set<Compression> precompression = EnumSet.noneOf(Compression.class);
+
+    public ChartData() {
+        this(Mode.INLINE, null);
+    }
+
+    /**
+     * @param file the payload script written in {@link Mode#FILE} mode, referenced by its name
+     */
+    public ChartData(Mode mode, File file) {
+        if (mode == Mode.FILE && file == null) {
+            throw new IllegalArgumentException("A file is required to write chart data");
+        }
+        this.mode = mode;
+        this.file = file;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isInline() {
+        return mode == Mode.INLINE;
+    }
+
+    /**
+     * Sets the maximum number of points plotted per over-time trace.
+     */
+    public ChartData setPoints(int points) {
+        if (points < 3) {
+            throw new IllegalArgumentException("At least 3 points per trace are required: " + points);
+        }
+        this.points = points;
+        return this;
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    /**
+     * Also writes compressed variants of the payload script in {@link Mode#FILE} mode.
+     */
+    public ChartData setPrecompression(Set<Compression> precompression) {
+        this.precompression = precompression;
+        return this;
+    }
+
+    /**
+     * Returns the epoch time shifted to the system default zone, so it matches the report dates once plotted.
+     */
+    public static long toLocalTime(long time) {
+        return toLocalTime(time, ZoneId.systemDefault().getRules());
+    }
+
+    protected static long toLocalTime(long time, ZoneRules rules) {
+        return time + rules.getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() * 1000L;
+    }
+
+    public String ints(int[] values, int length) {
+        if (isInline()) {
+            StringBuilder ret = new StringBuilder("[");
+            for (int i = 0; i < length; i++) {
+                appendSeparator(ret, i).append(values[i]);
+            }
+            return ret.append(']').toString();
+        }
+        ByteBuffer bytes = allocate(INT32, length, Integer.BYTES);
+        for (int i = 0; i < length; i++) {
+            bytes.putInt(values[i]);
+        }
+        return add(bytes);
+    }
+
+    /**
+     * Values rounded to one decimal, {@code NaN} is rendered as {@code null} which makes a gap in a chart.
+     */
+    public String floats(double[] values, int length) {
+        if (isInline()) {
+            StringBuilder ret = new StringBuilder("[");
+            for (int i = 0; i < length; i++) {
+                appendSeparator(ret, i);
+                if (Double.isNaN(values[i])) {
+                    ret.append("null");
+                } else {
+                    ret.append(Math.round(values[i] * 10) / 10.0);
+                }
+            }
+            return ret.append(']').toString();
+        }
+        ByteBuffer bytes = allocate(FLOAT32, length, Float.BYTES);
+        for (int i = 0; i < length; i++) {
+            bytes.putFloat((float) values[i]);
+        }
+        return add(bytes);
+    }
+
+    /**
+     * Epoch milliseconds or any value needing a double precision.
+     */
+    public String longs(long[] values, int length) {
+        if (isInline()) {
+            StringBuilder ret = new StringBuilder("[");
+            for (int i = 0; i < length; i++) {
+                appendSeparator(ret, i).append(values[i]);
+            }
+            return ret.append(']').toString();
+        }
+        ByteBuffer bytes = allocate(FLOAT64, length, Double.BYTES);
+        for (int i = 0; i < length; i++) {
+            bytes.putDouble(values[i]);
+        }
+        return add(bytes);
+    }
+
+    /**
+     * Renders a series as an array of levels from the coarsest to the full resolution, each level being an array of
+     * x, y and the optional errors. Levels are downsampled with {@link Downsampler#lttb} to the point budget, then
+     * to {@value #LEVEL_RATIO} times more points until the full resolution is reached, so the finer levels add about a
+     * third to the size of the series.
+     */
+    public String pyramid(long[] x, double[] y, double[] errors, int length) {
+        int valid = 0;
+        for (int i = 0; i < length; i++) {
+            if (!Double.isNaN(y[i])) {
+                valid++;
+            }
+        }
+        List<String> levels = new ArrayList<>();
+        for (long budget = points; budget < valid; budget *= LEVEL_RATIO) {
+            levels.add(level(x, y, errors, Downsampler.lttb(x, y, length, (int) budget)));
+        }
+        // the full resolution keeps the gaps
+        int[] all = new int[length];
+        for (int i = 0; i < length; i++) {
+            all[i] = i;
+        }
+        levels.add(level(x, y, errors, all));
+        return "[" + String.join(",", levels) + "]";
+    }
+
+    protected String level(long[] x, double[] y, double[] errors, int[] indices) {
+        long[] levelX = new long[indices.length];
+        double[] levelY = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            levelX[i] = x[indices[i]];
+            levelY[i] = y[indices[i]];
+        }
+        String ret = "[" + longs(levelX, levelX.length) + "," + floats(levelY, levelY.length);
+        if (errors != null) {
+            double[] levelErrors = new double[indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                levelErrors[i] = errors[indices[i]];
+            }
+            ret += "," + floats(levelErrors, levelErrors.length);
+        }
+        return ret + "]";
+    }
+
+    protected static ByteBuffer allocate(byte type, int length, int size) {
+        ByteBuffer ret = ByteBuffer.allocate(1 + Integer.BYTES + length * size).order(ByteOrder.LITTLE_ENDIAN);
+        return ret.put(type).putInt(length);
+    }
+
+    protected String add(ByteBuffer bytes) {
+        buffer.write(bytes.array(), 0, bytes.position());
+        return String.format(Locale.ENGLISH, "payload[%d]", count++);
+    }
+
+    protected static StringBuilder appendSeparator(StringBuilder sb, int i) {
+        if (i > 0) {
+            sb.append(',');
+        }
+        return sb;
+    }
+
+    /**
+     * Returns the script defining {@code onReportData} and the pyramid helpers, to be rendered before the chart code.
+     */
+    public String getLoader() {
+        try (InputStream in = getClass().getResourceAsStream(LOADER)) {
+            return "<script>\n" + new String(in.readAllBytes(), StandardCharsets.UTF_8) + "</script>";
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not read " + LOADER, e);
+        }
+    }
+
+    /**
+     * Returns the element holding the payload of the series rendered so far, writes the payload script in
+     * {@link Mode#FILE} mode.
+     */
+    public String getPayload() {
+        switch (mode) {
+        case EMBEDDED:
+            return "<script id=\"report-data\" type=\"application/octet-stream\">" + encode() + "</script>";
+        case FILE:
+            try (OutputStream out = PrecompressedOutputStream.open(file, precompression)) {
+                out.write(("window.reportData = \"" + encode() + "\";\n").getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can not write chart data: " + file.getAbsolutePath(), e);
+            }
+            return "<script src=\"" + file.getName() + "\"></script>";
+        default:
+            return "";
+        }
+    }
+
+    /**
+     * Returns the gzipped payload encoded in base64.
+     */
+    public String encode() {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(32, buffer.size() / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            buffer.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(compressed.toByteArray());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Compression of a simulation log, detected from its first bytes whatever the file name.
+ *
+ * @since 7.0
+ */
+public enum Compression {
+    NONE, GZIP, ZSTD, LZ4;
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    // moderate levels, compression runs while the report is written, higher levels cost much more time for a few
+    // percent of ratio
+    protected static final int GZIP_LEVEL = 6;
+
+    protected static final int ZSTD_LEVEL = 6;
+
+    /**
+     * Returns the compression of a name like {@code gzip} or an extension like {@code gz}.
+     */
+    public static Compression of(String name) {
+        String value = name.trim().toLowerCase(Locale.ENGLISH);
+        for (Compression compression : values()) {
+            if (compression != NONE && (value.equals(compression.name().toLowerCase(Locale.ENGLISH))
+                    || value.equals(compression.getExtension()))) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Invalid compression: " + name);
+    }
+
+    /**
+     * Returns the extension of a compressed file, without the dot.
+     */
+    public String getExtension() {
+        switch (this) {
+        case GZIP:
+            return "gz";
+        case ZSTD:
+            return "zst";
+        case LZ4:
+            return "lz4";
+        default:
+            return "";
+        }
+    }
+
+    /**
+     * Compresses into the stream with this format at a moderate level, the returned stream must be closed to complete the
+     * compressed content.
+     */
+    public OutputStream compress(OutputStream out) throws IOException {
+        switch (this) {
+        case GZIP:
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(GZIP_LEVEL);
+                }
+            };
+        case ZSTD:
+            return new ZstdOutputStream(out, ZSTD_LEVEL);
+        case LZ4:
+            return new FramedLZ4CompressorOutputStream(out);
+        default:
+            return out;
+        }
+    }
+
+    public static Compression of(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return of(in.readNBytes(4));
+        }
+    }
+
+    protected static Compression of(byte[] magic) {
+        if (magic.length >= 2 && magic[0] == 0x1f && magic[1] == (byte) 0x8b) {
+            return GZIP;
+        }
+        if (magic.length < 4) {
+            return NONE;
+        }
+        if (magic[0] == 0x28 && magic[1] == (byte) 0xb5 && magic[2] == 0x2f && magic[3] == (byte) 0xfd) {
+            return ZSTD;
+        }
+        if (magic[0] == 0x04 && magic[1] == 0x22 && magic[2] == 0x4d && magic[3] == 0x18) {
+            return LZ4;
+        }
+        return NONE;
+    }
+
+    /**
+     * Opens the uncompressed content of a file, decompressed on the calling thread.
+     */
+    public static InputStream open(File file) throws IOException {
+        return of(file).open(file, 1);
+    }
+
+    /**
+     * Opens the uncompressed content of a file compressed with this format, gzip members are decompressed with up to
+     * {@code threads} threads.
+     */
+    public InputStream open(File file, int threads) throws IOException {
+        switch (this) {
+        case NONE:
+            return new FileInputStream(file);
+        case GZIP:
+            return GzipMembers.open(file, threads);
+        default:
+            InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+            try {
+                return open(in);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Decompresses a stream compressed with this format.
+     */
+    public InputStream open(InputStream in) throws IOException {
+        switch (this) {
+        case GZIP:
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        case ZSTD:
+            return new ZstdCompressorInputStream(in);
+        case LZ4:
+            // concatenated frames are read like gzip members
+            return new FramedLZ4CompressorInputStream(in, true);
+        default:
+            return in;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the CSV stats byte for byte like {@link RequestStat#toString()} and {@link RequestStat#header()}, without
+ * {@code String.format}: rows are encoded into a reused byte buffer and numbers are formatted by hand.
+ * <p>
+ * Two decimals values are rounded half up like {@link java.util.Formatter}, values too close to a tie to be decided
+ * in double precision fall back to {@link BigDecimal}.
+ *
+ * @since 7.0
+ */
+public class CsvWriter implements Closeable {
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // values formatted without BigDecimal, below it the tie window is far above the rounding errors
+    protected static final double FAST_LIMIT = 1e7;
+
+    protected static final double TIE_WINDOW = 1e-5;
+
+    protected final OutputStream out;
+
+    protected final byte[] buffer = new byte[BUFFER_SIZE];
+
+    protected final byte[] digits = new byte[20];
+
+    protected int position;
+
+    public CsvWriter(OutputStream out) throws IOException {
+        this(out, false);
+    }
+
+    /**
+     * @param gzip compresses the output
+     */
+    public CsvWriter(OutputStream out, boolean gzip) throws IOException {
+        this.out = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+    }
+
+    public CsvWriter writeHeader() throws IOException {
+        writeString(RequestStat.header());
+        writeString(LINE_SEPARATOR);
+        return this;
+    }
+
+    /**
+     * Writes the simulation stat followed by its requests, like the line printed for the context.
+     */
+    public CsvWriter write(SimulationContext context) throws IOException {
+        writeRow(context.simStat);
+        for (RequestStat request : context.getRequests()) {
+            writeByte('\n');
+            writeRow(request);
+        }
+        writeString(LINE_SEPARATOR);
+        return this;
+    }
+
+    protected void writeRow(RequestStat stat) throws IOException {
+        writeString(stat.simulation);
+        writeByte('\t');
+        writeString(stat.scenario);
+        writeByte('\t');
+        writeLong(stat.maxUsers);
+        writeByte('\t');
+        writeString(stat.request);
+        writeByte('\t');
+        writeLong(stat.start);
+        writeByte('\t');
+        writeString(stat.startDate);
+        writeByte('\t');
+        writeDecimal(stat.duration);
+        writeByte('\t');
+        writeLong(stat.end);
+        writeByte('\t');
+        writeLong(stat.count);
+        writeByte('\t');
+        writeLong(stat.successCount);
+        writeByte('\t');
+        writeLong(stat.errorCount);
+        writeByte('\t');
+        writeLong(stat.min);
+        writeByte('\t');
+        writeLong(stat.p50);
+        writeByte('\t');
+        writeLong(stat.p90);
+        writeByte('\t');
+        writeLong(stat.p95);
+        writeByte('\t');
+        writeLong(stat.p99);
+        writeByte('\t');
+        writeLong(stat.max);
+        writeByte('\t');
+        writeDecimal(stat.avg);
+        writeByte('\t');
+        writeLong(stat.stddev);
+        writeByte('\t');
+        writeDecimal(stat.rps);
+        writeByte('\t');
+        // a float is formatted as the double it widens to
+        writeDecimal(stat.apdex.getScore());
+        writeByte('\t');
+        writeString(String.valueOf(stat.apdex.getRating()));
+    }
+
+    protected void writeByte(int value) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    protected void writeString(String value) throws IOException {
+        if (value == null) {
+            value = "null";
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                writeBytes(value.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            writeByte(c);
+        }
+    }
+
+    protected void writeBytes(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    protected void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeString(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count > 0) {
+            writeByte(digits[--count]);
+        }
+    }
+
+    /**
+     * Writes the value with two decimals like {@code %.2f}.
+     */
+    protected void writeDecimal(double value) throws IOException {
+        if (Double.isNaN(value)) {
+            writeString("NaN");
+            return;
+        }
+        if (Double.isInfinite(value)) {
+            writeString(value > 0 ? "Infinity" : "-Infinity");
+            return;
+        }
+        double abs = Math.abs(value);
+        if (abs < FAST_LIMIT) {
+            double scaled = abs * 100;
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+            if (Math.abs(fraction - 0.5) > TIE_WINDOW) {
+                long cents = (long) floor + (fraction > 0.5 ? 1 : 0);
+                // the sign is kept for values rounded to zero and for -0.0
+                if (Double.doubleToRawLongBits(value) < 0) {
+                    writeByte('-');
+                }
+                writeLong(cents / 100);
+                writeByte('.');
+                writeByte('0' + (int) (cents % 100) / 10);
+                writeByte('0' + (int) (cents % 10));
+                return;
+            }
+        }
+        // rounds the shortest decimal representation like the Formatter
+        writeString(new BigDecimal(Double.toString(value)).setScale(2, RoundingMode.HALF_UP).toPlainString());
+    }
+
+    protected void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        out.close();
+    }
+}
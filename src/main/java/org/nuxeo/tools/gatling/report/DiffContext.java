@@ -30,6 +30,9 @@ public class DiffContext {
 
     protected List<String> scripts;
 
+    // built once, templates iterate over the requests for the tables and for the charts
+    protected final List<DiffRequestStat> diffRequests;
+
     // Constants to avoid duplication
     private static final String WIN = "win";
     private static final String LOOSE = "loose";
@@ -40,6 +43,7 @@ public class DiffContext {
         ref = stats.get(0);
         challenger = stats.get(1);
         max = Math.max(ref.simStat.max, challenger.simStat.max);
+        diffRequests = createDiffRequests(ref, challenger);
     }
 
     public DiffContext setScripts(List<String> scripts) {
@@ -48,6 +52,10 @@ public class DiffContext {
     }
 
     public List<DiffRequestStat> getDiffRequests() {
+        return diffRequests;
+    }
+
+    protected static List<DiffRequestStat> createDiffRequests(SimulationContext ref, SimulationContext challenger) {
         List<DiffRequestStat> ret = new ArrayList<>(ref.reqStats.size());
         for (RequestStat refStat : ref.getRequests()) {
             RequestStat challengerStat = challenger.reqStats.get(refStat.request);
@@ -59,7 +67,7 @@ public class DiffContext {
             ret.add(new DiffRequestStat(refStat, challengerStat));
         }
         Collections.reverse(ret);
-        return ret;
+        return List.copyOf(ret);
     }
 
     public String avgPercent() {
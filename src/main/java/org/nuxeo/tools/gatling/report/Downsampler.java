@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.util.Arrays;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of chart series.
+ * <p>
+ * The first and last points are kept, points in between are split into buckets and each bucket keeps the point making
+ * the largest triangle with the point kept in the previous bucket and the average of the next bucket. Peaks and
+ * drops remain visible with a fraction of the points.
+ *
+ * @since 7.0
+ */
+public class Downsampler {
+
+    private Downsampler() {
+        // utility class
+    }
+
+    /**
+     * Returns the ascending indices of at most threshold points, {@code NaN} values are skipped. All the points are
+     * kept when the threshold is lower than 3.
+     */
+    public static int[] lttb(long[] x, double[] y, int length, int threshold) {
+        int n = 0;
+        int[] valid = new int[length];
+        for (int i = 0; i < length; i++) {
+            if (!Double.isNaN(y[i])) {
+                valid[n++] = i;
+            }
+        }
+        if (threshold >= n || threshold < 3) {
+            return Arrays.copyOf(valid, n);
+        }
+        int[] ret = new int[threshold];
+        ret[0] = valid[0];
+        double every = (double) (n - 2) / (threshold - 2);
+        int previous = 0;
+        for (int i = 0; i < threshold - 2; i++) {
+            // average of the next bucket, the last point for the last bucket
+            int avgStart = (int) ((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) ((i + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += x[valid[j]];
+                avgY += y[valid[j]];
+            }
+            avgX /= avgEnd - avgStart;
+            avgY /= avgEnd - avgStart;
+            // triangle area from differences, epoch times keep their precision
+            double ax = x[valid[previous]];
+            double ay = y[valid[previous]];
+            int rangeEnd = (int) ((i + 1) * every) + 1;
+            double maxArea = -1;
+            int next = rangeEnd - 1;
+            for (int j = (int) (i * every) + 1; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (y[valid[j]] - ay) - (ax - x[valid[j]]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            ret[i + 1] = valid[next];
+            previous = next;
+        }
+        ret[threshold - 1] = valid[n - 1];
+        return ret;
+    }
+}
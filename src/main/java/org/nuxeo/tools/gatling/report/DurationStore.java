@@ -0,0 +1,631 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exact storage of request durations in milliseconds.
+ * <p>
+ * Durations are kept in a primitive buffer, when a {@link HeapBudget} is exceeded the buffer is sorted and spilled to a
+ * temporary file. Sorted values are then read back with a k-way merge of all the runs. Runs are deleted by
+ * {@link #release()} once the statistics have been read.
+ * <p>
+ * A {@link #merged(List) merged} store is a read-only view of other stores, their sorted durations are read with a
+ * k-way merge instead of being copied.
+ *
+ * @since 7.0
+ */
+public class DurationStore {
+    protected static final int INITIAL_CAPACITY = 64;
+
+    protected static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    // number of runs of the same tier merged together
+    protected static final int MAX_MERGE_FAN_IN = 64;
+
+    protected static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    // number of sorted values kept by toString when the durations are spilled
+    protected static final int MAX_SAMPLE = 50000;
+
+    // runs not deleted yet, removed on exit when their store has not been released
+    protected static final Set<File> PENDING_RUNS = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime()
+               .addShutdownHook(new Thread(() -> PENDING_RUNS.forEach(File::delete), "gatling-report-runs-cleanup"));
+    }
+
+    protected final HeapBudget budget;
+
+    // sorted runs spilled to disk by decreasing tier
+    protected final List<Run> runs = new ArrayList<>();
+
+    protected long[] buffer;
+
+    protected int size;
+
+    protected long count;
+
+    protected long sum;
+
+    // distinct sorted durations and their counts restored from a summary, expanded on first access
+    protected long[] histogramValues;
+
+    protected long[] histogramCounts;
+
+    protected boolean released;
+
+    // buffer sorted since the last add, so cursors can be opened concurrently
+    protected boolean sorted;
+
+    // stores read by a merged view
+    protected List<DurationStore> parts;
+
+    public DurationStore() {
+        this(null);
+    }
+
+    protected DurationStore(HeapBudget budget) {
+        this.budget = budget;
+        buffer = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns an empty store accounted in the budget, unbounded when the budget is {@code null}.
+     */
+    public static DurationStore of(HeapBudget budget) {
+        DurationStore ret = new DurationStore(budget);
+        if (budget != null) {
+            budget.register(ret);
+            budget.reserve(bytes(ret.buffer.length));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a store holding the durations of a histogram, values are only expanded when accessed.
+     */
+    public static DurationStore fromHistogram(HeapBudget budget, long[] values, long[] counts) {
+        DurationStore ret = of(budget);
+        ret.setHistogram(values, counts);
+        return ret;
+    }
+
+    /**
+     * Returns a read-only view of the durations of several stores, they must not be modified anymore.
+     */
+    public static DurationStore merged(List<DurationStore> stores) {
+        DurationStore ret = new DurationStore();
+        ret.parts = List.copyOf(stores);
+        for (DurationStore store : stores) {
+            ret.count += store.count;
+            ret.sum += store.sum;
+        }
+        return ret;
+    }
+
+    /**
+     * Replaces the content of an empty store by the durations of a histogram.
+     */
+    protected void setHistogram(long[] values, long[] counts) {
+        if (count > 0) {
+            throw new IllegalStateException("Store is not empty");
+        }
+        histogramValues = values;
+        histogramCounts = counts;
+        for (int i = 0; i < values.length; i++) {
+            count += counts[i];
+            sum += values[i] * counts[i];
+        }
+    }
+
+    public void add(long duration) {
+        if (parts != null) {
+            throw new IllegalStateException("Merged durations are read only");
+        }
+        expandHistogram();
+        while (!append(duration)) {
+            grow();
+        }
+    }
+
+    /**
+     * Appends to the buffer unless it is full. The buffer is guarded by the store lock because a shared budget spills
+     * the largest store from any thread.
+     */
+    protected synchronized boolean append(long duration) {
+        if (size == buffer.length) {
+            return false;
+        }
+        buffer[size++] = duration;
+        sorted = false;
+        count++;
+        sum += duration;
+        return true;
+    }
+
+    protected synchronized int getBufferSize() {
+        return size;
+    }
+
+    /**
+     * Adds the durations of another store, a merged store adds the durations of the stores it reads.
+     */
+    public void addAll(DurationStore other) {
+        if (other.parts != null) {
+            other.parts.forEach(this::addAll);
+            return;
+        }
+        expandHistogram();
+        other.expandHistogram();
+        if (!other.isSpilled()) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.buffer[i]);
+            }
+            return;
+        }
+        try (SortedCursor cursor = other.sortedCursor()) {
+            while (cursor.hasNext()) {
+                add(cursor.next());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not read spilled durations", e);
+        }
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long sum() {
+        return sum;
+    }
+
+    public boolean isSpilled() {
+        if (parts != null) {
+            return parts.stream().anyMatch(DurationStore::isSpilled);
+        }
+        return !runs.isEmpty();
+    }
+
+    public boolean isMerged() {
+        return parts != null;
+    }
+
+    /**
+     * Returns the durations in insertion order, only available when nothing has been spilled.
+     */
+    public double[] toDoubleArray() {
+        expandHistogram();
+        if (isSpilled()) {
+            throw new IllegalStateException("Durations have been spilled to disk");
+        }
+        if (parts != null) {
+            double[] ret = new double[(int) count];
+            int length = 0;
+            for (DurationStore part : parts) {
+                double[] values = part.toDoubleArray();
+                System.arraycopy(values, 0, ret, length, values.length);
+                length += values.length;
+            }
+            return ret;
+        }
+        double[] ret = new double[size];
+        for (int i = 0; i < size; i++) {
+            ret[i] = buffer[i];
+        }
+        return ret;
+    }
+
+    /**
+     * Opens a cursor on all the durations in ascending order.
+     */
+    public SortedCursor sortedCursor() throws IOException {
+        expandHistogram();
+        if (parts != null) {
+            List<SortedCursor> cursors = new ArrayList<>(parts.size());
+            try {
+                for (DurationStore part : parts) {
+                    cursors.add(part.sortedCursor());
+                }
+            } catch (IOException e) {
+                for (SortedCursor cursor : cursors) {
+                    cursor.close();
+                }
+                throw e;
+            }
+            return new MergeCursor(cursors);
+        }
+        if (!sorted) {
+            Arrays.sort(buffer, 0, size);
+            sorted = true;
+        }
+        List<SortedCursor> cursors = openRuns(runs);
+        cursors.add(new ArrayCursor(buffer, size));
+        return new MergeCursor(cursors);
+    }
+
+    protected static List<SortedCursor> openRuns(List<Run> runs) throws IOException {
+        List<SortedCursor> ret = new ArrayList<>(runs.size() + 1);
+        try {
+            for (Run run : runs) {
+                ret.add(new RunCursor(run.file()));
+            }
+        } catch (IOException e) {
+            for (SortedCursor cursor : ret) {
+                cursor.close();
+            }
+            throw e;
+        }
+        return ret;
+    }
+
+    protected void expandHistogram() {
+        if (released) {
+            throw new IllegalStateException("Durations have been released");
+        }
+        if (histogramValues == null) {
+            return;
+        }
+        long[] values = histogramValues;
+        long[] counts = histogramCounts;
+        histogramValues = null;
+        histogramCounts = null;
+        count = 0;
+        sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            for (long j = 0; j < counts[i]; j++) {
+                add(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Doubles the buffer, the budget is reserved without holding the store lock since it may spill other stores.
+     */
+    protected void grow() {
+        int length;
+        synchronized (this) {
+            length = buffer.length;
+            if (size < length) {
+                return;
+            }
+            if (length >= MAX_ARRAY_SIZE) {
+                spill();
+                return;
+            }
+        }
+        int capacity = (int) Math.min(MAX_ARRAY_SIZE, 2L * length);
+        long delta = bytes(capacity - length);
+        if (budget != null) {
+            budget.reserve(delta);
+        }
+        synchronized (this) {
+            if (size < buffer.length) {
+                // this buffer has been spilled to make room
+                if (budget != null) {
+                    budget.release(delta);
+                }
+                return;
+            }
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+    }
+
+    /**
+     * Writes the in-memory durations as a sorted run and releases the buffer.
+     */
+    protected synchronized void spill() {
+        if (size == 0) {
+            return;
+        }
+        if (!sorted) {
+            Arrays.sort(buffer, 0, size);
+        }
+        try {
+            runs.add(new Run(writeRun(new ArrayCursor(buffer, size), size), 0));
+            mergeRuns();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not spill durations to disk", e);
+        }
+        size = 0;
+        if (buffer.length > INITIAL_CAPACITY) {
+            if (budget != null) {
+                budget.release(bytes(buffer.length - INITIAL_CAPACITY));
+            }
+            buffer = new long[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Merges the newest runs as long as {@value #MAX_MERGE_FAN_IN} of them are of the same tier, the merged run is one
+     * tier up. Runs are kept by decreasing tier and each duration is rewritten once per tier, so the disk I/O grows
+     * with the logarithm of the number of spills.
+     */
+    protected void mergeRuns() throws IOException {
+        while (runs.size() >= MAX_MERGE_FAN_IN) {
+            List<Run> newest = runs.subList(runs.size() - MAX_MERGE_FAN_IN, runs.size());
+            int tier = newest.get(0).tier();
+            if (newest.get(newest.size() - 1).tier() != tier) {
+                return;
+            }
+            List<SortedCursor> cursors = openRuns(newest);
+            long total = 0;
+            for (SortedCursor cursor : cursors) {
+                total += ((RunCursor) cursor).remaining;
+            }
+            File merged;
+            try (SortedCursor cursor = new MergeCursor(cursors)) {
+                merged = writeRun(cursor, total);
+            }
+            newest.forEach(run -> deleteRun(run.file()));
+            newest.clear();
+            runs.add(new Run(merged, tier + 1));
+        }
+    }
+
+    protected static File writeRun(SortedCursor cursor, long length) throws IOException {
+        File run = File.createTempFile("gatling-report-", ".run");
+        PENDING_RUNS.add(run);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run), IO_BUFFER_SIZE))) {
+            out.writeLong(length);
+            long previous = 0;
+            while (cursor.hasNext()) {
+                long value = cursor.next();
+                Varints.writeVarLong(out, value - previous);
+                previous = value;
+            }
+        }
+        return run;
+    }
+
+    protected static void deleteRun(File run) {
+        run.delete();
+        PENDING_RUNS.remove(run);
+    }
+
+    /**
+     * Deletes the spilled runs and frees the buffer, the durations can not be read anymore. A merged store releases the
+     * stores it reads.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        if (parts != null) {
+            parts.forEach(DurationStore::release);
+        }
+        runs.forEach(run -> deleteRun(run.file()));
+        runs.clear();
+        histogramValues = null;
+        histogramCounts = null;
+        if (budget != null) {
+            budget.release(bytes(buffer.length));
+            budget.unregister(this);
+        }
+        buffer = new long[0];
+        size = 0;
+    }
+
+    protected static long bytes(long length) {
+        return length * Long.BYTES;
+    }
+
+    /**
+     * Renders the durations like a {@code List<Double>}, when spilled only an evenly spaced sample of the sorted
+     * durations is rendered.
+     */
+    @Override
+    public String toString() {
+        expandHistogram();
+        StringBuilder ret = new StringBuilder("[");
+        if (!isSpilled()) {
+            double[] values = toDoubleArray();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    ret.append(", ");
+                }
+                ret.append(values[i]);
+            }
+            return ret.append(']').toString();
+        }
+        long step = Math.max(1, count / MAX_SAMPLE);
+        try (SortedCursor cursor = sortedCursor()) {
+            long i = 0;
+            boolean first = true;
+            while (cursor.hasNext()) {
+                long value = cursor.next();
+                if (i++ % step != 0) {
+                    continue;
+                }
+                if (!first) {
+                    ret.append(", ");
+                }
+                ret.append((double) value);
+                first = false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ret.append(']').toString();
+    }
+
+    /**
+     * Iterates over durations in ascending order.
+     */
+    public interface SortedCursor extends Closeable {
+        boolean hasNext();
+
+        long next() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Sorted durations written to a file, a run of tier {@code n + 1} is the merge of {@value #MAX_MERGE_FAN_IN} runs of
+     * tier {@code n}.
+     */
+    protected record Run(File file, int tier) {
+    }
+
+    protected static class ArrayCursor implements SortedCursor {
+        protected final long[] values;
+
+        protected final int length;
+
+        protected int position;
+
+        protected ArrayCursor(long[] values, int length) {
+            this.values = values;
+            this.length = length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < length;
+        }
+
+        @Override
+        public long next() {
+            return values[position++];
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+
+    protected static class RunCursor implements SortedCursor {
+        protected final DataInputStream in;
+
+        protected long remaining;
+
+        protected long previous;
+
+        protected RunCursor(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), IO_BUFFER_SIZE));
+            try {
+                remaining = in.readLong();
+            } catch (EOFException e) {
+                in.close();
+                throw new IOException("Truncated duration run: " + run, e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public long next() throws IOException {
+            remaining--;
+            previous += Varints.readVarLong(in);
+            return previous;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    protected static class MergeCursor implements SortedCursor {
+        protected final List<SortedCursor> cursors;
+
+        protected final PriorityQueue<Head> heads;
+
+        protected MergeCursor(List<SortedCursor> cursors) throws IOException {
+            this.cursors = cursors;
+            heads = new PriorityQueue<>(Math.max(1, cursors.size()));
+            for (SortedCursor cursor : cursors) {
+                if (cursor.hasNext()) {
+                    heads.add(new Head(cursor, cursor.next()));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public long next() throws IOException {
+            Head head = heads.poll();
+            long ret = head.value;
+            if (head.cursor.hasNext()) {
+                head.value = head.cursor.next();
+                heads.add(head);
+            }
+            return ret;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException error = null;
+            for (SortedCursor cursor : cursors) {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    protected static class Head implements Comparable<Head> {
+        protected final SortedCursor cursor;
+
+        protected long value;
+
+        protected Head(SortedCursor cursor, long value) {
+            this.cursor = cursor;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Head other) {
+            return Long.compare(value, other.value);
+        }
+    }
+}
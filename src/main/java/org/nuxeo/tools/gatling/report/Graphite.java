@@ -18,12 +18,35 @@ package org.nuxeo.tools.gatling.report;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +58,40 @@ import org.json.simple.parser.ParseException;
 public class Graphite {
     private final static Logger log = LoggerFactory.getLogger(Report.class);
 
+    /**
+     * @since 7.0
+     */
+    public static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Maximum time to get a response, a render can take a while on a loaded Graphite.
+     *
+     * @since 7.0
+     */
+    public static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    protected static final int MAX_CONCURRENT_DOWNLOADS = 4;
+
+    protected static final int MAX_ATTEMPTS = 3;
+
+    // doubled after each failed attempt
+    protected static final long RETRY_DELAY_MS = 500;
+
+    // scheme, authority, path, query and fragment of a URL, from RFC 3986 appendix B
+    protected static final Pattern URL_PARTS = Pattern.compile(
+            "(([^:/?#]+):)?(//([^/?#]*))?([^?#]*)(\\?([^#]*))?(#(.*))?");
+
+    protected static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+                                                              .connectTimeout(CONNECT_TIMEOUT)
+                                                              .followRedirects(HttpClient.Redirect.NORMAL)
+                                                              .build();
+
+    // requests are blocking, each download runs on its own virtual thread
+    protected static final ExecutorService DOWNLOAD_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    // bounds the concurrent downloads of all the reports, so a dashboard does not flood Graphite
+    protected static final Semaphore DOWNLOAD_PERMITS = new Semaphore(MAX_CONCURRENT_DOWNLOADS);
+
     protected final ZoneId zoneId;
 
     protected final String dashboardUrl;
@@ -45,7 +102,10 @@ public class Graphite {
 
     protected final String baseUrl;
 
-    protected final List<Image> images = new ArrayList<>();
+    // graphs of the dashboard, the images are the ones downloaded
+    protected final List<Image> graphs = new ArrayList<>();
+
+    protected CompletableFuture<List<Image>> downloads;
 
     protected final String from;
 
@@ -53,8 +113,10 @@ public class Graphite {
 
     protected final File outputDirectory;
 
-    public Graphite(String graphiteUrl, String user, String password, SimulationContext stats, File outputDirectory,
-            ZoneId zoneId) {
+    protected final File cacheDirectory;
+
+    protected Graphite(String graphiteUrl, String user, String password, SimulationContext stats,
+            File outputDirectory, ZoneId zoneId, File cacheDirectory) {
         this.dashboardUrl = graphiteUrl;
         baseUrl = Utils.getBaseUrl(graphiteUrl);
         if (zoneId == null) {
@@ -62,36 +124,180 @@ public class Graphite {
         } else {
             this.zoneId = zoneId;
         }
-        this.from = getDateAsString(stats.simStat.start - 30000L);
-        this.until = getDateAsString(stats.simStat.end + 60000L); // add one more minute to prevent empty chart
+        this.from = getDateAsString(stats.simStat.start - 30000L, this.zoneId);
+        // add one more minute to prevent empty chart
+        this.until = getDateAsString(stats.simStat.end + 60000L, this.zoneId);
         this.outputDirectory = outputDirectory;
+        this.cacheDirectory = cacheDirectory;
         this.user = user;
         this.password = password;
-        Utils.setBasicAuth(user, password);
-        parseDashboard();
-        downloadImages();
     }
 
-    protected String getDateAsString(long start) {
+    public static Graphite of(String graphiteUrl, String user, String password, SimulationContext stats,
+            File outputDirectory, ZoneId zoneId) {
+        return of(graphiteUrl, user, password, stats, outputDirectory, zoneId, null);
+    }
+
+    /**
+     * Parses the dashboard then downloads its images in the background, {@link #getImages()} waits for them.
+     *
+     * @param cacheDirectory keeps the downloaded images for the same graphs and time range, not cached when
+     *            {@code null}
+     * @since 7.0
+     */
+    public static Graphite of(String graphiteUrl, String user, String password, SimulationContext stats,
+            File outputDirectory, ZoneId zoneId, File cacheDirectory) {
+        Graphite ret = new Graphite(graphiteUrl, user, password, stats, outputDirectory, zoneId, cacheDirectory);
+        ret.parseDashboard();
+        ret.downloads = ret.downloadImages();
+        return ret;
+    }
+
+    protected static String getDateAsString(long start, ZoneId zoneId) {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm_yyyyMMdd").withZone(zoneId);
         return formatter.format(Instant.ofEpochMilli(start));
     }
 
-    protected void downloadImages() {
-        images.forEach(image -> {
+    /**
+     * Returns the images successfully downloaded, waiting for the pending downloads.
+     *
+     * @since 7.0
+     */
+    public List<Image> getImages() {
+        return downloads.join();
+    }
+
+    protected CompletableFuture<List<Image>> downloadImages() {
+        List<CompletableFuture<Image>> futures = graphs.stream()
+                                                       .map(image -> CompletableFuture.supplyAsync(
+                                                               () -> downloadOrNull(image), DOWNLOAD_EXECUTOR))
+                                                       .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new))
+                                .thenApply(v -> futures.stream()
+                                                       .map(CompletableFuture::join)
+                                                       .filter(Objects::nonNull)
+                                                       .collect(Collectors.toList()));
+    }
+
+    protected Image downloadOrNull(Image image) {
+        try {
+            DOWNLOAD_PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted before downloading image: " + image.title);
+            return null;
+        }
+        try {
+            downloadImage(image);
+            return image;
+        } catch (IOException e) {
+            log.warn("Fail to download image: " + image.title);
+            if (log.isDebugEnabled())
+                log.debug("Download error", e);
+            return null;
+        } finally {
+            DOWNLOAD_PERMITS.release();
+        }
+    }
+
+    protected void downloadImage(Image image) throws IOException {
+        File dest = image.getFile(outputDirectory);
+        if (cacheDirectory == null) {
+            download(image.url, dest);
+            return;
+        }
+        File cached = new File(cacheDirectory, image.getCacheKey() + ".png");
+        if (cached.isFile()) {
+            log.debug("Image found in cache: " + image.url);
+        } else {
+            Files.createDirectories(cacheDirectory.toPath());
+            download(image.url, cached);
+        }
+        Files.copy(cached.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Downloads into a temporary file moved in place once complete, so an interrupted download is never cached.
+     */
+    protected void download(String url, File dest) throws IOException {
+        Path tmp = Files.createTempFile(dest.getAbsoluteFile().getParentFile().toPath(), dest.getName(), ".tmp");
+        try {
+            send(newRequest(url), HttpResponse.BodyHandlers.ofFile(tmp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING));
+            Files.move(tmp, dest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    protected HttpRequest newRequest(String url) throws IOException {
+        HttpRequest.Builder ret = HttpRequest.newBuilder(toUri(url)).timeout(REQUEST_TIMEOUT).GET();
+        if (user != null) {
+            String credentials = user + ":" + (password == null ? "" : password);
+            ret.header("Authorization",
+                    "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+        return ret.build();
+    }
+
+    /**
+     * Graph targets may hold characters that are not valid in a URI, the URL is split into its components that are
+     * quoted.
+     */
+    protected static URI toUri(String url) throws IOException {
+        try {
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            Matcher parts = URL_PARTS.matcher(url);
+            try {
+                if (!parts.matches()) {
+                    throw new URISyntaxException(url, "Not a URL");
+                }
+                return new URI(parts.group(2), parts.group(4), parts.group(5), parts.group(7), parts.group(9));
+            } catch (URISyntaxException invalid) {
+                throw new IOException("Invalid URL: " + url, invalid);
+            }
+        }
+    }
+
+    /**
+     * Sends the request, retrying with a growing delay on I/O errors, timeouts included, and on server errors.
+     */
+    protected <T> T send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            HttpResponse<T> response;
             try {
-                downloadImage(image);
+                response = HTTP_CLIENT.send(request, handler);
             } catch (IOException e) {
-                log.warn("Fail to download image: " + image.title);
-                if (log.isDebugEnabled())
-                    log.debug("Download error", e);
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Retrying " + request.uri() + " after " + e);
+                pause(attempt);
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while downloading: " + request.uri());
             }
-        });
+            int status = response.statusCode();
+            if (status == 200) {
+                return response.body();
+            }
+            if (attempt >= MAX_ATTEMPTS || (status != 429 && status < 500)) {
+                throw new IOException("Unexpected status " + status + ": " + request.uri());
+            }
+            log.debug("Retrying " + request.uri() + " after status " + status);
+            pause(attempt);
+        }
     }
 
-    protected void downloadImage(Image image) throws IOException {
-        File dest = image.getFile(outputDirectory);
-        Utils.download(new URL(image.url), dest);
+    protected static void pause(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(RETRY_DELAY_MS << (attempt - 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
     }
 
     protected void parseDashboard() {
@@ -104,18 +310,18 @@ public class Graphite {
             throw new IllegalArgumentException("invalid dashboard link " + dashboardUrl, e);
         }
         JSONObject jsonObject = (JSONObject) obj;
-        JSONArray graphs = (JSONArray) ((JSONObject) jsonObject.get("state")).get("graphs");
-        for (Object graph : graphs) {
+        JSONArray jsonGraphs = (JSONArray) ((JSONObject) jsonObject.get("state")).get("graphs");
+        for (Object graph : jsonGraphs) {
             String title = ((JSONObject) ((JSONArray) graph).get(1)).get("title").toString();
             String graphUrl = ((String) ((JSONArray) graph).get(2));
-            images.add(new Image(baseUrl + graphUrl, title, from, until));
+            graphs.add(new Image(baseUrl + graphUrl, title, from, until));
         }
     }
 
     protected String getJsonDashboard() throws IOException {
         String url = getJsonDashboardUrl();
         log.info("Downloading: " + url);
-        return Utils.getContent(new URL(url));
+        return send(newRequest(url), HttpResponse.BodyHandlers.ofString());
     }
 
     protected String getJsonDashboardUrl() {
@@ -128,11 +334,15 @@ public class Graphite {
 
         final String title;
 
+        // cache key of the graph and its time range
+        final String key;
+
         String filename;
 
         public Image(String url, String title, String from, String until) {
             this.url = getUrl(url, from, until);
             this.title = title;
+            this.key = hash(url + "\n" + from + "\n" + until);
         }
 
         protected String getUrl(String url, String from, String until) {
@@ -143,6 +353,19 @@ public class Graphite {
             filename = (title + "_" + from).replaceAll("\\W+", "") + ".png";
             return new File(outputDirectory, filename);
         }
+
+        public String getCacheKey() {
+            return key;
+        }
+
+        protected static String hash(String value) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+                return HexFormat.of().formatHex(digest, 0, 16);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
     }
 
 }
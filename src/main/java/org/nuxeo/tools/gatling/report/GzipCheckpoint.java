@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A position in a gzip file from which it can be decompressed without reading what precedes it, recorded by a
+ * {@link GzipIndexer}.
+ * <p>
+ * A checkpoint is the bit offset of a deflate block in the compressed file, the matching offset in the uncompressed
+ * stream and the last 32KB of uncompressed data that the block may reference.
+ *
+ * @param bitOffset offset of the deflate block in the compressed file, in bits
+ * @param outOffset offset of the block in the uncompressed stream
+ * @param window uncompressed data preceding the block, up to 32KB
+ * @since 7.0
+ */
+public record GzipCheckpoint(long bitOffset, long outOffset, byte[] window) {
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Opens the uncompressed stream at the checkpoint.
+     *
+     * @param nextMember offset of the gzip member following the checkpoint, -1 if it is in the last member
+     */
+    public InputStream open(File file, long nextMember) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        Inflater inflater = new Inflater(true);
+        try {
+            in.getChannel().position(bitOffset >>> 3);
+            if (window.length > 0) {
+                inflater.setDictionary(window);
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            inflater.end();
+            throw e;
+        }
+        InputStream shifted = new BitShiftInputStream(new BufferedInputStream(in, BUFFER_SIZE),
+                (int) (bitOffset & 7));
+        InputStream ret = new InflaterInputStream(shifted, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                inflater.end();
+                super.close();
+            }
+        };
+        if (nextMember < 0) {
+            return ret;
+        }
+        FileInputStream rest = new FileInputStream(file);
+        rest.getChannel().position(nextMember);
+        return new SequenceInputStream(ret,
+                new GZIPInputStream(new BufferedInputStream(rest, BUFFER_SIZE), BUFFER_SIZE));
+    }
+
+    /**
+     * Realigns a stream starting in the middle of a byte, the low bits of the first byte are dropped.
+     */
+    protected static class BitShiftInputStream extends FilterInputStream {
+        protected final int shift;
+
+        protected int current = -1;
+
+        protected BitShiftInputStream(InputStream in, int shift) {
+            super(in);
+            this.shift = shift;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (shift == 0) {
+                return in.read();
+            }
+            if (current < 0 && (current = in.read()) < 0) {
+                return -1;
+            }
+            int next = in.read();
+            int ret = (current >>> shift) | (next < 0 ? 0 : (next << (8 - shift)) & 0xFF);
+            current = next;
+            return ret;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (shift == 0) {
+                return in.read(b, off, len);
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (current < 0 && (current = in.read()) < 0) {
+                return -1;
+            }
+            // the last byte read is kept for the next call
+            int count = in.read(b, off, len);
+            if (count < 0) {
+                b[off] = (byte) (current >>> shift);
+                current = -1;
+                return 1;
+            }
+            for (int i = 0; i < count; i++) {
+                int next = b[off + i] & 0xFF;
+                b[off + i] = (byte) ((current >>> shift) | (next << (8 - shift)));
+                current = next;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long ret = 0;
+            while (ret < n) {
+                int count = read(buffer, 0, (int) Math.min(n - ret, buffer.length));
+                if (count < 0) {
+                    break;
+                }
+                ret += count;
+            }
+            return ret;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,578 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip stream while recording {@link GzipCheckpoint}s.
+ * <p>
+ * Deflate blocks are decoded here because the zlib inflater does not expose block boundaries. At the start of a
+ * block, once {@code span} bytes have been produced since the previous checkpoint, the input bit offset, the output
+ * offset and the last 32KB of output are recorded. Concatenated gzip members are supported, their offsets are
+ * recorded too.
+ *
+ * @since 7.0
+ */
+public class GzipIndexer extends InputStream {
+    public static final long DEFAULT_SPAN = 1024 * 1024;
+
+    protected static final int WINDOW_SIZE = 32 * 1024;
+
+    protected static final int WINDOW_MASK = WINDOW_SIZE - 1;
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected static final int[] CODE_LENGTH_ORDER = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1,
+            15 };
+
+    protected static final int[] LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51,
+            59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+
+    protected static final int[] LENGTH_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4,
+            4, 5, 5, 5, 5, 0 };
+
+    protected static final int[] DISTANCE_BASE = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+            513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+
+    protected static final int[] DISTANCE_EXTRA = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9,
+            10, 10, 11, 11, 12, 12, 13, 13 };
+
+    protected static final Huffman FIXED_LITERALS;
+
+    protected static final Huffman FIXED_DISTANCES;
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        FIXED_LITERALS = fixed(lengths, 288);
+        Arrays.fill(lengths, 0, 30, 5);
+        FIXED_DISTANCES = fixed(lengths, 30);
+    }
+
+    protected static Huffman fixed(int[] lengths, int count) {
+        try {
+            return Huffman.of(lengths, 0, count);
+        } catch (ZipException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    protected enum State {
+        MEMBER, BLOCK, STORED, HUFFMAN, TRAILER, DONE
+    }
+
+    protected final InputStream in;
+
+    protected final long span;
+
+    protected final List<GzipCheckpoint> checkpoints = new ArrayList<>();
+
+    protected final List<Long> members = new ArrayList<>();
+
+    protected final byte[] input = new byte[BUFFER_SIZE];
+
+    protected int inputPosition;
+
+    protected int inputLimit;
+
+    // compressed offset of input[0]
+    protected long inputOffset;
+
+    protected long bits;
+
+    protected int bitCount;
+
+    // zero bits appended past the end of the input
+    protected int padding;
+
+    protected final byte[] window = new byte[WINDOW_SIZE];
+
+    protected long out;
+
+    protected long memberOut;
+
+    protected long lastCheckpoint;
+
+    protected final CRC32 crc = new CRC32();
+
+    protected final byte[] pending = new byte[BUFFER_SIZE];
+
+    protected int pendingPosition;
+
+    protected int pendingLimit;
+
+    protected int crcPosition;
+
+    protected State state = State.MEMBER;
+
+    protected boolean lastBlock;
+
+    protected int stored;
+
+    protected Huffman literals;
+
+    protected Huffman distances;
+
+    protected int copyLength;
+
+    protected int copyDistance;
+
+    public GzipIndexer(InputStream in) {
+        this(in, DEFAULT_SPAN);
+    }
+
+    public GzipIndexer(InputStream in, long span) {
+        this.in = in;
+        this.span = span;
+        lastCheckpoint = -span;
+    }
+
+    /**
+     * Checkpoints recorded so far, ordered by offset.
+     */
+    public List<GzipCheckpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Compressed offsets of the gzip members read so far.
+     */
+    public List<Long> getMembers() {
+        return members;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pendingPosition == pendingLimit && !fillPending()) {
+            return -1;
+        }
+        return pending[pendingPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pendingPosition == pendingLimit && !fillPending()) {
+            return -1;
+        }
+        int ret = Math.min(len, pendingLimit - pendingPosition);
+        System.arraycopy(pending, pendingPosition, b, off, ret);
+        pendingPosition += ret;
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    protected boolean fillPending() throws IOException {
+        pendingPosition = 0;
+        pendingLimit = 0;
+        crcPosition = 0;
+        while (pendingLimit < pending.length && state != State.DONE) {
+            switch (state) {
+            case MEMBER:
+                state = readMemberHeader() ? State.BLOCK : State.DONE;
+                break;
+            case BLOCK:
+                readBlockHeader();
+                break;
+            case STORED:
+                copyStored();
+                break;
+            case HUFFMAN:
+                inflate();
+                break;
+            case TRAILER:
+                readTrailer();
+                state = State.MEMBER;
+                break;
+            default:
+                break;
+            }
+        }
+        updateCrc();
+        return pendingLimit > 0;
+    }
+
+    protected boolean readMemberHeader() throws IOException {
+        align();
+        long offset = getBitOffset() >>> 3;
+        int id1 = readAlignedByte();
+        if (id1 < 0) {
+            return false;
+        }
+        int id2 = readAlignedByte();
+        if (id1 != 0x1F || id2 != 0x8B) {
+            if (members.isEmpty()) {
+                throw new ZipException("Not in GZIP format");
+            }
+            // trailing garbage is ignored like GZIPInputStream does
+            return false;
+        }
+        if (requireByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = requireByte();
+        for (int i = 0; i < 6; i++) {
+            requireByte();
+        }
+        if ((flags & 4) != 0) {
+            int length = requireByte() | requireByte() << 8;
+            for (int i = 0; i < length; i++) {
+                requireByte();
+            }
+        }
+        if ((flags & 8) != 0) {
+            while (requireByte() != 0) {
+                // file name
+            }
+        }
+        if ((flags & 16) != 0) {
+            while (requireByte() != 0) {
+                // comment
+            }
+        }
+        if ((flags & 2) != 0) {
+            requireByte();
+            requireByte();
+        }
+        members.add(offset);
+        crc.reset();
+        memberOut = 0;
+        return true;
+    }
+
+    protected void readTrailer() throws IOException {
+        updateCrc();
+        long expectedCrc = readLittleEndianInt();
+        long expectedSize = readLittleEndianInt();
+        if (expectedCrc != crc.getValue() || expectedSize != (memberOut & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    protected void readBlockHeader() throws IOException {
+        if (out - lastCheckpoint >= span && padding == 0) {
+            addCheckpoint();
+        }
+        lastBlock = take(1) == 1;
+        int type = take(2);
+        switch (type) {
+        case 0:
+            align();
+            int length = take(16);
+            int complement = take(16);
+            if (length != (~complement & 0xFFFF)) {
+                throw new ZipException("Invalid stored block lengths");
+            }
+            stored = length;
+            state = State.STORED;
+            break;
+        case 1:
+            literals = FIXED_LITERALS;
+            distances = FIXED_DISTANCES;
+            state = State.HUFFMAN;
+            break;
+        case 2:
+            readDynamicTables();
+            state = State.HUFFMAN;
+            break;
+        default:
+            throw new ZipException("Invalid block type");
+        }
+    }
+
+    protected void addCheckpoint() {
+        int size = (int) Math.min(out, WINDOW_SIZE);
+        byte[] ret = new byte[size];
+        int start = (int) (out - size) & WINDOW_MASK;
+        int first = Math.min(size, WINDOW_SIZE - start);
+        System.arraycopy(window, start, ret, 0, first);
+        System.arraycopy(window, 0, ret, first, size - first);
+        checkpoints.add(new GzipCheckpoint(getBitOffset(), out, ret));
+        lastCheckpoint = out;
+    }
+
+    protected void readDynamicTables() throws IOException {
+        int literalCount = take(5) + 257;
+        int distanceCount = take(5) + 1;
+        int codeLengthCount = take(4) + 4;
+        int[] codeLengths = new int[19];
+        for (int i = 0; i < codeLengthCount; i++) {
+            codeLengths[CODE_LENGTH_ORDER[i]] = take(3);
+        }
+        Huffman codeLengthCodes = Huffman.of(codeLengths, 0, 19);
+        int[] lengths = new int[literalCount + distanceCount];
+        int i = 0;
+        while (i < lengths.length) {
+            int symbol = decode(codeLengthCodes);
+            if (symbol < 16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+            int value = 0;
+            int repeat;
+            if (symbol == 16) {
+                if (i == 0) {
+                    throw new ZipException("Invalid bit length repeat");
+                }
+                value = lengths[i - 1];
+                repeat = 3 + take(2);
+            } else if (symbol == 17) {
+                repeat = 3 + take(3);
+            } else {
+                repeat = 11 + take(7);
+            }
+            if (i + repeat > lengths.length) {
+                throw new ZipException("Invalid bit length repeat");
+            }
+            Arrays.fill(lengths, i, i + repeat, value);
+            i += repeat;
+        }
+        if (lengths[256] == 0) {
+            throw new ZipException("Missing end-of-block code");
+        }
+        literals = Huffman.of(lengths, 0, literalCount);
+        distances = Huffman.of(lengths, literalCount, distanceCount);
+    }
+
+    protected void copyStored() throws IOException {
+        while (stored > 0 && pendingLimit < pending.length) {
+            if (bitCount >= 8) {
+                put(take(8));
+                stored--;
+                continue;
+            }
+            if (inputPosition == inputLimit && !fill()) {
+                throw new EOFException("Unexpected end of GZIP stream");
+            }
+            int count = Math.min(stored, Math.min(inputLimit - inputPosition, pending.length - pendingLimit));
+            for (int i = 0; i < count; i++) {
+                put(input[inputPosition + i] & 0xFF);
+            }
+            inputPosition += count;
+            stored -= count;
+        }
+        if (stored == 0) {
+            state = lastBlock ? State.TRAILER : State.BLOCK;
+        }
+    }
+
+    protected void inflate() throws IOException {
+        while (pendingLimit < pending.length) {
+            if (copyLength > 0) {
+                int count = Math.min(copyLength, pending.length - pendingLimit);
+                for (int i = 0; i < count; i++) {
+                    put(window[(int) (out - copyDistance) & WINDOW_MASK] & 0xFF);
+                }
+                copyLength -= count;
+                continue;
+            }
+            int symbol = decode(literals);
+            if (symbol < 256) {
+                put(symbol);
+            } else if (symbol == 256) {
+                state = lastBlock ? State.TRAILER : State.BLOCK;
+                return;
+            } else {
+                symbol -= 257;
+                if (symbol >= LENGTH_BASE.length) {
+                    throw new ZipException("Invalid literal/length code");
+                }
+                int length = LENGTH_BASE[symbol] + take(LENGTH_EXTRA[symbol]);
+                int distanceSymbol = decode(distances);
+                if (distanceSymbol >= DISTANCE_BASE.length) {
+                    throw new ZipException("Invalid distance code");
+                }
+                int distance = DISTANCE_BASE[distanceSymbol] + take(DISTANCE_EXTRA[distanceSymbol]);
+                if (distance > memberOut) {
+                    throw new ZipException("Invalid distance too far back");
+                }
+                copyLength = length;
+                copyDistance = distance;
+            }
+        }
+    }
+
+    protected void put(int b) {
+        window[(int) out & WINDOW_MASK] = (byte) b;
+        pending[pendingLimit++] = (byte) b;
+        out++;
+        memberOut++;
+    }
+
+    protected void updateCrc() {
+        crc.update(pending, crcPosition, pendingLimit - crcPosition);
+        crcPosition = pendingLimit;
+    }
+
+    // bit input, least significant bit first
+
+    /**
+     * Offset of the next unread bit in the compressed stream.
+     */
+    protected long getBitOffset() {
+        return (inputOffset + inputPosition) * 8 - bitCount;
+    }
+
+    protected boolean fill() throws IOException {
+        inputOffset += inputLimit;
+        inputPosition = 0;
+        inputLimit = 0;
+        int count = in.read(input, 0, input.length);
+        if (count <= 0) {
+            return false;
+        }
+        inputLimit = count;
+        return true;
+    }
+
+    protected void need(int count) throws IOException {
+        while (bitCount < count) {
+            int b;
+            if (inputPosition < inputLimit || fill()) {
+                b = input[inputPosition++] & 0xFF;
+            } else {
+                // allows to peek a full code at the end of the stream
+                b = 0;
+                padding += 8;
+            }
+            bits |= (long) b << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    protected void drop(int count) throws IOException {
+        bits >>>= count;
+        bitCount -= count;
+        if (bitCount < padding) {
+            throw new EOFException("Unexpected end of GZIP stream");
+        }
+    }
+
+    protected int take(int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        need(count);
+        int ret = (int) (bits & ((1L << count) - 1));
+        drop(count);
+        return ret;
+    }
+
+    protected int decode(Huffman huffman) throws IOException {
+        need(huffman.bits);
+        int entry = huffman.table[(int) (bits & ((1L << huffman.bits) - 1))];
+        if (entry < 0) {
+            throw new ZipException("Invalid Huffman code");
+        }
+        drop(entry & 0xF);
+        return entry >>> 4;
+    }
+
+    protected void align() throws IOException {
+        drop(bitCount & 7);
+    }
+
+    protected int readAlignedByte() throws IOException {
+        if (bitCount >= 8 + padding) {
+            return take(8);
+        }
+        if (inputPosition < inputLimit || fill()) {
+            return input[inputPosition++] & 0xFF;
+        }
+        return -1;
+    }
+
+    protected int requireByte() throws IOException {
+        int ret = readAlignedByte();
+        if (ret < 0) {
+            throw new EOFException("Unexpected end of GZIP stream");
+        }
+        return ret;
+    }
+
+    protected long readLittleEndianInt() throws IOException {
+        align();
+        return requireByte() | requireByte() << 8 | requireByte() << 16 | (long) requireByte() << 24;
+    }
+
+    /**
+     * Canonical Huffman code decoded with a single lookup on the longest code length.
+     */
+    protected static class Huffman {
+        // symbol << 4 | code length, -1 for unused codes
+        protected final int[] table;
+
+        protected final int bits;
+
+        protected Huffman(int[] table, int bits) {
+            this.table = table;
+            this.bits = bits;
+        }
+
+        protected static Huffman of(int[] lengths, int offset, int count) throws ZipException {
+            int maxLength = 0;
+            int[] lengthCounts = new int[16];
+            for (int i = 0; i < count; i++) {
+                int length = lengths[offset + i];
+                lengthCounts[length]++;
+                maxLength = Math.max(maxLength, length);
+            }
+            int bits = Math.max(1, maxLength);
+            int[] table = new int[1 << bits];
+            Arrays.fill(table, -1);
+            int[] nextCode = new int[16];
+            int code = 0;
+            lengthCounts[0] = 0;
+            for (int length = 1; length <= 15; length++) {
+                code = (code + lengthCounts[length - 1]) << 1;
+                nextCode[length] = code;
+            }
+            for (int symbol = 0; symbol < count; symbol++) {
+                int length = lengths[offset + symbol];
+                if (length == 0) {
+                    continue;
+                }
+                int value = nextCode[length]++;
+                if (value >= 1 << length) {
+                    throw new ZipException("Invalid Huffman code lengths");
+                }
+                int reversed = Integer.reverse(value) >>> (32 - length);
+                for (int i = reversed; i < table.length; i += 1 << length) {
+                    table[i] = symbol << 4 | length;
+                }
+            }
+            return new Huffman(table, bits);
+        }
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Concurrent decompression of gzip files made of several members, like the files written by bgzip or by concatenating
+ * gzip files.
+ * <p>
+ * Member boundaries are found ahead of the reader: bgzip members give their compressed size in a header field, other
+ * files are scanned for gzip headers. As compressed data can contain a header by chance, each boundary is checked once
+ * the preceding member is inflated, on mismatch, or when no boundary is found close enough to keep regions small, the
+ * rest of the file is inflated serially.
+ *
+ * @since 7.0
+ */
+public class GzipMembers {
+
+    protected static final int FHCRC = 2;
+
+    protected static final int FEXTRA = 4;
+
+    protected static final int FNAME = 8;
+
+    protected static final int FCOMMENT = 16;
+
+    // compressed bytes inflated by a task
+    protected static final long TASK_SIZE = 1024 * 1024;
+
+    // a region is not buffered when its compressed size is larger
+    protected static final long MAX_REGION_SIZE = 4 * 1024 * 1024;
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    // size of a gzip header with a bgzip extra field
+    protected static final int BGZIP_HEADER_SIZE = 18;
+
+    /**
+     * Opens the uncompressed content of a gzip file, decompressing members concurrently with the default number of
+     * threads.
+     */
+    public static InputStream open(File file) throws IOException {
+        return open(file, ParallelGzipInputStream.DEFAULT_THREADS);
+    }
+
+    /**
+     * Opens the uncompressed content of a gzip file, a single member file is inflated serially.
+     */
+    public static InputStream open(File file, int threads) throws IOException {
+        if (threads <= 1) {
+            return openSerial(file, 0);
+        }
+        return new MemberInputStream(file, threads);
+    }
+
+    protected static InputStream openSerial(File file, long offset) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(offset);
+            return new GZIPInputStream(new BufferedInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the bytes at the offset look like a gzip member header.
+     */
+    protected static boolean isHeader(byte[] bytes, int offset) {
+        if (bytes[offset] != 0x1f || bytes[offset + 1] != (byte) 0x8b || bytes[offset + 2] != 8
+                || (bytes[offset + 3] & 0xe0) != 0) {
+            return false;
+        }
+        int xfl = bytes[offset + 8] & 0xff;
+        int os = bytes[offset + 9] & 0xff;
+        return (xfl == 0 || xfl == 2 || xfl == 4) && (os <= 13 || os == 255);
+    }
+
+    /**
+     * Returns the compressed size of a bgzip member from its header, -1 if this is not a bgzip header.
+     */
+    protected static long getBgzipSize(byte[] header) {
+        if (header.length < BGZIP_HEADER_SIZE || !isHeader(header, 0) || (header[3] & FEXTRA) == 0
+                || header[10] != 6 || header[11] != 0 || header[12] != 'B' || header[13] != 'C' || header[14] != 2
+                || header[15] != 0) {
+            return -1;
+        }
+        return ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+    }
+
+    /**
+     * A compressed region of the file starting at a member header, inflated by a task.
+     */
+    protected static class Region implements Callable<byte[]> {
+        protected final File file;
+
+        protected final long start;
+
+        protected final long end;
+
+        // offset following the last member inflated, set by the task
+        protected long stop;
+
+        // true if the members are followed by something that is not a gzip member
+        protected boolean trailing;
+
+        protected Region(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(4 * (end - start), 1 << 26));
+            Inflater inflater = new Inflater(true);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                Input in = new Input(channel, start);
+                CRC32 crc = new CRC32();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                do {
+                    if (in.position() > start && !in.startsWithMagic()) {
+                        trailing = true;
+                        break;
+                    }
+                    inflateMember(in, inflater, crc, out, buffer);
+                } while (in.position() < end);
+                stop = in.position();
+            } finally {
+                inflater.end();
+            }
+            return out.toByteArray();
+        }
+    }
+
+    protected static void inflateMember(Input in, Inflater inflater, CRC32 crc, ByteArrayOutputStream out,
+            byte[] buffer) throws IOException {
+        readHeader(in);
+        inflater.reset();
+        crc.reset();
+        long size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!in.buffer.hasRemaining() && !in.fill()) {
+                        throw new EOFException("Unexpected end of gzip member");
+                    }
+                    inflater.setInput(in.buffer);
+                }
+                int count = inflater.inflate(buffer);
+                if (count == 0 && inflater.needsDictionary()) {
+                    throw new ZipException("Invalid gzip member");
+                }
+                out.write(buffer, 0, count);
+                crc.update(buffer, 0, count);
+                size += count;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        if (in.readInt() != (int) crc.getValue()) {
+            throw new ZipException("Corrupt gzip trailer, invalid CRC");
+        }
+        if (in.readInt() != (int) size) {
+            throw new ZipException("Corrupt gzip trailer, invalid size");
+        }
+    }
+
+    protected static void readHeader(Input in) throws IOException {
+        if (in.readByte() != 0x1f || in.readByte() != 0x8b) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (in.readByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = in.readByte();
+        in.skip(6);
+        if ((flags & FEXTRA) != 0) {
+            in.skip(in.readByte() | in.readByte() << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (in.readByte() != 0) {
+                // skip file name
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (in.readByte() != 0) {
+                // skip comment
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            in.skip(2);
+        }
+    }
+
+    /**
+     * Buffered positional reads of a file channel.
+     */
+    protected static class Input {
+        protected final FileChannel channel;
+
+        protected final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+        // file offset of the first byte of the buffer
+        protected long base;
+
+        protected Input(FileChannel channel, long position) {
+            this.channel = channel;
+            this.base = position;
+        }
+
+        protected long position() {
+            return base + buffer.position();
+        }
+
+        protected boolean fill() throws IOException {
+            base += buffer.position();
+            buffer.compact();
+            int count = channel.read(buffer, base + buffer.position());
+            buffer.flip();
+            return count > 0;
+        }
+
+        protected int readByte() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                throw new EOFException("Unexpected end of gzip file");
+            }
+            return buffer.get() & 0xff;
+        }
+
+        protected int readInt() throws IOException {
+            return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+        }
+
+        protected void skip(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                readByte();
+            }
+        }
+
+        protected boolean startsWithMagic() throws IOException {
+            while (buffer.remaining() < 2) {
+                if (!fill()) {
+                    return false;
+                }
+            }
+            return buffer.get(buffer.position()) == 0x1f && buffer.get(buffer.position() + 1) == (byte) 0x8b;
+        }
+    }
+
+    /**
+     * Finds regions of about {@link #TASK_SIZE} ending at a member header, ahead of the reader.
+     */
+    protected static class Scanner implements Iterator<Callable<byte[]>> {
+        protected final File file;
+
+        protected final long length;
+
+        // regions returned and not read yet, in order
+        protected final Deque<Region> scheduled = new ArrayDeque<>();
+
+        protected final byte[] buffer = new byte[BUFFER_SIZE];
+
+        protected long position;
+
+        protected long next = -1;
+
+        protected boolean bgzip = true;
+
+        protected boolean stopped;
+
+        protected Scanner(File file) {
+            this.file = file;
+            this.length = file.length();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next < 0 && !stopped && position < length) {
+                try {
+                    next = findEnd();
+                } catch (IOException e) {
+                    // regions are not required, the reader falls back to a serial inflate
+                    next = -1;
+                }
+                stopped = next < 0;
+            }
+            return next >= 0;
+        }
+
+        @Override
+        public Callable<byte[]> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Region ret = new Region(file, position, next);
+            scheduled.add(ret);
+            position = next;
+            next = -1;
+            return ret;
+        }
+
+        /**
+         * Returns the end of the region starting at the current position, -1 if it is too large.
+         */
+        protected long findEnd() throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long ret = position;
+                while (bgzip && ret < length && ret - position < TASK_SIZE) {
+                    ByteBuffer header = ByteBuffer.allocate(BGZIP_HEADER_SIZE);
+                    channel.read(header, ret);
+                    long size = getBgzipSize(header.array());
+                    if (size < 0) {
+                        bgzip = false;
+                        break;
+                    }
+                    ret += size;
+                }
+                if (bgzip) {
+                    return Math.min(ret, length);
+                }
+                // the region ends at the first header after the task size
+                long last = ret;
+                while (ret - position < TASK_SIZE) {
+                    long member = scan(channel, last + 1, Math.min(length, last + MAX_REGION_SIZE));
+                    if (member < 0) {
+                        return last + MAX_REGION_SIZE >= length ? length : -1;
+                    }
+                    ret = last = member;
+                }
+                return ret;
+            }
+        }
+
+        /**
+         * Returns the offset of the first header in {@code [from, to)}, -1 if there is none.
+         */
+        protected long scan(FileChannel channel, long from, long to) throws IOException {
+            long offset = from;
+            while (offset < to) {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer);
+                int count = 0;
+                while (bytes.hasRemaining()) {
+                    int read = channel.read(bytes, offset + count);
+                    if (read <= 0) {
+                        break;
+                    }
+                    count += read;
+                }
+                // a header is 10 bytes long
+                int limit = (int) Math.min(count - 9, to - offset);
+                for (int i = 0; i < limit; i++) {
+                    if (buffer[i] == 0x1f && isHeader(buffer, i)) {
+                        return offset + i;
+                    }
+                }
+                if (limit <= 0) {
+                    return -1;
+                }
+                offset += limit;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Reads regions in order, checking that each one starts where the previous one stopped.
+     */
+    protected static class MemberInputStream extends ParallelGzipInputStream {
+        protected final File file;
+
+        protected final Scanner scanner;
+
+        // offset following the last member read
+        protected long verified;
+
+        protected InputStream serial;
+
+        protected boolean done;
+
+        protected MemberInputStream(File file, int threads) {
+            this(file, new Scanner(file), threads);
+        }
+
+        protected MemberInputStream(File file, Scanner scanner, int threads) {
+            super(scanner, threads);
+            this.file = file;
+            this.scanner = scanner;
+        }
+
+        @Override
+        protected byte[] nextContent() throws IOException {
+            if (serial != null) {
+                byte[] ret = serial.readNBytes(BUFFER_SIZE);
+                return ret.length == 0 ? null : ret;
+            }
+            if (done) {
+                return null;
+            }
+            submit();
+            Region region = scanner.scheduled.peek();
+            if (region == null || region.start != verified) {
+                // no region found or a false header, the rest is inflated serially
+                cancel();
+                if (verified >= scanner.length) {
+                    done = true;
+                    return null;
+                }
+                serial = openSerial(file, verified);
+                return nextContent();
+            }
+            byte[] ret = super.nextContent();
+            scanner.scheduled.poll();
+            verified = region.stop;
+            if (region.trailing) {
+                done = true;
+                cancel();
+            }
+            return ret;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (serial != null) {
+                serial.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory budget shared by the {@link DurationStore}s of a simulation. When the budget is exceeded the largest in-memory
+ * buffer is spilled to disk as a sorted run.
+ * <p>
+ * A budget can be shared by parsers running concurrently, a single thread spills at a time.
+ *
+ * @since 7.0
+ */
+public class HeapBudget {
+    private static final Logger log = LoggerFactory.getLogger(HeapBudget.class);
+
+    protected final long maxBytes;
+
+    protected final AtomicLong usedBytes = new AtomicLong();
+
+    protected final Set<DurationStore> stores = ConcurrentHashMap.newKeySet();
+
+    public HeapBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a budget of {@code maxBytes} or {@code null} when there is no limit.
+     */
+    public static HeapBudget of(long maxBytes) {
+        if (maxBytes <= 0) {
+            return null;
+        }
+        return new HeapBudget(maxBytes);
+    }
+
+    /**
+     * Parses a size like {@code 512m}, {@code 2g} or a plain number of bytes.
+     */
+    public static long parseSize(String size) {
+        if (size == null || size.isBlank()) {
+            return 0;
+        }
+        String value = size.trim().toLowerCase(Locale.ENGLISH);
+        long unit = 1;
+        switch (value.charAt(value.length() - 1)) {
+        case 'k':
+            unit = 1024L;
+            break;
+        case 'm':
+            unit = 1024L * 1024;
+            break;
+        case 'g':
+            unit = 1024L * 1024 * 1024;
+            break;
+        default:
+        }
+        if (unit > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size: " + size, e);
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    protected void register(DurationStore store) {
+        stores.add(store);
+    }
+
+    protected void unregister(DurationStore store) {
+        stores.remove(store);
+    }
+
+    /**
+     * Accounts for {@code bytes} of new allocation, spilling the largest buffers until the budget is respected again.
+     */
+    protected void reserve(long bytes) {
+        if (usedBytes.addAndGet(bytes) <= maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            while (usedBytes.get() > maxBytes) {
+                DurationStore victim = getLargestStore();
+                if (victim == null) {
+                    return;
+                }
+                log.debug("Heap budget exceeded {}/{} bytes, spilling {} durations", usedBytes.get(), maxBytes,
+                        victim.getBufferSize());
+                victim.spill();
+            }
+        }
+    }
+
+    protected void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    protected DurationStore getLargestStore() {
+        DurationStore ret = null;
+        int largest = 0;
+        for (DurationStore store : stores) {
+            int size = store.getBufferSize();
+            if (size > largest) {
+                ret = store;
+                largest = size;
+            }
+        }
+        return ret;
+    }
+}
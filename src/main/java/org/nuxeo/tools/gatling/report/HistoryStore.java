@@ -0,0 +1,428 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only history of simulation runs, used to build trend reports without the original logs.
+ * <p>
+ * The history is a single file made of segments, one per run. A segment header holds the run start, simulation
+ * name, scenario and the position of each column, followed by one summary row per request stored column by column.
+ * A trend then reads only the columns it needs. A truncated segment at the end of the file, left by an interrupted
+ * append, is ignored and overwritten by the next append.
+ * <p>
+ * Segment headers are also appended to an index file next to the history, so opening the store reads the small index
+ * instead of seeking to every segment. Segments missing from the index are read from the history and indexed by the
+ * next append. Appends hold a lock on the history file, runs appended by other processes are read before writing.
+ *
+ * @since 7.0
+ */
+public class HistoryStore {
+    private static final Logger log = LoggerFactory.getLogger(HistoryStore.class);
+
+    protected static final int MAGIC = 0x47524831; // GRH1
+
+    protected static final int INDEX_MAGIC = 0x47524849; // GRHI
+
+    protected static final int SEGMENT_MAGIC = 0x52554e31; // RUN1
+
+    protected static final int VERSION = 1;
+
+    // magic and version
+    protected static final int FILE_HEADER = 8;
+
+    // segment magic, segment length and header length
+    protected static final int SEGMENT_PREFIX = 12;
+
+    // segment offset, segment length and header length
+    protected static final int INDEX_ENTRY_PREFIX = 16;
+
+    protected static final String INDEX_SUFFIX = ".idx";
+
+    protected static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Summary columns, a value is stored as a long or as the bits of a double.
+     */
+    public enum Column {
+        COUNT, ERRORS, MIN, P50, P90, P95, P99, MAX, AVG(true), STDDEV, RPS(true), MAX_USERS, APDEX(true);
+
+        protected final boolean floating;
+
+        Column() {
+            this(false);
+        }
+
+        Column(boolean floating) {
+            this.floating = floating;
+        }
+    }
+
+    protected final File file;
+
+    protected final File indexFile;
+
+    protected final List<Run> runs = new ArrayList<>();
+
+    // end of the last complete segment
+    protected long length;
+
+    // end of the last complete index entry
+    protected long indexLength;
+
+    // number of runs having an index entry, the first ones
+    protected int indexedRuns;
+
+    protected HistoryStore(File file) {
+        this.file = file;
+        indexFile = new File(file.getPath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Opens the history, the file is created by the first append.
+     */
+    public static HistoryStore open(File file) throws IOException {
+        HistoryStore ret = new HistoryStore(file);
+        if (file.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                ret.refresh(raf);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the runs of the simulations ordered by start, all the runs when simulations is empty.
+     */
+    public List<Run> getRuns(Collection<String> simulations) {
+        List<Run> ret = new ArrayList<>();
+        for (Run run : runs) {
+            if (simulations == null || simulations.isEmpty() || simulations.contains(run.simulation)) {
+                ret.add(run);
+            }
+        }
+        ret.sort((a, b) -> Long.compare(a.start, b.start));
+        return ret;
+    }
+
+    public boolean contains(String simulation, long start) {
+        return runs.stream().anyMatch(run -> run.start == start && run.simulation.equals(simulation));
+    }
+
+    /**
+     * Appends the summary of a simulation, returns {@code false} if the run is already recorded.
+     */
+    public boolean append(SimulationContext context) throws IOException {
+        RequestStat simStat = context.getSimStat();
+        String simulation = context.getSimulationName() == null ? "" : context.getSimulationName();
+        if (contains(simulation, simStat.start)) {
+            return false;
+        }
+        List<RequestStat> rows = new ArrayList<>();
+        rows.add(simStat);
+        rows.addAll(context.getRequests());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        for (RequestStat row : rows) {
+            out.writeUTF(row.request);
+        }
+        int namesLength = out.size();
+        int[] offsets = new int[Column.values().length];
+        for (Column column : Column.values()) {
+            offsets[column.ordinal()] = out.size();
+            for (RequestStat row : rows) {
+                out.writeLong(encode(column, row));
+            }
+        }
+        out.flush();
+
+        byte[] header = writeHeader(simStat.start, simulation,
+                context.scenarioName == null ? "" : context.scenarioName, rows.size(), namesLength, offsets);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // released when the file is closed, other processes may have appended since the history was opened
+            raf.getChannel().lock();
+            refresh(raf);
+            if (contains(simulation, simStat.start)) {
+                return false;
+            }
+            if (length == 0) {
+                raf.setLength(0);
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                length = raf.getFilePointer();
+            }
+            raf.seek(length);
+            raf.writeInt(SEGMENT_MAGIC);
+            raf.writeInt(header.length + body.size());
+            raf.writeInt(header.length);
+            raf.write(header);
+            raf.write(body.toByteArray());
+            raf.setLength(raf.getFilePointer());
+            runs.add(readRun(header, header.length, length + SEGMENT_PREFIX));
+            length = raf.getFilePointer();
+            writeIndex();
+        }
+        return true;
+    }
+
+    /**
+     * Reads the request names and the requested columns of the runs.
+     */
+    public List<Summary> read(List<Run> runs, Set<Column> columns) throws IOException {
+        List<Summary> ret = new ArrayList<>(runs.size());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (Run run : runs) {
+                ret.add(read(raf, run, columns));
+            }
+        }
+        return ret;
+    }
+
+    protected Summary read(RandomAccessFile raf, Run run, Set<Column> columns) throws IOException {
+        byte[] names = new byte[run.namesLength];
+        raf.seek(run.bodyOffset);
+        raf.readFully(names);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(names));
+        String[] requests = new String[run.rows];
+        for (int i = 0; i < run.rows; i++) {
+            requests[i] = in.readUTF();
+        }
+        Map<Column, double[]> values = new EnumMap<>(Column.class);
+        byte[] bytes = new byte[run.rows * Long.BYTES];
+        for (Column column : columns) {
+            raf.seek(run.bodyOffset + run.columnOffsets[column.ordinal()]);
+            raf.readFully(bytes);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            double[] columnValues = new double[run.rows];
+            for (int i = 0; i < run.rows; i++) {
+                long value = buffer.getLong();
+                columnValues[i] = column.floating ? Double.longBitsToDouble(value) : value;
+            }
+            values.put(column, columnValues);
+        }
+        return new Summary(run, requests, values);
+    }
+
+    protected static long encode(Column column, RequestStat stat) {
+        return switch (column) {
+        case COUNT -> stat.count;
+        case ERRORS -> stat.errorCount;
+        case MIN -> stat.min;
+        case P50 -> stat.p50;
+        case P90 -> stat.p90;
+        case P95 -> stat.p95;
+        case P99 -> stat.p99;
+        case MAX -> stat.max;
+        case AVG -> Double.doubleToLongBits(stat.avg);
+        case STDDEV -> stat.stddev;
+        case RPS -> Double.doubleToLongBits(stat.rps);
+        case MAX_USERS -> stat.maxUsers;
+        case APDEX -> Double.doubleToLongBits(stat.apdex.getScore());
+        };
+    }
+
+    /**
+     * Reads the runs appended since the last refresh, from the index then from the segments not indexed yet.
+     */
+    protected void refresh(RandomAccessFile raf) throws IOException {
+        long fileLength = raf.length();
+        if (fileLength == 0) {
+            return;
+        }
+        try {
+            if (length == 0) {
+                raf.seek(0);
+                if (raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                    throw new IOException("Not a history file: " + file);
+                }
+                length = FILE_HEADER;
+            }
+            if (indexedRuns == runs.size()) {
+                readIndex(fileLength);
+            }
+            readSegments(raf, fileLength);
+        } catch (EOFException e) {
+            throw new IOException("Invalid history file: " + file, e);
+        }
+    }
+
+    /**
+     * Reads the index entries following the last complete segment, stops at the first incomplete or stale entry.
+     */
+    protected void readIndex(long fileLength) throws IOException {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), IO_BUFFER_SIZE))) {
+            if (indexLength == 0) {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION) {
+                    log.warn("Ignoring invalid history index: " + indexFile);
+                    return;
+                }
+                indexLength = FILE_HEADER;
+            } else {
+                in.skipNBytes(indexLength);
+            }
+            while (true) {
+                long offset = in.readLong();
+                int segmentLength = in.readInt();
+                int headerLength = in.readInt();
+                byte[] header = new byte[headerLength];
+                in.readFully(header);
+                if (offset != length || offset + SEGMENT_PREFIX + segmentLength > fileLength) {
+                    // the history has been truncated or rewritten, the segments are read instead
+                    return;
+                }
+                runs.add(readRun(header, headerLength, offset + SEGMENT_PREFIX));
+                length = offset + SEGMENT_PREFIX + segmentLength;
+                indexLength += INDEX_ENTRY_PREFIX + headerLength;
+                indexedRuns = runs.size();
+            }
+        } catch (EOFException e) {
+            // end of the index or entry interrupted by an append
+        }
+    }
+
+    /**
+     * Reads the segment headers following the last complete segment, stops at the first incomplete segment.
+     */
+    protected void readSegments(RandomAccessFile raf, long fileLength) throws IOException {
+        long position = length;
+        while (position + SEGMENT_PREFIX <= fileLength) {
+            raf.seek(position);
+            if (raf.readInt() != SEGMENT_MAGIC) {
+                break;
+            }
+            int segmentLength = raf.readInt();
+            int headerLength = raf.readInt();
+            if (position + SEGMENT_PREFIX + segmentLength > fileLength) {
+                break;
+            }
+            byte[] header = new byte[headerLength];
+            raf.readFully(header);
+            runs.add(readRun(header, headerLength, position + SEGMENT_PREFIX));
+            position += SEGMENT_PREFIX + segmentLength;
+        }
+        length = position;
+        if (length < fileLength) {
+            log.warn("Ignoring truncated history segment at " + length + " in " + file);
+        }
+    }
+
+    /**
+     * Appends the headers of the runs not indexed yet, an interrupted entry is overwritten.
+     */
+    protected void writeIndex() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+            if (indexLength == 0) {
+                raf.setLength(0);
+                raf.writeInt(INDEX_MAGIC);
+                raf.writeInt(VERSION);
+                indexLength = FILE_HEADER;
+            }
+            ByteArrayOutputStream entries = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(entries);
+            for (Run run : runs.subList(indexedRuns, runs.size())) {
+                byte[] header = writeHeader(run.start, run.simulation, run.scenario, run.rows, run.namesLength,
+                        run.columnOffsets);
+                out.writeLong(run.bodyOffset - header.length - SEGMENT_PREFIX);
+                out.writeInt(header.length + run.getBodyLength());
+                out.writeInt(header.length);
+                out.write(header);
+            }
+            raf.seek(indexLength);
+            raf.write(entries.toByteArray());
+            raf.setLength(raf.getFilePointer());
+            indexLength = raf.getFilePointer();
+            indexedRuns = runs.size();
+        }
+    }
+
+    protected static byte[] writeHeader(long start, String simulation, String scenario, int rows, int namesLength,
+            int[] columnOffsets) throws IOException {
+        ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(ret);
+        out.writeLong(start);
+        out.writeUTF(simulation);
+        out.writeUTF(scenario);
+        out.writeInt(rows);
+        out.writeInt(namesLength);
+        out.writeByte(columnOffsets.length);
+        for (int offset : columnOffsets) {
+            out.writeInt(offset);
+        }
+        return ret.toByteArray();
+    }
+
+    protected static Run readRun(byte[] header, int headerLength, long segmentOffset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header, 0, headerLength));
+        long start = in.readLong();
+        String simulation = in.readUTF();
+        String scenario = in.readUTF();
+        int rows = in.readInt();
+        int namesLength = in.readInt();
+        int[] columnOffsets = new int[in.readUnsignedByte()];
+        for (int i = 0; i < columnOffsets.length; i++) {
+            columnOffsets[i] = in.readInt();
+        }
+        return new Run(start, simulation, scenario, rows, segmentOffset + headerLength, namesLength, columnOffsets);
+    }
+
+    /**
+     * A run recorded in the history.
+     */
+    public record Run(long start, String simulation, String scenario, int rows, long bodyOffset, int namesLength,
+            int[] columnOffsets) {
+        /**
+         * Returns the length of the request names and columns, the last column ends the segment.
+         */
+        public int getBodyLength() {
+            return columnOffsets[columnOffsets.length - 1] + rows * Long.BYTES;
+        }
+    }
+
+    /**
+     * Summary rows of a run, the first row is the whole simulation.
+     */
+    public record Summary(Run run, String[] requests, Map<Column, double[]> values) {
+        public double get(Column column, int row) {
+            return values.get(column)[row];
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Statistics of the simulations as JSON, streamed with a {@link JsonWriter} so the memory used does not depend on the
+ * number of requests nor on the length of the time series.
+ * <p>
+ * Like the HTML report, one simulation gives a simulation document, two simulations a diff and more a trend, the
+ * {@code type} member tells which one. Non finite values are written as {@code null}.
+ *
+ * @since 7.0
+ */
+public class JsonReport {
+    protected static final String[] PERCENTILES = { "p50", "p90", "p95", "p99" };
+
+    protected final List<SimulationContext> stats;
+
+    protected HistoryStore history;
+
+    public JsonReport(List<SimulationContext> stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Builds the trend from the runs recorded in the history instead of the parsed simulations.
+     */
+    public JsonReport setHistory(HistoryStore history) {
+        this.history = history;
+        return this;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        write(json);
+        json.flush();
+    }
+
+    public void write(Writer out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        write(json);
+        json.flush();
+    }
+
+    public void write(JsonWriter json) throws IOException {
+        switch (stats.size()) {
+        case 1:
+            writeSimulation(json, stats.get(0));
+            break;
+        case 2:
+            writeDiff(json, new DiffContext(stats));
+            break;
+        default:
+            writeTrend(json, createTrendContext());
+        }
+    }
+
+    protected TrendContext createTrendContext() throws IOException {
+        if (history == null) {
+            return new TrendContext(stats);
+        }
+        Set<String> simulations = stats.stream().map(SimulationContext::getSimulationName).collect(Collectors.toSet());
+        return new TrendContext(history, simulations);
+    }
+
+    protected void writeSimulation(JsonWriter json, SimulationContext context) throws IOException {
+        json.beginObject().name("type").value("simulation");
+        json.name("simulation");
+        writeContext(json, context);
+        json.endObject();
+    }
+
+    protected void writeDiff(JsonWriter json, DiffContext diff) throws IOException {
+        json.beginObject().name("type").value("diff");
+        json.name("reference");
+        writeContext(json, diff.ref);
+        json.name("challenger");
+        writeContext(json, diff.challenger);
+        json.name("requests").beginArray();
+        for (DiffRequestStat request : diff.getDiffRequests()) {
+            writeChanges(json, request.refR, request.challengerR);
+        }
+        json.endArray();
+        json.name("simulation");
+        writeChanges(json, diff.ref.simStat, diff.challenger.simStat);
+        json.endObject();
+    }
+
+    /**
+     * Writes the changes of the challenger in percent of the reference, {@code null} when the reference is zero.
+     */
+    protected void writeChanges(JsonWriter json, RequestStat ref, RequestStat challenger) throws IOException {
+        json.beginObject().name("request").value(ref.request);
+        json.name("avg").value(change(ref.avg, challenger.avg));
+        json.name("p50").value(change(ref.p50, challenger.p50));
+        json.name("p95").value(change(ref.p95, challenger.p95));
+        json.name("rps").value(change(ref.rps, challenger.rps));
+        json.name("errorCount").value(challenger.errorCount - ref.errorCount);
+        json.endObject();
+    }
+
+    protected static double change(double ref, double challenger) {
+        return challenger * 100.0 / ref - 100.0;
+    }
+
+    protected void writeTrend(JsonWriter json, TrendContext trend) throws IOException {
+        json.beginObject().name("type").value("trend");
+        json.name("scenario").value(trend.scenario);
+        json.name("simulation");
+        writeTrendStat(json, trend.all);
+        json.name("requests").beginArray();
+        for (TrendContext.TrendStat request : trend.requests) {
+            writeTrendStat(json, request);
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    protected void writeTrendStat(JsonWriter json, TrendContext.TrendStat stat) throws IOException {
+        json.beginObject().name("request").value(stat.name);
+        json.name("runs").beginArray();
+        for (int i = 0; i < stat.times.size(); i++) {
+            long start = stat.times.get(i);
+            json.beginObject().name("start").value(start);
+            json.name("startDate").value(RequestStat.formatDate(start));
+            json.name("avg").value(number(stat.yvalues.get(i)));
+            json.name("stddev").value(number(stat.yerrors.get(i)));
+            json.name("rps").value(number(stat.rps.get(i)));
+            json.endObject();
+        }
+        json.endArray().endObject();
+    }
+
+    protected void writeContext(JsonWriter json, SimulationContext context) throws IOException {
+        json.beginObject();
+        json.name("file").value(context.filePath);
+        json.name("simulation").value(context.simulationName);
+        json.name("scenario").value(context.scenarioName);
+        json.name("start").value(context.start);
+        json.name("maxUsers").value(context.maxUsers);
+        json.name("stat");
+        writeStat(json, context.simStat);
+        json.name("requests").beginArray();
+        for (RequestStat request : context.getRequests()) {
+            writeStat(json, request);
+        }
+        json.endArray();
+        json.name("timeline");
+        writeTimeline(json, context.timeline);
+        json.endObject();
+    }
+
+    protected void writeStat(JsonWriter json, RequestStat stat) throws IOException {
+        json.beginObject();
+        json.name("simulation").value(stat.simulation);
+        json.name("scenario").value(stat.scenario);
+        json.name("maxUsers").value(stat.maxUsers);
+        json.name("request").value(stat.request);
+        json.name("requestId").value(stat.requestId);
+        json.name("start").value(stat.start);
+        json.name("startDate").value(stat.startDate);
+        json.name("duration").value(stat.duration);
+        json.name("end").value(stat.end);
+        json.name("count").value(stat.count);
+        json.name("successCount").value(stat.successCount);
+        json.name("errorCount").value(stat.errorCount);
+        json.name("min").value(stat.min);
+        json.name("max").value(stat.max);
+        json.name("avg").value(stat.avg);
+        json.name("stddev").value(stat.stddev);
+        json.name("rps").value(stat.rps);
+        json.name("apdex").value(stat.apdex.getScore());
+        json.name("rating").value(String.valueOf(stat.apdex.getRating()));
+        json.name("percentiles").beginObject();
+        long[] values = { stat.p50, stat.p90, stat.p95, stat.p99 };
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            json.name(PERCENTILES[i]).value(values[i]);
+        }
+        json.endObject();
+        writeSeries(json, stat.series);
+        json.endObject();
+    }
+
+    protected void writeSeries(JsonWriter json, RequestSeries series) throws IOException {
+        json.name("series").beginObject().name("bucketMs").value(series.bucketMs);
+        json.name("time").beginArray();
+        for (int i = 0; i < series.size(); i++) {
+            json.value(series.getTime(i));
+        }
+        json.endArray().name("throughput").beginArray();
+        for (int i = 0; i < series.size(); i++) {
+            json.value(series.getThroughput(i));
+        }
+        json.endArray().name("latency").beginArray();
+        for (int i = 0; i < series.size(); i++) {
+            json.value(series.getLatency(i));
+        }
+        json.endArray().endObject();
+    }
+
+    protected void writeTimeline(JsonWriter json, Timeline timeline) throws IOException {
+        json.beginObject().name("bucketMs").value(timeline.getBucketMs());
+        json.name("time").beginArray();
+        for (int i = 0; i < timeline.size(); i++) {
+            json.value(timeline.getTime(i));
+        }
+        json.endArray();
+        // concurrency is only known once the simulation stats are computed
+        if (timeline.activeUsers != null) {
+            json.name("users").beginArray();
+            for (int i = 0; i < timeline.size(); i++) {
+                json.value(timeline.getActiveUsers(i));
+            }
+            json.endArray().name("requests").beginArray();
+            for (int i = 0; i < timeline.size(); i++) {
+                json.value(timeline.getActiveRequests(i));
+            }
+            json.endArray();
+        }
+        json.name("throughput").beginArray();
+        for (int i = 0; i < timeline.size(); i++) {
+            json.value(timeline.getThroughput(i));
+        }
+        json.endArray().name("latency").beginArray();
+        for (int i = 0; i < timeline.size(); i++) {
+            json.value(timeline.getLatency(i));
+        }
+        json.endArray().name("errors").beginArray();
+        for (int i = 0; i < timeline.size(); i++) {
+            json.value(timeline.getErrors(i));
+        }
+        json.endArray().endObject();
+    }
+
+    protected static double number(Number value) {
+        return value == null ? Double.NaN : value.doubleValue();
+    }
+}
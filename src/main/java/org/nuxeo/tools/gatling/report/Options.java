@@ -16,15 +16,23 @@
  */
 package org.nuxeo.tools.gatling.report;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.internal.Lists;
 
 public class Options {
-    @Parameter(required = true, description = "SIMULATION.LOG...")
+    @Parameter(description = "SIMULATION.LOG... or ARCHIVE.TAR.GZ[!/PATH/TO/SIMULATION.LOG]...")
     public List<String> simulations = Lists.newArrayList();
 
     @Parameter(names = { "--output-dir",
@@ -38,6 +46,21 @@ public class Options {
     @Parameter(names = { "--yaml", "-y" }, description = "Create a YAML report instead of an HTML report.")
     public boolean yaml = false;
 
+    @Parameter(names = { "--formats" }, description = "Render these formats in the report directory from a single"
+            + " parse, a comma separated list of html, yaml, csv and json.")
+    public List<String> formats = new ArrayList<>();
+
+    @Parameter(names = { "--csv-gzip" }, description = "Compress the CSV output with gzip.")
+    public boolean csvGzip = false;
+
+    @Parameter(names = { "--precompress" }, description = "Also write compressed variants of every report file for"
+            + " static hosting, a comma separated list of gzip and zstd.")
+    public List<String> precompress = new ArrayList<>();
+
+    @Parameter(names = { "--asset-dir" }, description = "Share a single copy of the included scripts between reports"
+            + " in this directory, named after their content.")
+    public String assetDirectory;
+
     @Parameter(names = { "--force", "-f" }, description = "Override an existing report.")
     public boolean force = false;
 
@@ -66,6 +89,67 @@ public class Options {
                     + " to tolerable.")
     public Float apdexT = 1.5f;
 
+    @Parameter(names = { "--max-heap-budget" }, description = "Memory used to keep exact durations of all the simulations,"
+            + " ex: 512m or 2g, above it sorted durations are spilled to temporary files. Unlimited by default.")
+    protected String maxHeapBudget;
+
+    @Parameter(names = { "--include" }, description = "Only report requests whose name matches this regex, can be repeated.")
+    protected List<String> includes = new ArrayList<>();
+
+    @Parameter(names = { "--exclude" }, description = "Ignore requests whose name matches this regex, can be repeated.")
+    protected List<String> excludes = new ArrayList<>();
+
+    @Parameter(names = { "--scenario" }, description = "Only report requests of this scenario, can be repeated.")
+    protected List<String> scenarios = new ArrayList<>();
+
+    @Parameter(names = { "--cache" }, description = "Keep a parsed summary next to each simulation log,"
+            + " unchanged logs are not parsed again.")
+    protected boolean cache = false;
+
+    @Parameter(names = { "--cache-dir" }, description = "Keep parsed summaries and time indexes in this directory"
+            + " instead of next to simulation logs, implies --cache. Downloaded Graphite images are also kept there.")
+    protected String cacheDirectory;
+
+    @Parameter(names = { "--history" }, description = "Record parsed simulations in this history file, trend reports"
+            + " are then built from all the recorded runs, simulation logs are optional.")
+    protected String history;
+
+    @Parameter(names = { "--export-records" }, description = "Export the parsed requests of each simulation into a"
+            + " columnar file in this directory, to be analyzed with RecordReader.")
+    protected String recordsDirectory;
+
+    @Parameter(names = { "--transcode" }, description = "Convert simulation logs into compact binary logs written in"
+            + " this directory, no report is generated.")
+    protected String transcodeDirectory;
+
+    @Parameter(names = { "--from" }, description = "Only report requests started at or after this time, as epoch"
+            + " milliseconds or ISO date time, ex: 2025-03-01T10:15:00.")
+    protected String from;
+
+    @Parameter(names = { "--to" }, description = "Only report requests started at or before this time, as epoch"
+            + " milliseconds or ISO date time.")
+    protected String to;
+
+    @Parameter(names = { "--time-index" }, description = "Keep a time index next to each simulation log, or in the"
+            + " cache directory, so --from and --to only read the matching part of the log.")
+    protected boolean timeIndex = false;
+
+    @Parameter(names = { "--merge" }, description = "Merge the simulation logs of distributed injectors into a single"
+            + " simulation, logs are parsed concurrently.")
+    protected boolean merge = false;
+
+    @Parameter(names = { "--chart-data" }, description = "Write chart series as JavaScript literals (inline), or as a"
+            + " compressed binary payload embedded in the report (embedded) or written next to it (file).")
+    protected String chartData = "inline";
+
+    @Parameter(names = { "--chart-points" }, description = "Maximum number of points plotted per over-time trace,"
+            + " series are downsampled and finer resolutions are plotted on zoom.")
+    protected int chartPoints = ChartData.DEFAULT_POINTS;
+
+    @Parameter(names = { "--multi-page" }, description = "Render a simulation as an overview page linking to a detail"
+            + " page per request, detail pages are rendered concurrently.")
+    protected boolean multiPage = false;
+
     @Parameter(names = { "--help", "-h" }, description = "Display this message.", help = true)
     public boolean help;
 
@@ -78,4 +162,139 @@ public class Options {
         }
         return ZoneId.of(timeZoneString);
     }
+
+    /**
+     * @since 7.0
+     */
+    public ChartData.Mode getChartDataMode() {
+        try {
+            return ChartData.Mode.valueOf(chartData.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid chart data mode: " + chartData, e);
+        }
+    }
+
+    /**
+     * @since 7.0
+     */
+    public Set<Report.Format> getFormats() {
+        Set<Report.Format> ret = EnumSet.noneOf(Report.Format.class);
+        formats.forEach(format -> ret.add(Report.Format.of(format)));
+        return ret;
+    }
+
+    /**
+     * Returns the compressions of the report variants, only the content encodings supported by browsers.
+     */
+    public Set<Compression> getPrecompression() {
+        Set<Compression> ret = EnumSet.noneOf(Compression.class);
+        for (String name : precompress) {
+            Compression compression = Compression.of(name);
+            if (compression != Compression.GZIP && compression != Compression.ZSTD) {
+                throw new IllegalArgumentException("Unsupported precompression: " + name);
+            }
+            ret.add(compression);
+        }
+        return ret;
+    }
+
+    /**
+     * Graphite images are cached with the parsed summaries.
+     */
+    public File getGraphiteCacheDirectory() {
+        return cacheDirectory == null ? null : new File(cacheDirectory, "graphite");
+    }
+
+    public File getAssetDirectory() {
+        return assetDirectory == null ? null : new File(assetDirectory);
+    }
+
+    public long getMaxHeapBudget() {
+        return HeapBudget.parseSize(maxHeapBudget);
+    }
+
+    /**
+     * Returns a new filter, filters cache identifiers of a single simulation and are not shared between parsers.
+     */
+    public RequestFilter getRequestFilter() {
+        return RequestFilter.of(includes, excludes, scenarios);
+    }
+
+    /**
+     * Returns the cache of parsed summaries or {@code null} when disabled.
+     */
+    public SummaryCache getSummaryCache() {
+        if (cacheDirectory != null) {
+            return new SummaryCache(new File(cacheDirectory));
+        }
+        return cache ? new SummaryCache(null) : null;
+    }
+
+    /**
+     * @since 7.0
+     */
+    public HistoryStore getHistoryStore() throws IOException {
+        if (history == null) {
+            return null;
+        }
+        return HistoryStore.open(new File(history));
+    }
+
+    /**
+     * Returns the file where the requests of the simulation are exported or {@code null} when disabled.
+     *
+     * @since 7.0
+     */
+    public File getRecordFile(File simulation) {
+        if (recordsDirectory == null) {
+            return null;
+        }
+        File dir = new File(recordsDirectory);
+        dir.mkdirs();
+        return new File(dir, simulation.getName() + ".records");
+    }
+
+    /**
+     * @since 7.0
+     */
+    public long getFrom() {
+        return parseTime(from, Long.MIN_VALUE);
+    }
+
+    /**
+     * @since 7.0
+     */
+    public long getTo() {
+        return parseTime(to, Long.MAX_VALUE);
+    }
+
+    protected static long parseTime(String value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.matches("\\d+")) {
+            return Long.parseLong(value);
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e2) {
+                throw new IllegalArgumentException("Invalid time: " + value, e2);
+            }
+        }
+    }
+
+    /**
+     * Returns the time index file of the simulation or {@code null} when disabled.
+     *
+     * @since 7.0
+     */
+    public File getTimeIndexFile(File simulation) {
+        if (!timeIndex) {
+            return null;
+        }
+        return TimeIndex.getIndexFile(simulation, cacheDirectory == null ? null : new File(cacheDirectory));
+    }
 }
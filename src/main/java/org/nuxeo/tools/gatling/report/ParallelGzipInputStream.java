@@ -0,0 +1,186 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uncompressed content of a gzip file made of regions that can be decompressed independently.
+ * <p>
+ * Regions are decompressed concurrently into buffers, starting with the first read and a bounded number of regions
+ * ahead of the reader, they are read back in order.
+ *
+ * @since 7.0
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    protected static final byte[] EMPTY = new byte[0];
+
+    protected final Iterator<Callable<byte[]>> regions;
+
+    protected final ExecutorService executor;
+
+    // regions submitted and not read yet, in order
+    protected final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    protected final int lookahead;
+
+    protected byte[] current = EMPTY;
+
+    protected int position;
+
+    protected boolean closed;
+
+    /**
+     * @param regions tasks returning the uncompressed content of each region, in order
+     * @param threads maximum number of regions decompressed at once
+     */
+    public ParallelGzipInputStream(List<Callable<byte[]>> regions, int threads) {
+        this(regions.iterator(), Math.min(threads, regions.size()));
+    }
+
+    protected ParallelGzipInputStream(Iterator<Callable<byte[]>> regions, int threads) {
+        this.regions = regions;
+        int count = Math.max(1, threads);
+        this.lookahead = 2 * count;
+        this.executor = Executors.newFixedThreadPool(count, task -> {
+            Thread ret = new Thread(task, "gzip-inflater");
+            ret.setDaemon(true);
+            return ret;
+        });
+    }
+
+    protected void submit() {
+        while (!executor.isShutdown() && pending.size() < lookahead && regions.hasNext()) {
+            pending.add(executor.submit(regions.next()));
+        }
+    }
+
+    /**
+     * Moves to the next non empty region, returns false at the end of the stream.
+     */
+    protected boolean nextRegion() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (position == current.length) {
+            byte[] next = nextContent();
+            if (next == null) {
+                return false;
+            }
+            current = next;
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Waits for the next region in order, returns {@code null} when there is no more region.
+     */
+    protected byte[] nextContent() throws IOException {
+        submit();
+        Future<byte[]> next = pending.poll();
+        if (next == null) {
+            return null;
+        }
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Can not decompress region", e.getCause());
+        } finally {
+            submit();
+        }
+    }
+
+    /**
+     * Cancels the regions not read yet.
+     */
+    protected void cancel() {
+        pending.forEach(future -> future.cancel(true));
+        pending.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads exactly {@code length} uncompressed bytes of a region.
+     */
+    protected static byte[] readRegion(InputStream in, long length) throws IOException {
+        byte[] ret = in.readNBytes(Math.toIntExact(length));
+        if (ret.length != length) {
+            throw new EOFException("Truncated gzip region, expecting " + length + " bytes, got " + ret.length);
+        }
+        return ret;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextRegion()) {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextRegion()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        cancel();
+        current = EMPTY;
+        position = 0;
+    }
+}
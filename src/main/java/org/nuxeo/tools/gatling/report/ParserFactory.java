@@ -16,20 +16,22 @@
  */
 package org.nuxeo.tools.gatling.report;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
-import java.io.FileInputStream;
 import java.io.BufferedInputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
 
 public class ParserFactory {
 
     private static final String BINARY_FORMAT = "BINARY_FORMAT";
 
+    // bytes read ahead to detect the format of a stream
+    private static final int HEAD_SIZE = 64 * 1024;
+
     private ParserFactory() {
         // Utility class - hide constructor
     }
@@ -42,9 +44,41 @@ public class ParserFactory {
         return getVersionSpecificParser(file, null);
     }
 
+    /**
+     * Returns a parser reading a simulation log from a stream, like an archive entry, the compression and the format
+     * are detected from the first bytes. The file only names the simulation.
+     *
+     * @since 7.0
+     */
+    public static SimulationParser getParser(File file, InputStream in, Float apdexT) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, HEAD_SIZE);
+        buffered.mark(4);
+        Compression compression = Compression.of(buffered.readNBytes(4));
+        buffered.reset();
+        InputStream content = buffered;
+        if (compression != Compression.NONE) {
+            content = new BufferedInputStream(compression.open(buffered), HEAD_SIZE);
+        }
+        content.mark(HEAD_SIZE);
+        byte[] head = content.readNBytes(HEAD_SIZE);
+        content.reset();
+        SimulationParser ret;
+        if (SimulationParserCompact.isCompact(head)) {
+            ret = new SimulationParserCompact(file, apdexT);
+        } else {
+            ret = getVersionSpecificParser(file, getHeaderLine(file, head), apdexT);
+        }
+        return ret.setInput(content);
+    }
+
     protected static SimulationParser getVersionSpecificParser(File file, Float apdexT) throws IOException {
-        List<String> header = getHeaderLine(file);
+        if (SimulationParserCompact.isCompact(file)) {
+            return new SimulationParserCompact(file, apdexT);
+        }
+        return getVersionSpecificParser(file, getHeaderLine(file), apdexT);
+    }
 
+    protected static SimulationParser getVersionSpecificParser(File file, List<String> header, Float apdexT) {
         // Handle binary format
         if (isBinaryFormat(header)) {
             return createBinaryFormatParser(file, apdexT, header.get(5));
@@ -115,14 +149,11 @@ public class ParserFactory {
 
     protected static List<String> getHeaderLine(File file) throws IOException {
         // First check if this might be a binary format file (Gatling 3.13+)
-        // by looking at the first byte
+        // by looking at the first uncompressed byte
         boolean mightBeBinary = false;
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            if (raf.length() > 0) {
-                byte firstByte = raf.readByte();
-                // Binary files start with byte 0 (RUN_RECORD)
-                mightBeBinary = (firstByte == 0);
-            }
+        try (InputStream in = Compression.open(file)) {
+            // Binary files start with byte 0 (RUN_RECORD)
+            mightBeBinary = (in.read() == 0);
         } catch (IOException e) {
             // Ignore and try text format
         }
@@ -131,16 +162,7 @@ public class ParserFactory {
             // Try binary detection first for files that might be binary
             String binaryVersion = extractBinaryVersion(file);
             if (binaryVersion != null) {
-                List<String> binaryHeader = new ArrayList<>();
-                // Create a header that mimics the text format but indicates it's binary
-                // The version will be the actual version extracted from the file
-                binaryHeader.add(BINARY_FORMAT);
-                binaryHeader.add("SIMULATION");
-                binaryHeader.add("UNKNOWN"); // Simulation name (will be read by the parser)
-                binaryHeader.add("0"); // Start timestamp (will be read by the parser)
-                binaryHeader.add("RUN");
-                binaryHeader.add(binaryVersion); // Actual version number
-                return binaryHeader;
+                return getBinaryHeader(binaryVersion);
             }
         }
 
@@ -160,16 +182,7 @@ public class ParserFactory {
         if (!mightBeBinary) {
             String binaryVersion = extractBinaryVersion(file);
             if (binaryVersion != null) {
-                List<String> binaryHeader = new ArrayList<>();
-                // Create a header that mimics the text format but indicates it's binary
-                // The version will be the actual version extracted from the file
-                binaryHeader.add(BINARY_FORMAT);
-                binaryHeader.add("SIMULATION");
-                binaryHeader.add("UNKNOWN"); // Simulation name (will be read by the parser)
-                binaryHeader.add("0"); // Start timestamp (will be read by the parser)
-                binaryHeader.add("RUN");
-                binaryHeader.add(binaryVersion); // Actual version number
-                return binaryHeader;
+                return getBinaryHeader(binaryVersion);
             }
         }
 
@@ -177,9 +190,42 @@ public class ParserFactory {
         throw new IOException("Unable to determine format of simulation log: " + file.getAbsolutePath());
     }
 
+    /**
+     * Same as {@link #getHeaderLine(File)} from the first uncompressed bytes of a log.
+     */
+    protected static List<String> getHeaderLine(File file, byte[] head) throws IOException {
+        if (head.length > 0 && head[0] == 0) {
+            String binaryVersion = readBinaryVersionFromStream(new ByteArrayInputStream(head));
+            if (binaryVersion != null) {
+                return getBinaryHeader(binaryVersion);
+            }
+        }
+        try (SimulationReader reader = new SimulationReader(new ByteArrayInputStream(head),
+                SimulationReader.newCsvParser())) {
+            List<String> header = reader.readNext();
+            if (header != null && header.size() > 1) {
+                return header;
+            }
+        }
+        throw new IOException("Unable to determine format of simulation log: " + file.getPath());
+    }
+
+    private static List<String> getBinaryHeader(String binaryVersion) {
+        List<String> binaryHeader = new ArrayList<>();
+        // Create a header that mimics the text format but indicates it's binary
+        // The version will be the actual version extracted from the file
+        binaryHeader.add(BINARY_FORMAT);
+        binaryHeader.add("SIMULATION");
+        binaryHeader.add("UNKNOWN"); // Simulation name (will be read by the parser)
+        binaryHeader.add("0"); // Start timestamp (will be read by the parser)
+        binaryHeader.add("RUN");
+        binaryHeader.add(binaryVersion); // Actual version number
+        return binaryHeader;
+    }
+
     /**
      * Extracts the Gatling version from a binary format file.
-     * Works with both regular and gzip compressed files.
+     * Works with both regular and gzip, zstd or lz4 compressed files.
      * Returns null if the file is not in binary format.
      */
     private static String extractBinaryVersion(File file) throws IOException {
@@ -187,16 +233,13 @@ public class ParserFactory {
             return null;
         }
 
-        // Check if file is gzip compressed
-        boolean isGzipped = isGzippedFile(file);
-
-        if (isGzipped) {
-            // Handle gzipped file
-            try (InputStream fis = new FileInputStream(file);
-                    BufferedInputStream bis = new BufferedInputStream(fis);
-                    GZIPInputStream gzis = new GZIPInputStream(bis)) {
+        // Check if file is compressed
+        Compression compression = Compression.of(file);
 
-                return readBinaryVersionFromStream(gzis);
+        if (compression != Compression.NONE) {
+            // Handle compressed file
+            try (InputStream is = new BufferedInputStream(compression.open(file, 1))) {
+                return readBinaryVersionFromStream(is);
             } catch (IOException e) {
                 return null;
             }
@@ -210,24 +253,6 @@ public class ParserFactory {
         }
     }
 
-    /**
-     * Determines if a file is gzipped by checking its magic number.
-     */
-    private static boolean isGzippedFile(File file) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            if (raf.length() < 2) {
-                return false;
-            }
-
-            // Check for gzip magic number (0x1F 0x8B)
-            int byte1 = raf.read();
-            int byte2 = raf.read();
-            return byte1 == 0x1F && byte2 == 0x8B;
-        } catch (IOException e) {
-            return false;
-        }
-    }
-
     /**
      * Reads the binary version from a RandomAccessFile.
      */
@@ -281,7 +306,7 @@ public class ParserFactory {
 
         // Read the Gatling version string length (4 bytes)
         byte[] lengthBytes = new byte[4];
-        int bytesRead = is.read(lengthBytes);
+        int bytesRead = is.readNBytes(lengthBytes, 0, 4);
         if (bytesRead != 4) {
             return null;
         }
@@ -299,7 +324,7 @@ public class ParserFactory {
 
         // Read the version string bytes
         byte[] versionBytes = new byte[stringLength];
-        bytesRead = is.read(versionBytes);
+        bytesRead = is.readNBytes(versionBytes, 0, stringLength);
 
         if (bytesRead != stringLength) {
             return null; // Couldn't read full version string
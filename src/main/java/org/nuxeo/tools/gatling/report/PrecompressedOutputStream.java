@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * Writes a file and its compressed variants in a single pass, like {@code index.html}, {@code index.html.gz} and
+ * {@code index.html.zst}, so a static web server can serve the variant accepted by the client without compressing on
+ * the fly.
+ * <p>
+ * Bytes are compressed as they are written, nothing is buffered beyond the compressor windows. Variants are complete
+ * once the stream is closed, {@link #flush()} only flushes the plain file so the compression ratio is not degraded.
+ *
+ * @since 7.0
+ */
+public class PrecompressedOutputStream extends OutputStream {
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    // the plain file then the variants
+    protected final OutputStream[] outs;
+
+    /**
+     * Opens the file, plus its compressed variants if any.
+     */
+    public static OutputStream open(File file, Set<Compression> compressions) throws IOException {
+        if (compressions.isEmpty()) {
+            return new FileOutputStream(file);
+        }
+        return new PrecompressedOutputStream(file, compressions);
+    }
+
+    /**
+     * Returns the compressed variant of a file, named with the extension of the compression appended.
+     */
+    public static File getVariant(File file, Compression compression) {
+        return new File(file.getPath() + "." + compression.getExtension());
+    }
+
+    protected PrecompressedOutputStream(File file, Set<Compression> compressions) throws IOException {
+        outs = new OutputStream[compressions.size() + 1];
+        int count = 0;
+        try {
+            outs[count++] = new FileOutputStream(file);
+            for (Compression compression : compressions) {
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(getVariant(file, compression)),
+                        BUFFER_SIZE);
+                try {
+                    outs[count] = compression.compress(out);
+                } catch (IOException e) {
+                    out.close();
+                    throw e;
+                }
+                count++;
+            }
+        } catch (IOException e) {
+            for (int i = 0; i < count; i++) {
+                try {
+                    outs[i].close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        for (OutputStream out : outs) {
+            out.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (OutputStream out : outs) {
+            out.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        outs[0].flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (OutputStream out : outs) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.nuxeo.tools.gatling.report.RecordWriter.BlockInfo;
+import org.nuxeo.tools.gatling.report.RecordWriter.Column;
+
+/**
+ * Reads the requests exported by a {@link RecordWriter}.
+ * <p>
+ * Only the requested columns are read, blocks whose start range does not overlap the requested time range are
+ * skipped without being read.
+ *
+ * @since 7.0
+ */
+public class RecordReader implements Closeable {
+    protected final File file;
+
+    protected final RandomAccessFile raf;
+
+    protected final List<String> scenarioNames;
+
+    protected final List<String> requestNames;
+
+    protected final List<BlockInfo> blocks;
+
+    public RecordReader(File file) throws IOException {
+        this.file = file;
+        raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < 20 || raf.readInt() != RecordWriter.MAGIC || raf.readInt() != RecordWriter.VERSION) {
+                throw new IOException("Not a record file: " + file);
+            }
+            raf.seek(raf.length() - 12);
+            long footer = raf.readLong();
+            if (raf.readInt() != RecordWriter.MAGIC) {
+                throw new IOException("Incomplete record file: " + file);
+            }
+            byte[] bytes = new byte[(int) (raf.length() - 12 - footer)];
+            raf.seek(footer);
+            raf.readFully(bytes);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            scenarioNames = readNames(in);
+            requestNames = readNames(in);
+            int blockCount = in.readInt();
+            blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                BlockInfo block = new BlockInfo();
+                block.offset = in.readLong();
+                block.count = in.readInt();
+                block.minStart = in.readLong();
+                block.maxStart = in.readLong();
+                block.minDuration = in.readLong();
+                block.maxDuration = in.readLong();
+                block.errors = in.readInt();
+                for (int j = 0; j < block.columnLengths.length; j++) {
+                    block.columnLengths[j] = in.readInt();
+                }
+                blocks.add(block);
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public List<String> getScenarioNames() {
+        return Collections.unmodifiableList(scenarioNames);
+    }
+
+    public List<String> getRequestNames() {
+        return Collections.unmodifiableList(requestNames);
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    public long getCount() {
+        return blocks.stream().mapToLong(block -> block.count).sum();
+    }
+
+    /**
+     * Reads all the records with the requested columns.
+     */
+    public void scan(Set<Column> columns, Consumer<Batch> consumer) throws IOException {
+        scan(Long.MIN_VALUE, Long.MAX_VALUE, columns, consumer);
+    }
+
+    /**
+     * Reads the records started in {@code [from, to]} with the requested columns, the consumer receives one batch per
+     * block read.
+     */
+    public void scan(long from, long to, Set<Column> columns, Consumer<Batch> consumer) throws IOException {
+        boolean ranged = from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+        Set<Column> toRead = EnumSet.noneOf(Column.class);
+        toRead.addAll(columns);
+        if (ranged) {
+            toRead.add(Column.START);
+        }
+        for (BlockInfo block : blocks) {
+            if (block.maxStart < from || block.minStart > to) {
+                continue;
+            }
+            Batch batch = readBlock(block, toRead);
+            if (ranged && (block.minStart < from || block.maxStart > to)) {
+                batch.retain(from, to);
+            }
+            if (batch.size > 0) {
+                consumer.accept(batch);
+            }
+        }
+    }
+
+    protected Batch readBlock(BlockInfo block, Set<Column> columns) throws IOException {
+        Batch ret = new Batch(block.count);
+        for (Column column : columns) {
+            byte[] bytes = new byte[block.columnLengths[column.ordinal()]];
+            raf.seek(block.getColumnOffset(column));
+            raf.readFully(bytes);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            switch (column) {
+            case SCENARIO:
+                ret.scenarioIds = new int[block.count];
+                for (int i = 0; i < block.count; i++) {
+                    ret.scenarioIds[i] = (int) Varints.readVarLong(in);
+                }
+                break;
+            case REQUEST:
+                ret.requestIds = new int[block.count];
+                for (int i = 0; i < block.count; i++) {
+                    ret.requestIds[i] = (int) Varints.readVarLong(in);
+                }
+                break;
+            case START:
+                ret.starts = new long[block.count];
+                long previous = block.minStart;
+                for (int i = 0; i < block.count; i++) {
+                    previous += Varints.unZigZag(Varints.readVarLong(in));
+                    ret.starts[i] = previous;
+                }
+                break;
+            case DURATION:
+                ret.durations = new long[block.count];
+                for (int i = 0; i < block.count; i++) {
+                    ret.durations[i] = Varints.unZigZag(Varints.readVarLong(in));
+                }
+                break;
+            case SUCCESS:
+                ret.success = new boolean[block.count];
+                for (int i = 0; i < block.count; i++) {
+                    ret.success[i] = (bytes[i >> 3] & (1 << (i & 7))) != 0;
+                }
+                break;
+            }
+        }
+        return ret;
+    }
+
+    protected static List<String> readNames(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> ret = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ret.add(in.readBoolean() ? in.readUTF() : null);
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * Records of a block, columns that have not been read are {@code null}.
+     */
+    public static class Batch {
+        protected int size;
+
+        protected int[] scenarioIds;
+
+        protected int[] requestIds;
+
+        protected long[] starts;
+
+        protected long[] durations;
+
+        protected boolean[] success;
+
+        protected Batch(int size) {
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int[] getScenarioIds() {
+            return scenarioIds;
+        }
+
+        public int[] getRequestIds() {
+            return requestIds;
+        }
+
+        public long[] getStarts() {
+            return starts;
+        }
+
+        public long[] getDurations() {
+            return durations;
+        }
+
+        public boolean[] getSuccess() {
+            return success;
+        }
+
+        /**
+         * Keeps only the records started in {@code [from, to]}, preserving their order.
+         */
+        protected void retain(long from, long to) {
+            int j = 0;
+            for (int i = 0; i < size; i++) {
+                if (starts[i] < from || starts[i] > to) {
+                    continue;
+                }
+                starts[j] = starts[i];
+                if (scenarioIds != null) {
+                    scenarioIds[j] = scenarioIds[i];
+                }
+                if (requestIds != null) {
+                    requestIds[j] = requestIds[i];
+                }
+                if (durations != null) {
+                    durations[j] = durations[i];
+                }
+                if (success != null) {
+                    success[j] = success[i];
+                }
+                j++;
+            }
+            size = j;
+        }
+    }
+}
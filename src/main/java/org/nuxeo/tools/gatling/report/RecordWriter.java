@@ -0,0 +1,244 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exports the parsed requests of a simulation into a columnar file, read back with {@link RecordReader}.
+ * <p>
+ * Records are written in blocks, each block stores its columns one after the other: scenario and request ids of the
+ * name dictionaries, start timestamps as deltas, durations and a success bitmap. Integers are zigzag varint encoded.
+ * The footer holds the dictionaries and a block index with the min/max start and duration of each block, so readers
+ * can skip blocks by time range and load only the columns they need.
+ *
+ * @since 7.0
+ */
+public class RecordWriter implements SimulationContext.RecordListener, Closeable {
+    protected static final int MAGIC = 0x47525231; // GRR1
+
+    protected static final int VERSION = 1;
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    public enum Column {
+        SCENARIO, REQUEST, START, DURATION, SUCCESS
+    }
+
+    protected final File file;
+
+    protected final DataOutputStream out;
+
+    protected final int blockSize;
+
+    protected final List<BlockInfo> blocks = new ArrayList<>();
+
+    protected final int[] scenarioIds;
+
+    protected final int[] requestIds;
+
+    protected final long[] starts;
+
+    protected final long[] durations;
+
+    protected final byte[] success;
+
+    protected int size;
+
+    protected long position;
+
+    protected SimulationContext context;
+
+    public RecordWriter(File file) throws IOException {
+        this(file, DEFAULT_BLOCK_SIZE);
+    }
+
+    public RecordWriter(File file, int blockSize) throws IOException {
+        this.file = file;
+        this.blockSize = blockSize;
+        scenarioIds = new int[blockSize];
+        requestIds = new int[blockSize];
+        starts = new long[blockSize];
+        durations = new long[blockSize];
+        success = new byte[(blockSize + 7) / 8];
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        position = out.size();
+    }
+
+    /**
+     * Sets the context providing the name dictionaries, written when the writer is closed.
+     */
+    public RecordWriter setContext(SimulationContext context) {
+        this.context = context;
+        return this;
+    }
+
+    @Override
+    public void onRequest(int scenarioId, int requestId, long start, long end, boolean ok) {
+        scenarioIds[size] = scenarioId;
+        requestIds[size] = requestId;
+        starts[size] = start;
+        durations[size] = end - start;
+        if (ok) {
+            success[size >> 3] |= (byte) (1 << (size & 7));
+        }
+        if (++size == blockSize) {
+            try {
+                flushBlock();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can not write records to " + file, e);
+            }
+        }
+    }
+
+    protected void flushBlock() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        BlockInfo block = new BlockInfo();
+        block.offset = position;
+        block.count = size;
+        block.minStart = Long.MAX_VALUE;
+        block.maxStart = Long.MIN_VALUE;
+        block.minDuration = Long.MAX_VALUE;
+        block.maxDuration = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            block.minStart = Math.min(block.minStart, starts[i]);
+            block.maxStart = Math.max(block.maxStart, starts[i]);
+            block.minDuration = Math.min(block.minDuration, durations[i]);
+            block.maxDuration = Math.max(block.maxDuration, durations[i]);
+            if ((success[i >> 3] & (1 << (i & 7))) == 0) {
+                block.errors++;
+            }
+        }
+        ByteArrayOutputStream column = new ByteArrayOutputStream(size * 2);
+        DataOutputStream columnOut = new DataOutputStream(column);
+        for (Column name : Column.values()) {
+            column.reset();
+            switch (name) {
+            case SCENARIO:
+                for (int i = 0; i < size; i++) {
+                    Varints.writeVarLong(columnOut, scenarioIds[i]);
+                }
+                break;
+            case REQUEST:
+                for (int i = 0; i < size; i++) {
+                    Varints.writeVarLong(columnOut, requestIds[i]);
+                }
+                break;
+            case START:
+                long previous = block.minStart;
+                for (int i = 0; i < size; i++) {
+                    Varints.writeVarLong(columnOut, Varints.zigZag(starts[i] - previous));
+                    previous = starts[i];
+                }
+                break;
+            case DURATION:
+                for (int i = 0; i < size; i++) {
+                    Varints.writeVarLong(columnOut, Varints.zigZag(durations[i]));
+                }
+                break;
+            case SUCCESS:
+                columnOut.write(success, 0, (size + 7) / 8);
+                break;
+            }
+            block.columnLengths[name.ordinal()] = column.size();
+            column.writeTo(out);
+            position += column.size();
+        }
+        blocks.add(block);
+        Arrays.fill(success, (byte) 0);
+        size = 0;
+    }
+
+    /**
+     * Writes the pending block, the dictionaries and the block index.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            long footer = position;
+            List<String> scenarios = context == null ? List.of() : context.getScenarioNames();
+            List<String> requests = context == null ? List.of() : context.getRequestNames();
+            writeNames(scenarios);
+            writeNames(requests);
+            out.writeInt(blocks.size());
+            for (BlockInfo block : blocks) {
+                out.writeLong(block.offset);
+                out.writeInt(block.count);
+                out.writeLong(block.minStart);
+                out.writeLong(block.maxStart);
+                out.writeLong(block.minDuration);
+                out.writeLong(block.maxDuration);
+                out.writeInt(block.errors);
+                for (int length : block.columnLengths) {
+                    out.writeInt(length);
+                }
+            }
+            out.writeLong(footer);
+            out.writeInt(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    protected void writeNames(List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeBoolean(name != null);
+            if (name != null) {
+                out.writeUTF(name);
+            }
+        }
+    }
+
+    /**
+     * Position and statistics of a block.
+     */
+    protected static class BlockInfo {
+        protected long offset;
+
+        protected int count;
+
+        protected long minStart, maxStart, minDuration, maxDuration;
+
+        protected int errors;
+
+        protected final int[] columnLengths = new int[Column.values().length];
+
+        protected long getColumnOffset(Column column) {
+            long ret = offset;
+            for (int i = 0; i < column.ordinal(); i++) {
+                ret += columnLengths[i];
+            }
+            return ret;
+        }
+    }
+}
@@ -16,25 +16,67 @@
  */
 package org.nuxeo.tools.gatling.report;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
-
-import org.apache.commons.io.FileUtils;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.output.CloseShieldWriter;
 
 import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
-import com.github.mustachejava.MustacheFactory;
 
 public class Report {
+    /**
+     * Formats rendered from the same parsed simulations, named after the report file with their extension.
+     *
+     * @since 7.0
+     */
+    public enum Format {
+        HTML, YAML, CSV, JSON;
+
+        public String getExtension() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+
+        public static Format of(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid format: " + name, e);
+            }
+        }
+    }
+
     protected static final String YAML = "yaml/";
 
     protected static final String HTML = "html/";
@@ -47,16 +89,41 @@ public class Report {
 
     protected static final String DIFF_TEMPLATE = "diff.mustache";
 
+    protected static final String OVERVIEW_TEMPLATE = "overview.mustache";
+
+    protected static final String REQUEST_TEMPLATE = "request.mustache";
+
     protected static final String DEFAULT_SCRIPT = "plotly-latest.min.js";
 
     protected static final String DEFAULT_CDN_SCRIPT = "https://cdn.plot.ly/plotly-latest.min.js";
 
+    protected static final int WRITER_BUFFER_SIZE = 256 * 1024;
+
+    // evaluates the Callable values of the templates, like the box plot statistics of each request
+    protected static final ExecutorService RENDER_EXECUTOR = Executors.newFixedThreadPool(
+            ParallelGzipInputStream.DEFAULT_THREADS, task -> {
+                Thread ret = new Thread(task, "report-render");
+                ret.setDaemon(true);
+                return ret;
+            });
+
+    // compiled templates shared by the reports of the JVM, keyed by name or absolute path
+    protected static final Map<String, CompiledTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    protected static final DefaultMustacheFactory DEFAULT_FACTORY = createFactory();
+
+    // content-addressed names of the shared assets, keyed by resource
+    protected static final Map<String, String> ASSET_NAMES = new ConcurrentHashMap<>();
+
     protected final List<SimulationContext> stats;
 
     protected File outputDirectory;
 
     protected Writer writer;
 
+    // the writer created for the report file is closed once rendered
+    protected boolean closeWriter;
+
     protected final List<String> scripts = new ArrayList<>();
 
     protected boolean includeJs = false;
@@ -67,6 +134,8 @@ public class Report {
 
     protected Graphite graphite;
 
+    protected File graphiteCache;
+
     protected ZoneId zoneId;
 
     protected boolean yaml = false;
@@ -75,10 +144,104 @@ public class Report {
 
     protected String filename = DEFAULT_FILENAME;
 
+    protected HistoryStore history;
+
+    protected ChartData.Mode chartDataMode = ChartData.Mode.INLINE;
+
+    protected int chartPoints = ChartData.DEFAULT_POINTS;
+
+    protected boolean multiPage;
+
+    protected Set<Compression> precompression = EnumSet.noneOf(Compression.class);
+
+    protected File assetDirectory;
+
     public Report(List<SimulationContext> stats) {
         this.stats = stats;
     }
 
+    /**
+     * Builds trend reports from the runs recorded in the history instead of the parsed simulations.
+     *
+     * @since 7.0
+     */
+    public Report setHistory(HistoryStore history) {
+        this.history = history;
+        return this;
+    }
+
+    /**
+     * Writes the chart series as literals, or as a compressed binary payload embedded in the report or written next
+     * to it.
+     *
+     * @since 7.0
+     */
+    public Report setChartData(ChartData.Mode mode) {
+        this.chartDataMode = mode;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of points plotted per over-time trace.
+     *
+     * @since 7.0
+     */
+    public Report setChartPoints(int points) {
+        this.chartPoints = points;
+        return this;
+    }
+
+    /**
+     * Renders a simulation as an overview page linking to a detail page per request, instead of a single page.
+     *
+     * @since 7.0
+     */
+    public Report multiPage(boolean multiPage) {
+        this.multiPage = multiPage;
+        return this;
+    }
+
+    /**
+     * Also writes compressed variants of every report file, like {@code index.html.gz}, for static hosting.
+     *
+     * @since 7.0
+     */
+    public Report setPrecompression(Set<Compression> precompression) {
+        this.precompression = precompression;
+        return this;
+    }
+
+    /**
+     * Copies the included scripts once in this directory under a name derived from their content, reports reference
+     * the shared copy instead of having their own.
+     *
+     * @since 7.0
+     */
+    public Report setAssetDirectory(File assetDirectory) {
+        this.assetDirectory = assetDirectory;
+        return this;
+    }
+
+    protected ChartData createChartData() {
+        return createChartData(filename);
+    }
+
+    /**
+     * Returns the chart data of a report page, the payload is embedded when there is no output directory, YAML reports
+     * only use literals.
+     */
+    protected ChartData createChartData(String filename) {
+        if (yaml || chartDataMode == ChartData.Mode.INLINE) {
+            return new ChartData().setPoints(chartPoints);
+        }
+        if (chartDataMode == ChartData.Mode.FILE && outputDirectory != null) {
+            String name = filename.contains(".") ? filename.substring(0, filename.lastIndexOf('.')) : filename;
+            return new ChartData(ChartData.Mode.FILE, new File(outputDirectory, name + ".data.js")).setPoints(
+                    chartPoints).setPrecompression(precompression);
+        }
+        return new ChartData(ChartData.Mode.EMBEDDED, null).setPoints(chartPoints);
+    }
+
     public Report setOutputDirectory(File output) {
         this.outputDirectory = output;
         return this;
@@ -102,8 +265,12 @@ public class Report {
     public String create() throws IOException {
         int nbSimulation = stats.size();
         if (graphiteUrl != null) {
-            stats.forEach(stats -> stats.simStat.graphite = new Graphite(graphiteUrl, user, password, stats,
-                    outputDirectory, zoneId));
+            // images are downloaded once per simulation, reports of several formats in the same directory share them
+            stats.stream()
+                 .filter(stats -> stats.simStat.graphite == null
+                         || !Objects.equals(stats.simStat.graphite.outputDirectory, outputDirectory))
+                 .forEach(stats -> stats.simStat.graphite = Graphite.of(graphiteUrl, user, password, stats,
+                         outputDirectory, zoneId, graphiteCache));
         }
         switch (nbSimulation) {
         case 1:
@@ -115,40 +282,151 @@ public class Report {
         default:
             createTrendReport();
         }
+        if (closeWriter) {
+            writer.close();
+            writer = null;
+            closeWriter = false;
+        }
         return getReportPath().getAbsolutePath();
     }
 
     public void createSimulationReport() throws IOException {
+        if (isMultiPage()) {
+            createMultiPageReport(stats.get(0));
+            return;
+        }
         Mustache mustache = getMustache();
-        mustache.execute(getWriter(), stats.get(0).setScripts(getScripts())).flush();
+        execute(mustache, stats.get(0).setScripts(getScripts()).setChartData(createChartData()));
     }
 
+    /**
+     * Detail pages are written next to the overview, the default templates are used.
+     */
+    protected boolean isMultiPage() {
+        return multiPage && !yaml && outputDirectory != null;
+    }
+
+    /**
+     * Renders the overview then the request detail pages concurrently, all the pages share the same scripts.
+     *
+     * @since 7.0
+     */
+    public void createMultiPageReport(SimulationContext context) throws IOException {
+        List<String> scripts = getScripts();
+        context.setScripts(scripts).setChartData(createChartData());
+        String prefix = filename.contains(".") ? filename.substring(0, filename.lastIndexOf('.')) : filename;
+        List<RequestStat> requests = context.getRequests();
+        List<RequestContext> pages = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            String name = prefix + "-request-" + (i + 1) + ".html";
+            pages.add(new RequestContext(context, requests.get(i), name, filename).setScripts(scripts)
+                                                                                 .setChartData(createChartData(name)));
+        }
+        execute(getDefaultMustache(HTML + OVERVIEW_TEMPLATE), new Object[] { context, Map.of("pages", pages) });
+        if (pages.isEmpty()) {
+            return;
+        }
+        Mustache mustache = getDefaultMustache(HTML + REQUEST_TEMPLATE);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(pages.size(), ParallelGzipInputStream.DEFAULT_THREADS));
+        try {
+            CompletableFuture.allOf(pages.stream().map(page -> CompletableFuture.runAsync(() -> {
+                try (Writer out = createWriter(new File(outputDirectory, page.getFilename()))) {
+                    execute(mustache, page, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Can not write page: " + page.getFilename(), e);
+                }
+            }, executor)).toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException cause) {
+                throw cause.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the compiled template, a custom template is compiled again when its file is modified.
+     */
     protected Mustache getMustache() throws FileNotFoundException {
-        MustacheFactory mf = new DefaultMustacheFactory();
-        Mustache mustache;
         if (template == null) {
-            mustache = mf.compile(getDefaultTemplate());
+            return getDefaultMustache(getDefaultTemplate());
+        }
+        File file = new File(template);
+        if (!file.isFile()) {
+            throw new FileNotFoundException(template);
+        }
+        long lastModified = file.lastModified();
+        return TEMPLATES.compute(file.getAbsolutePath(), (path, cached) -> {
+            if (cached != null && cached.lastModified() == lastModified) {
+                return cached;
+            }
+            // a new factory so that partials are read again
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                return new CompiledTemplate(lastModified, createFactory().compile(reader, template));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can not read template: " + path, e);
+            }
+        }).mustache();
+    }
+
+    protected static Mustache getDefaultMustache(String name) {
+        return TEMPLATES.computeIfAbsent(name, k -> new CompiledTemplate(0, DEFAULT_FACTORY.compile(k))).mustache();
+    }
+
+    protected static DefaultMustacheFactory createFactory() {
+        DefaultMustacheFactory ret = new DefaultMustacheFactory();
+        ret.setExecutorService(RENDER_EXECUTOR);
+        return ret;
+    }
+
+    /**
+     * Renders the template, waiting for the sections computed concurrently.
+     */
+    protected void execute(Mustache mustache, Object scope) throws IOException {
+        execute(mustache, scope, getWriter());
+    }
+
+    /**
+     * Renders the template to the writer, an array of scopes is looked up from the last to the first scope.
+     */
+    protected static void execute(Mustache mustache, Object scope, Writer out) throws IOException {
+        Writer shielded = CloseShieldWriter.wrap(out);
+        if (scope instanceof Object[] scopes) {
+            mustache.execute(shielded, scopes).close();
         } else {
-            mustache = mf.compile(new FileReader(new File(template)), template);
+            mustache.execute(shielded, scope).close();
         }
-        return mustache;
+        out.flush();
     }
 
+
     public void createTrendReport() throws IOException {
         Mustache mustache = getMustache();
+        TrendContext trend = createTrendContext().setScripts(getScripts()).setChartData(createChartData());
         if (map != null && map.size() == stats.size()) {
             HashMap<String, Object> scopes = new HashMap<>();
-            scopes.put("trend", new TrendContext(stats).setScripts(getScripts()));
+            scopes.put("trend", trend);
             int i = 0;
             for (String name : map) {
                 scopes.put(name, stats.get(i++));
             }
-            mustache.execute(getWriter(), scopes).flush();
+            execute(mustache, scopes);
         } else {
-            mustache.execute(getWriter(), new TrendContext(stats).setScripts(getScripts())).flush();
+            execute(mustache, trend);
         }
     }
 
+    protected TrendContext createTrendContext() throws IOException {
+        if (history == null) {
+            return new TrendContext(stats);
+        }
+        Set<String> simulations = stats.stream().map(SimulationContext::getSimulationName).collect(Collectors.toSet());
+        return new TrendContext(history, simulations);
+    }
+
     public void createDiffReport() throws IOException {
         Mustache mustache = getMustache();
         if (map != null && map.size() == stats.size()) {
@@ -158,21 +436,26 @@ public class Report {
             for (String name : map) {
                 scopes.put(name, stats.get(i++));
             }
-            mustache.execute(getWriter(), scopes).flush();
+            execute(mustache, scopes);
         } else {
-            mustache.execute(getWriter(), new DiffContext(stats).setScripts(getScripts())).flush();
+            execute(mustache, new DiffContext(stats).setScripts(getScripts()));
         }
 
     }
 
     public Writer getWriter() throws IOException {
         if (writer == null) {
-            File index = getReportPath();
-            writer = new FileWriter(index);
+            writer = createWriter(getReportPath());
+            closeWriter = true;
         }
         return writer;
     }
 
+    protected Writer createWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(PrecompressedOutputStream.open(file, precompression),
+                StandardCharsets.UTF_8), WRITER_BUFFER_SIZE);
+    }
+
     public Report setWriter(Writer writer) {
         this.writer = writer;
         return this;
@@ -194,14 +477,97 @@ public class Report {
             return DEFAULT_CDN_SCRIPT;
         }
         URL src = getClass().getResource(DEFAULT_SCRIPT);
+        if (src == null) {
+            throw new IllegalArgumentException("Script not found: " + DEFAULT_SCRIPT);
+        }
         try {
-            FileUtils.copyURLToFile(src, new File(outputDirectory, DEFAULT_SCRIPT));
+            if (assetDirectory != null) {
+                return getOrCreateAsset(src, DEFAULT_SCRIPT);
+            }
+            try (InputStream in = src.openStream();
+                    OutputStream out = PrecompressedOutputStream.open(new File(outputDirectory, DEFAULT_SCRIPT),
+                            precompression)) {
+                in.transferTo(out);
+            }
         } catch (IOException e) {
             throw new IllegalArgumentException("Can not copy script: " + src, e);
         }
         return DEFAULT_SCRIPT;
     }
 
+    /**
+     * Copies the resource in the asset directory unless already there, the name of the copy includes a hash of the
+     * content so reports rendered with different versions do not conflict. Returns the copy relative to the report.
+     *
+     * @since 7.0
+     */
+    protected String getOrCreateAsset(URL src, String name) throws IOException {
+        String assetName = ASSET_NAMES.get(src.toString());
+        byte[] content = null;
+        if (assetName == null) {
+            try (InputStream in = src.openStream()) {
+                content = in.readAllBytes();
+            }
+            assetName = getContentAddressedName(name, content);
+            ASSET_NAMES.put(src.toString(), assetName);
+        }
+        File asset = new File(assetDirectory, assetName);
+        if (!asset.isFile() || precompression.stream()
+                                             .anyMatch(c -> !PrecompressedOutputStream.getVariant(asset, c).isFile())) {
+            if (content == null) {
+                try (InputStream in = src.openStream()) {
+                    content = in.readAllBytes();
+                }
+            }
+            writeAsset(asset, content);
+        }
+        Path base = outputDirectory.getAbsoluteFile().toPath().normalize();
+        return base.relativize(asset.getAbsoluteFile().toPath().normalize()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Writes the asset and its variants in temporary files moved in place, the asset is moved last so its presence
+     * means the variants are complete, concurrent reports write the same content.
+     */
+    protected void writeAsset(File asset, byte[] content) throws IOException {
+        if (!assetDirectory.isDirectory() && !assetDirectory.mkdirs() && !assetDirectory.isDirectory()) {
+            throw new IOException("Can not create asset directory: " + assetDirectory);
+        }
+        File tmp = File.createTempFile(asset.getName(), ".tmp", assetDirectory);
+        try {
+            try (OutputStream out = PrecompressedOutputStream.open(tmp, precompression)) {
+                out.write(content);
+            }
+            for (Compression compression : precompression) {
+                Files.move(PrecompressedOutputStream.getVariant(tmp, compression).toPath(),
+                        PrecompressedOutputStream.getVariant(asset, compression).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(tmp.toPath(), asset.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+            for (Compression compression : precompression) {
+                Files.deleteIfExists(PrecompressedOutputStream.getVariant(tmp, compression).toPath());
+            }
+        }
+    }
+
+    /**
+     * Inserts the first 16 hexadecimal digits of the SHA-256 of the content before the extensions of the name, like
+     * {@code plotly-latest-0123456789abcdef.min.js}.
+     */
+    protected static String getContentAddressedName(String name, byte[] content) {
+        String hash;
+        try {
+            hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        int dot = name.indexOf('.');
+        return dot < 0 ? name + "-" + hash : name.substring(0, dot) + "-" + hash + name.substring(dot);
+    }
+
     public String getDefaultTemplate() {
         int nbSimulation = stats.size();
         String prefix = yaml ? YAML : HTML;
@@ -223,6 +589,16 @@ public class Report {
         return this;
     }
 
+    /**
+     * Keeps the downloaded Graphite images in this directory, reports of the same time range reuse them.
+     *
+     * @since 7.0
+     */
+    public Report setGraphiteCache(File graphiteCache) {
+        this.graphiteCache = graphiteCache;
+        return this;
+    }
+
     public Report yamlReport(boolean yaml) {
         this.yaml = yaml;
         return this;
@@ -239,4 +615,7 @@ public class Report {
         }
         return this;
     }
+
+    protected record CompiledTemplate(long lastModified, Mustache mustache) {
+    }
 }
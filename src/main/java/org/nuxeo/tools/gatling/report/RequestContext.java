@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.util.List;
+
+/**
+ * Template context of a request detail page in a multi-page report: distribution, series over time and errors.
+ *
+ * @since 7.0
+ */
+public class RequestContext {
+    protected final SimulationContext simulation;
+
+    protected final RequestStat request;
+
+    protected final String filename;
+
+    protected final String overview;
+
+    protected List<String> scripts;
+
+    protected ChartData chartData = new ChartData();
+
+    /**
+     * @param filename the name of the detail page
+     * @param overview the name of the overview page linking to the detail pages
+     */
+    public RequestContext(SimulationContext simulation, RequestStat request, String filename, String overview) {
+        this.simulation = simulation;
+        this.request = request;
+        this.filename = filename;
+        this.overview = overview;
+    }
+
+    public RequestContext setScripts(List<String> scripts) {
+        this.scripts = scripts;
+        return this;
+    }
+
+    /**
+     * Renders the series of the request in the payload of its page.
+     */
+    public RequestContext setChartData(ChartData chartData) {
+        this.chartData = chartData;
+        request.setChartData(chartData);
+        return this;
+    }
+
+    public ChartData getChartData() {
+        return chartData;
+    }
+
+    public RequestStat getSimStat() {
+        return simulation.simStat;
+    }
+
+    public RequestStat getRequest() {
+        return request;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getOverview() {
+        return overview;
+    }
+
+    public List<String> getScripts() {
+        return scripts;
+    }
+}
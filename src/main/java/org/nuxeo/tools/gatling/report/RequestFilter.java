@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Selects the requests and scenarios to report on.
+ * <p>
+ * Patterns are evaluated once per distinct name, the verdict is then cached by the name identifier given by the
+ * {@link SimulationContext}, so rejected records are dropped by parsers with an array lookup. A filter caches
+ * identifiers of a single context and must not be shared between parsers.
+ *
+ * @since 7.0
+ */
+public class RequestFilter {
+    protected static final byte UNKNOWN = 0;
+
+    protected static final byte ACCEPTED = 1;
+
+    protected static final byte REJECTED = 2;
+
+    protected final List<Pattern> includes;
+
+    protected final List<Pattern> excludes;
+
+    protected final Set<String> scenarios;
+
+    protected byte[] requestVerdicts = new byte[64];
+
+    protected byte[] scenarioVerdicts = new byte[16];
+
+    /**
+     * @param includes regexes, a request is kept when one of them is found in its name, all requests when empty
+     * @param excludes regexes, a request is dropped when one of them is found in its name
+     * @param scenarios names of the scenarios to keep, all scenarios when empty
+     */
+    public RequestFilter(Collection<String> includes, Collection<String> excludes, Collection<String> scenarios) {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+        this.scenarios = scenarios == null ? Set.of() : new HashSet<>(scenarios);
+    }
+
+    /**
+     * Returns a filter or {@code null} when nothing would be filtered.
+     */
+    public static RequestFilter of(Collection<String> includes, Collection<String> excludes,
+            Collection<String> scenarios) {
+        RequestFilter ret = new RequestFilter(includes, excludes, scenarios);
+        if (ret.includes.isEmpty() && ret.excludes.isEmpty() && ret.scenarios.isEmpty()) {
+            return null;
+        }
+        return ret;
+    }
+
+    public boolean acceptRequest(int requestId, String name) {
+        if (requestId >= requestVerdicts.length) {
+            requestVerdicts = Arrays.copyOf(requestVerdicts, Math.max(requestId + 1, requestVerdicts.length * 2));
+        }
+        byte verdict = requestVerdicts[requestId];
+        if (verdict == UNKNOWN) {
+            verdict = matchRequest(name) ? ACCEPTED : REJECTED;
+            requestVerdicts[requestId] = verdict;
+        }
+        return verdict == ACCEPTED;
+    }
+
+    public boolean acceptScenario(int scenarioId, String name) {
+        if (scenarios.isEmpty()) {
+            return true;
+        }
+        if (scenarioId >= scenarioVerdicts.length) {
+            scenarioVerdicts = Arrays.copyOf(scenarioVerdicts, Math.max(scenarioId + 1, scenarioVerdicts.length * 2));
+        }
+        byte verdict = scenarioVerdicts[scenarioId];
+        if (verdict == UNKNOWN) {
+            verdict = scenarios.contains(name) ? ACCEPTED : REJECTED;
+            scenarioVerdicts[scenarioId] = verdict;
+        }
+        return verdict == ACCEPTED;
+    }
+
+    protected boolean matchRequest(String name) {
+        if (name == null) {
+            return includes.isEmpty();
+        }
+        if (!includes.isEmpty() && includes.stream().noneMatch(pattern -> pattern.matcher(name).find())) {
+            return false;
+        }
+        return excludes.stream().noneMatch(pattern -> pattern.matcher(name).find());
+    }
+
+    protected static List<Pattern> compile(Collection<String> regexes) {
+        if (regexes == null) {
+            return List.of();
+        }
+        return regexes.stream().map(Pattern::compile).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return "include=" + includes + " exclude=" + excludes + " scenario=" + scenarios;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.util.Arrays;
+
+/**
+ * Throughput and latency of a request over time buckets, aligned on epoch multiples of the bucket width like the
+ * {@link Timeline} of the simulation.
+ * <p>
+ * Only the completed count and the duration sum are kept per bucket, arrays start small and grow with the covered
+ * period so requests rarely called stay cheap.
+ *
+ * @since 7.0
+ */
+public class RequestSeries {
+    protected static final int INITIAL_CAPACITY = 16;
+
+    protected final int bucketMs;
+
+    // absolute bucket index of the first slot, valid when last >= 0
+    protected long origin;
+
+    // last bucket holding a request
+    protected int last = -1;
+
+    protected int[] completed = new int[INITIAL_CAPACITY];
+
+    protected long[] durationSums = new long[INITIAL_CAPACITY];
+
+    public RequestSeries() {
+        this(Timeline.DEFAULT_BUCKET_MS);
+    }
+
+    public RequestSeries(int bucketMs) {
+        this.bucketMs = bucketMs;
+    }
+
+    /**
+     * Records a request completed at the end timestamp.
+     */
+    public void add(long end, long duration) {
+        if (end <= 0) {
+            return;
+        }
+        int slot = slot(Math.floorDiv(end, bucketMs));
+        completed[slot]++;
+        durationSums[slot] += duration;
+    }
+
+    public void merge(RequestSeries other) {
+        if (other.bucketMs != bucketMs) {
+            throw new IllegalArgumentException("Can not merge series of " + other.bucketMs + " and " + bucketMs
+                    + " ms buckets");
+        }
+        if (other.isEmpty()) {
+            return;
+        }
+        slot(other.origin);
+        int offset = (int) (other.origin - origin);
+        slot(other.origin + other.last);
+        for (int i = 0; i <= other.last; i++) {
+            completed[offset + i] += other.completed[i];
+            durationSums[offset + i] += other.durationSums[i];
+        }
+    }
+
+    public int size() {
+        return last + 1;
+    }
+
+    public boolean isEmpty() {
+        return last < 0;
+    }
+
+    public long getTime(int bucket) {
+        return (origin + bucket) * bucketMs;
+    }
+
+    public int getCompleted(int bucket) {
+        return completed[bucket];
+    }
+
+    public double getThroughput(int bucket) {
+        return completed[bucket] * 1000.0 / bucketMs;
+    }
+
+    /**
+     * Returns the average duration of requests completed in the bucket or {@code NaN} when there is none.
+     */
+    public double getLatency(int bucket) {
+        if (completed[bucket] == 0) {
+            return Double.NaN;
+        }
+        return (double) durationSums[bucket] / completed[bucket];
+    }
+
+    /**
+     * Returns the array slot of an absolute bucket, arrays are shifted or grown as needed.
+     */
+    protected int slot(long bucket) {
+        if (isEmpty()) {
+            origin = bucket;
+        } else if (bucket < origin) {
+            int count = (int) (origin - bucket);
+            int capacity = Math.max(completed.length, last + 1 + count);
+            int[] counts = new int[capacity];
+            long[] sums = new long[capacity];
+            System.arraycopy(completed, 0, counts, count, last + 1);
+            System.arraycopy(durationSums, 0, sums, count, last + 1);
+            completed = counts;
+            durationSums = sums;
+            origin = bucket;
+            last += count;
+        }
+        int ret = (int) (bucket - origin);
+        if (ret >= completed.length) {
+            int capacity = Math.max(ret + 1, completed.length * 2);
+            completed = Arrays.copyOf(completed, capacity);
+            durationSums = Arrays.copyOf(durationSums, capacity);
+        }
+        last = Math.max(last, ret);
+        return ret;
+    }
+}
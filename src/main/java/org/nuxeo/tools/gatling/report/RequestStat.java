@@ -16,12 +16,14 @@
  */
 package org.nuxeo.tools.gatling.report;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.zone.ZoneRules;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.math3.stat.StatUtils;
@@ -54,7 +56,7 @@ public class RequestStat {
 
     protected double duration;
 
-    protected final List<Double> durations;
+    protected final DurationStore durations;
 
     protected Graphite graphite;
 
@@ -62,17 +64,40 @@ public class RequestStat {
 
     protected int maxUsers;
 
+    // computed on first access, only needed by reports
+    protected BoxStat boxStat;
+
+    protected final RequestSeries series = new RequestSeries();
+
+    protected ChartData chartData = new ChartData();
+
+    // values displayed by the templates, formatted once per computation
+    protected Texts texts;
+
     public long getCount() {
         return count;
     }
 
     public RequestStat(String simulation, String scenario, String request, long start, Float apdexT) {
+        this(simulation, scenario, request, start, apdexT, null);
+    }
+
+    public RequestStat(String simulation, String scenario, String request, long start, Float apdexT,
+            HeapBudget budget) {
+        this(DurationStore.of(budget), simulation, scenario, request, start, apdexT);
+    }
+
+    /**
+     * @since 7.0
+     */
+    protected RequestStat(DurationStore durations, String simulation, String scenario, String request, long start,
+            Float apdexT) {
         this.simulation = simulation;
         this.scenario = scenario;
         this.request = request;
         requestId = Utils.getIdentifier(request);
         this.start = start;
-        durations = new ArrayList<>();
+        this.durations = durations;
         indice = statCounter.incrementAndGet();
         apdex = new Apdex(apdexT);
     }
@@ -93,8 +118,41 @@ public class RequestStat {
             errorCount += 1;
         }
         long duration = end - start;
-        durations.add((double) duration);
+        durations.add(duration);
         apdex.addMs(duration);
+        series.add(end, duration);
+    }
+
+    /**
+     * Adds the measures of another request, stats need to be computed again.
+     *
+     * @since 7.0
+     */
+    public void merge(RequestStat other) {
+        if (other.count == 0) {
+            return;
+        }
+        mergeMeasures(other);
+        durations.addAll(other.durations);
+    }
+
+    /**
+     * Adds the counts, apdex and series of another request but not its durations.
+     *
+     * @since 7.0
+     */
+    protected void mergeMeasures(RequestStat other) {
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        errorCount += other.errorCount;
+        if (start == 0 || (other.start != 0 && other.start < start)) {
+            start = other.start;
+        }
+        end = Math.max(end, other.end);
+        apdex.merge(other.apdex);
+        series.merge(other.series);
     }
 
     public void computeStat(int maxUsers) {
@@ -102,6 +160,21 @@ public class RequestStat {
     }
 
     public void computeStat(double duration, int maxUsers) {
+        if (durations.isSpilled() || durations.isMerged()) {
+            computeSpilledStat();
+        } else {
+            computeInMemoryStat();
+        }
+        this.duration = duration;
+        this.maxUsers = maxUsers;
+        rps = (count - errorCount) / duration;
+        startDate = getDateFromInstant(start);
+        successCount = count - errorCount;
+        boxStat = null;
+        texts = formatTexts();
+    }
+
+    protected void computeInMemoryStat() {
         double[] times = getDurationAsArray();
         min = (long) StatUtils.min(times);
         max = (long) StatUtils.max(times);
@@ -115,11 +188,66 @@ public class RequestStat {
         p99 = (long) StatUtils.percentile(times, 99.0);
         StandardDeviation stdDev = new StandardDeviation();
         stddev = (long) stdDev.evaluate(times, avg);
-        this.duration = duration;
-        this.maxUsers = maxUsers;
-        rps = (count - errorCount) / duration;
-        startDate = getDateFromInstant(start);
-        successCount = count - errorCount;
+    }
+
+    /**
+     * Same statistics as {@link #computeInMemoryStat()} but computed in a single pass over the sorted durations, the
+     * percentile estimation follows commons-math {@code Percentile}. Also used for merged durations so they are not
+     * copied.
+     */
+    protected void computeSpilledStat() {
+        long n = durations.count();
+        avg = (double) durations.sum() / n;
+        double[] percentiles = { 50.0, 90.0, 95.0, 99.0 };
+        long[] lowerRanks = new long[percentiles.length];
+        double[] lowers = new double[percentiles.length];
+        double[] uppers = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            double pos = percentiles[i] * (n + 1) / 100;
+            lowerRanks[i] = pos < 1 ? 0 : Math.min(n - 1, (long) Math.floor(pos) - 1);
+        }
+        double accum = 0.0;
+        double accum2 = 0.0;
+        try (DurationStore.SortedCursor cursor = durations.sortedCursor()) {
+            long rank = 0;
+            while (cursor.hasNext()) {
+                double value = cursor.next();
+                if (rank == 0) {
+                    min = (long) value;
+                }
+                max = (long) value;
+                for (int i = 0; i < percentiles.length; i++) {
+                    if (rank == lowerRanks[i]) {
+                        lowers[i] = value;
+                    }
+                    if (rank == lowerRanks[i] + 1) {
+                        uppers[i] = value;
+                    }
+                }
+                double dev = value - avg;
+                accum += dev * dev;
+                accum2 += dev;
+                rank++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not read spilled durations", e);
+        }
+        long[] ret = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            double pos = percentiles[i] * (n + 1) / 100;
+            if (n == 1 || pos < 1) {
+                ret[i] = min;
+            } else if (pos >= n) {
+                ret[i] = max;
+            } else {
+                ret[i] = (long) (lowers[i] + (pos - Math.floor(pos)) * (uppers[i] - lowers[i]));
+            }
+        }
+        p50 = ret[0];
+        p90 = ret[1];
+        p95 = ret[2];
+        p99 = ret[3];
+        stddev = n > 1 ? (long) Math.sqrt((accum - (accum2 * accum2 / n)) / (n - 1)) : 0;
     }
 
     public void setSimulationName(String name) {
@@ -135,11 +263,30 @@ public class RequestStat {
     }
 
     public String average() {
-        return String.format(Locale.ENGLISH, "%.1f", avg);
+        return getTexts().average();
     }
 
     public String p50() {
-        return String.format(Locale.ENGLISH, "%.1f", (double) p50);
+        return getTexts().p50();
+    }
+
+    /**
+     * Returns the formatted values, stats read from a summary are formatted on first use.
+     */
+    protected Texts getTexts() {
+        Texts ret = texts;
+        if (ret == null) {
+            ret = texts = formatTexts();
+        }
+        return ret;
+    }
+
+    protected Texts formatTexts() {
+        String percentError = count == 0 ? "0.00"
+                : String.format(Locale.ENGLISH, "%.2f", (errorCount * 100.0) / count);
+        return new Texts(String.format(Locale.ENGLISH, "%.1f", avg),
+                String.format(Locale.ENGLISH, "%.1f", (double) p50), String.format(Locale.ENGLISH, "%.1f", rps),
+                percentError, String.format(Locale.ENGLISH, "%.1f", duration));
     }
 
     public String boxpoints() {
@@ -149,33 +296,120 @@ public class RequestStat {
         return "false";
     }
 
+    /**
+     * Returns the box plot statistics of the durations, outliers are capped to {@link BoxStat#MAX_OUTLIERS}.
+     *
+     * @since 7.0
+     */
+    public synchronized BoxStat getBox() {
+        if (boxStat == null) {
+            boxStat = BoxStat.of(durations, avg, stddev, BoxStat.MAX_OUTLIERS);
+        }
+        return boxStat;
+    }
+
+    /**
+     * Returns the box plot statistics as a task, templates rendered by {@link Report} compute the boxes of all the
+     * requests concurrently. Durations sharing a heap budget can spill each other, their box is computed right away.
+     *
+     * @since 7.0
+     */
+    public Callable<BoxStat> getBoxTask() {
+        if (durations.budget != null) {
+            BoxStat ret = getBox();
+            return () -> ret;
+        }
+        return this::getBox;
+    }
+
+    /**
+     * Deletes the durations spilled to disk, called once the statistics and the box have been read.
+     *
+     * @since 7.0
+     */
+    public void release() {
+        durations.release();
+    }
+
+    /**
+     * @since 7.0
+     */
+    public RequestSeries getSeries() {
+        return series;
+    }
+
+    /**
+     * Renders the over-time series as literals or as references to a binary payload.
+     *
+     * @since 7.0
+     */
+    public RequestStat setChartData(ChartData chartData) {
+        this.chartData = chartData;
+        return this;
+    }
+
+    /**
+     * Returns the average response time over time as a multi-resolution series.
+     *
+     * @since 7.0
+     */
+    public String getLatencyPyramid() {
+        double[] values = new double[series.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = series.getLatency(i);
+        }
+        return chartData.pyramid(getSeriesTimes(), values, null, values.length);
+    }
+
+    /**
+     * Returns the throughput over time as a multi-resolution series.
+     *
+     * @since 7.0
+     */
+    public String getThroughputPyramid() {
+        double[] values = new double[series.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = series.getThroughput(i);
+        }
+        return chartData.pyramid(getSeriesTimes(), values, null, values.length);
+    }
+
+    protected long[] getSeriesTimes() {
+        long[] ret = new long[series.size()];
+        ZoneRules rules = ZoneId.systemDefault().getRules();
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = ChartData.toLocalTime(series.getTime(i), rules);
+        }
+        return ret;
+    }
+
     public String throughput() {
-        return String.format(Locale.ENGLISH, "%.1f", rps);
+        return getTexts().throughput();
     }
 
     public String percentError() {
-        if (count == 0) {
-            return "0.00";
-        }
-        return String.format(Locale.ENGLISH, "%.2f", (errorCount * 100.0) / count);
+        return getTexts().percentError();
     }
 
     protected String getDateFromInstant(long start) {
+        return formatDate(start);
+    }
+
+    /**
+     * @since 7.0
+     */
+    protected static String formatDate(long start) {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd " + "HH:mm:ss")
                                                        .withZone(ZoneId.systemDefault());
         return formatter.format(Instant.ofEpochMilli(start));
     }
 
     protected double[] getDurationAsArray() {
-        double[] ret = new double[durations.size()];
-        for (int i = 0; i < durations.size(); i++) {
-            ret[i] = durations.get(i);
-        }
-        return ret;
+        return durations.toDoubleArray();
     }
 
     public String getDuration() {
-        return String.format(Locale.ENGLISH, "%.1f", duration);
+        return getTexts().duration();
     }
 
     @Override
@@ -185,4 +419,7 @@ public class RequestStat {
                 simulation, scenario, maxUsers, request, start, startDate, duration, end, count, successCount,
                 errorCount, min, p50, p90, p95, p99, max, avg, stddev, rps, apdex.getScore(), apdex.getRating());
     }
+
+    protected record Texts(String average, String p50, String throughput, String percentError, String duration) {
+    }
 }
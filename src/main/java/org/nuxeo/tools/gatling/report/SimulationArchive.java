@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulation logs read from a tar or zip archive of Gatling results, entries are parsed while the archive is read
+ * without being extracted.
+ * <p>
+ * An entry is selected with {@code archive.tar.gz!/path/to/simulation.log}, the archive path alone selects all the
+ * simulation logs of the archive. All the selected entries are parsed in a single pass. Tar archives can be gzip, zstd
+ * or lz4 compressed, entries can be compressed too.
+ *
+ * @since 7.0
+ */
+public class SimulationArchive {
+    private static final Logger log = LoggerFactory.getLogger(SimulationArchive.class);
+
+    public static final String SEPARATOR = "!/";
+
+    // entries discovered when selecting a whole archive
+    protected static final Pattern SIMULATION_LOG = Pattern.compile("simulation[^/]*\\.log(\\.gz|\\.zst|\\.lz4)?");
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected static final int TAR_HEADER_SIZE = 512;
+
+    protected static final int TAR_MAGIC_OFFSET = 257;
+
+    protected final File file;
+
+    // selected entry names to the path selecting them
+    protected final Map<String, String> entries = new LinkedHashMap<>();
+
+    // path selecting all the simulation logs of the archive, null if only some entries are selected
+    protected String all;
+
+    public SimulationArchive(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns true if the path designates an archive entry or an archive.
+     */
+    public static boolean isArchivePath(String path) {
+        return path.contains(SEPARATOR) || isArchive(new File(path));
+    }
+
+    public static File getArchiveFile(String path) {
+        int index = path.indexOf(SEPARATOR);
+        return new File(index < 0 ? path : path.substring(0, index));
+    }
+
+    /**
+     * Returns true if the file is a zip archive or a tar archive, possibly compressed.
+     */
+    public static boolean isArchive(File file) {
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            return isZip(file) || isTar(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    protected static boolean isZip(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] magic = in.readNBytes(4);
+            return magic.length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+        }
+    }
+
+    protected static boolean isTar(File file) throws IOException {
+        try (InputStream in = Compression.open(file)) {
+            byte[] header = in.readNBytes(TAR_HEADER_SIZE);
+            return header.length == TAR_HEADER_SIZE
+                    && "ustar".equals(new String(header, TAR_MAGIC_OFFSET, 5, StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Selects an entry with {@code archive!/entry} or all the simulation logs with the archive path.
+     */
+    public SimulationArchive select(String path) {
+        int index = path.indexOf(SEPARATOR);
+        if (index < 0) {
+            all = path;
+        } else {
+            entries.putIfAbsent(normalize(path.substring(index + SEPARATOR.length())), path);
+        }
+        return this;
+    }
+
+    protected static String normalize(String name) {
+        String ret = name;
+        while (ret.startsWith("./") || ret.startsWith("/")) {
+            ret = ret.substring(ret.indexOf('/') + 1);
+        }
+        return ret;
+    }
+
+    protected static boolean isSimulationLog(String name) {
+        return SIMULATION_LOG.matcher(name.substring(name.lastIndexOf('/') + 1)).matches();
+    }
+
+    /**
+     * Reads the archive once, each selected entry is given to the visitor with a parser reading it.
+     */
+    public void read(Float apdexT, Visitor visitor) throws IOException {
+        Set<String> found = new HashSet<>();
+        try (ArchiveInputStream<? extends ArchiveEntry> archive = openArchive()) {
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = normalize(entry.getName());
+                String selection = entries.get(name);
+                if (selection == null && all != null && isSimulationLog(name)) {
+                    selection = all;
+                }
+                if (selection == null) {
+                    continue;
+                }
+                File simulation = new File(file.getPath() + SEPARATOR + name);
+                if (!archive.canReadEntryData(entry)) {
+                    log.warn("Can not stream entry " + simulation.getPath());
+                    continue;
+                }
+                found.add(name);
+                SimulationParser parser;
+                try {
+                    // the parser must not close the archive
+                    parser = ParserFactory.getParser(simulation, CloseShieldInputStream.wrap(archive), apdexT);
+                } catch (IOException | IllegalArgumentException e) {
+                    log.error("Invalid file: " + simulation.getPath(), e);
+                    continue;
+                }
+                visitor.visit(selection, parser);
+            }
+        }
+        entries.keySet()
+               .stream()
+               .filter(name -> !found.contains(name))
+               .forEach(name -> log.error("Entry not found: " + file.getPath() + SEPARATOR + name));
+    }
+
+    protected ArchiveInputStream<? extends ArchiveEntry> openArchive() throws IOException {
+        if (isZip(file)) {
+            return new ZipArchiveInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+        return new TarArchiveInputStream(Compression.of(file).open(file, ParallelGzipInputStream.DEFAULT_THREADS));
+    }
+
+    /**
+     * Receives the selected simulation logs, the parser reads the archive and can only be used during the call.
+     */
+    public interface Visitor {
+        /**
+         * @param selection the path that selected the entry
+         */
+        void visit(String selection, SimulationParser parser) throws IOException;
+    }
+}
@@ -18,37 +18,101 @@ package org.nuxeo.tools.gatling.report;
 
 import static java.lang.Math.max;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.stream.Collectors;
 
 public class SimulationContext {
     public static final String ALL_REQUESTS = "_all";
 
+    /**
+     * Scenario of requests that can not be attributed to a single scenario.
+     *
+     * @since 7.0
+     */
+    public static final String UNKNOWN_SCENARIO = "_unknown";
+
+    protected static final Comparator<RequestStat> BY_AVERAGE = Comparator.comparingDouble(stat -> stat.avg);
+
     protected final Float apdexT;
 
+    protected final HeapBudget heapBudget;
+
     protected final String filePath;
 
     protected final RequestStat simStat;
 
+    // requests rolled up across scenarios, computed by computeStat
     protected final Map<String, RequestStat> reqStats = new HashMap<>();
 
+    // reqStats sorted once computed
+    protected List<RequestStat> requests;
+
+    // requests per scenario keyed by packed (scenario id, request id)
+    protected final LongObjectMap<RequestStat> scenarioReqStats = new LongObjectMap<>();
+
+    protected final Map<String, Integer> scenarioIds = new HashMap<>();
+
+    protected final List<String> scenarioNames = new ArrayList<>();
+
+    protected final Map<String, Integer> requestIds = new HashMap<>();
+
+    protected final List<String> requestNames = new ArrayList<>();
+
+    protected final List<ScenarioStat> scenarios = new ArrayList<>();
+
+    protected final Timeline timeline = new Timeline();
+
     protected final Map<String, CountMax> users = new HashMap<>();
 
+    protected RecordListener recordListener;
+
     protected String simulationName;
 
     protected String scenarioName;
 
     protected List<String> scripts = new ArrayList<>();
 
+    protected ChartData chartData = new ChartData();
+
     protected int maxUsers;
 
     protected long start;
 
+    // requests started outside of the window are ignored
+    protected long from = Long.MIN_VALUE;
+
+    protected long to = Long.MAX_VALUE;
+
+    // users started and not ended before the window
+    protected int usersBeforeWindow;
+
+    // users running before the window per scenario
+    protected final Map<String, Integer> resumedUsers = new HashMap<>();
+
+    // user starts and ends in log order, only kept when the context can be merged
+    protected UserEvents userEvents;
+
     public SimulationContext(String filePath, Float apdexT) {
+        this(filePath, apdexT, null);
+    }
+
+    public SimulationContext(String filePath, Float apdexT, HeapBudget heapBudget) {
+        this(filePath, apdexT, heapBudget, DurationStore.of(heapBudget));
+    }
+
+    /**
+     * @since 7.0
+     */
+    protected SimulationContext(String filePath, Float apdexT, HeapBudget heapBudget, DurationStore durations) {
         this.filePath = filePath;
-        this.simStat = new RequestStat(ALL_REQUESTS, ALL_REQUESTS, ALL_REQUESTS, 0, apdexT);
+        this.heapBudget = heapBudget;
+        this.simStat = new RequestStat(durations, ALL_REQUESTS, ALL_REQUESTS, ALL_REQUESTS, 0, apdexT);
         this.apdexT = apdexT;
     }
 
@@ -65,28 +129,339 @@ public class SimulationContext {
         return simStat;
     }
 
+    /**
+     * Returns the requests sorted by average duration, the list is immutable and shared by the renderers.
+     */
     public List<RequestStat> getRequests() {
-        List<RequestStat> ret = new ArrayList<>(reqStats.values());
-        ret.sort((a, b) -> (int) (1000 * (a.avg - b.avg)));
+        List<RequestStat> ret = requests;
+        if (ret == null) {
+            ret = requests = sortByAverage(reqStats.values());
+        }
+        return ret;
+    }
+
+    protected static List<RequestStat> sortByAverage(Collection<RequestStat> requests) {
+        RequestStat[] ret = requests.toArray(new RequestStat[0]);
+        Arrays.sort(ret, BY_AVERAGE);
+        return List.of(ret);
+    }
+
+    /**
+     * Returns the scenarios in which requests have been recorded.
+     *
+     * @since 7.0
+     */
+    public List<ScenarioStat> getScenarios() {
+        return scenarios;
+    }
+
+    public boolean isMultiScenario() {
+        return scenarios.size() > 1;
+    }
+
+    /**
+     * Returns a dense identifier for the scenario name.
+     *
+     * @since 7.0
+     */
+    public int getScenarioId(String scenario) {
+        Integer ret = scenarioIds.get(scenario);
+        if (ret == null) {
+            ret = scenarioNames.size();
+            scenarioNames.add(scenario);
+            scenarioIds.put(scenario, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a dense identifier for the request name.
+     *
+     * @since 7.0
+     */
+    public int getRequestId(String requestName) {
+        Integer ret = requestIds.get(requestName);
+        if (ret == null) {
+            ret = requestNames.size();
+            requestNames.add(requestName);
+            requestIds.put(requestName, ret);
+        }
         return ret;
     }
 
     public void addRequest(String scenario, String requestName, long start, long end, boolean success) {
-        RequestStat request = reqStats.computeIfAbsent(requestName,
-                n -> new RequestStat(simulationName, scenario, n, this.start, apdexT));
+        addRequest(getScenarioId(scenario), getRequestId(requestName), start, end, success);
+    }
+
+    /**
+     * Records a request using identifiers from {@link #getScenarioId(String)} and {@link #getRequestId(String)}.
+     *
+     * @since 7.0
+     */
+    public void addRequest(int scenarioId, int requestId, long start, long end, boolean success) {
+        if (start < from || start > to) {
+            return;
+        }
+        long key = LongObjectMap.pack(scenarioId, requestId);
+        RequestStat request = scenarioReqStats.get(key);
+        if (request == null) {
+            request = new RequestStat(simulationName, scenarioNames.get(scenarioId), requestNames.get(requestId),
+                    this.start, apdexT, heapBudget);
+            scenarioReqStats.put(key, request);
+        }
         request.add(start, end, success);
         simStat.add(start, end, success);
+        timeline.addRequest(start, end, success);
+        if (recordListener != null) {
+            recordListener.onRequest(scenarioId, requestId, start, end, success);
+        }
+    }
+
+    /**
+     * Receives each recorded user and request, names of the identifiers are available with
+     * {@link #getScenarioNames()} and {@link #getRequestNames()}.
+     *
+     * @since 7.0
+     */
+    public SimulationContext setRecordListener(RecordListener recordListener) {
+        this.recordListener = recordListener;
+        return this;
+    }
+
+    /**
+     * Scenario names indexed by identifier.
+     *
+     * @since 7.0
+     */
+    public List<String> getScenarioNames() {
+        return scenarioNames;
+    }
+
+    /**
+     * Request names indexed by identifier.
+     *
+     * @since 7.0
+     */
+    public List<String> getRequestNames() {
+        return requestNames;
+    }
+
+    /**
+     * Only records requests started in {@code [from, to]}, max users are the max concurrent users in the window.
+     *
+     * @since 7.0
+     */
+    public SimulationContext setTimeWindow(long from, long to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public boolean isWindowed() {
+        return from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+    }
+
+    /**
+     * Declares users of a scenario that are already running, used when parsing starts in the middle of a log.
+     *
+     * @since 7.0
+     */
+    public void resumeUsers(String scenario, int count) {
+        users.computeIfAbsent(scenario, k -> new CountMax()).current += count;
+        resumedUsers.merge(scenario, count, Integer::sum);
+        usersBeforeWindow += count;
+    }
+
+    /**
+     * Keeps the user starts and ends in log order, so the context can be merged with the contexts of the other
+     * injectors of the same simulation.
+     *
+     * @since 7.0
+     */
+    public SimulationContext setMergeable(boolean mergeable) {
+        userEvents = mergeable ? new UserEvents() : null;
+        return this;
+    }
+
+    /**
+     * Merges the simulation logs of distributed injectors into a single simulation, the result is the same as parsing
+     * a single log holding all their records.
+     * <p>
+     * Request measures and time series are added up whatever the order. Concurrent users depend on the order of the
+     * user starts and ends, they are replayed with a k-way merge of the logs on timestamps, contexts must be parsed
+     * with {@link #setMergeable(boolean)}. Durations are not copied, the merged stats read the stores of the contexts
+     * and release them.
+     *
+     * @since 7.0
+     */
+    public static SimulationContext merge(String filePath, List<SimulationContext> contexts, HeapBudget heapBudget) {
+        SimulationContext first = contexts.get(0);
+        SimulationContext ret = new SimulationContext(filePath, first.apdexT, heapBudget,
+                DurationStore.merged(contexts.stream().map(context -> context.simStat.durations).toList()));
+        ret.setSimulationName(first.simulationName);
+        ret.setScenarioName(first.scenarioName);
+        ret.setStart(contexts.stream().mapToLong(c -> c.start).filter(start -> start > 0).min().orElse(0));
+        ret.setTimeWindow(first.from, first.to);
+        ret.setScripts(first.scripts);
+        for (SimulationContext context : contexts) {
+            if (context.userEvents == null) {
+                throw new IllegalArgumentException("Simulation not parsed to be merged: " + context.filePath);
+            }
+            context.resumedUsers.forEach(
+                    (scenario, count) -> ret.users.computeIfAbsent(scenario, k -> ret.new CountMax()).current += count);
+            ret.usersBeforeWindow += context.usersBeforeWindow;
+        }
+        // scenarios are identified in the order they start, like in a single log
+        ret.replayUsers(contexts);
+        LongObjectMap<List<RequestStat>> parts = new LongObjectMap<>();
+        for (SimulationContext context : contexts) {
+            long[] keys = context.scenarioReqStats.keys();
+            Arrays.sort(keys);
+            for (long key : keys) {
+                int scenarioId = ret.getScenarioId(context.scenarioNames.get(LongObjectMap.high(key)));
+                int requestId = ret.getRequestId(context.requestNames.get(LongObjectMap.low(key)));
+                long mergedKey = LongObjectMap.pack(scenarioId, requestId);
+                List<RequestStat> requests = parts.get(mergedKey);
+                if (requests == null) {
+                    requests = new ArrayList<>(contexts.size());
+                    parts.put(mergedKey, requests);
+                }
+                requests.add(context.scenarioReqStats.get(key));
+            }
+            ret.simStat.mergeMeasures(context.simStat);
+            ret.timeline.merge(context.timeline);
+        }
+        for (long key : parts.keys()) {
+            List<RequestStat> requests = parts.get(key);
+            RequestStat request = new RequestStat(
+                    DurationStore.merged(requests.stream().map(part -> part.durations).toList()), ret.simulationName,
+                    ret.scenarioNames.get(LongObjectMap.high(key)), ret.requestNames.get(LongObjectMap.low(key)),
+                    ret.start, ret.apdexT);
+            requests.forEach(request::mergeMeasures);
+            ret.scenarioReqStats.put(key, request);
+        }
+        ret.computeStat();
+        return ret;
+    }
+
+    /**
+     * Replays the user starts and ends of all the contexts in timestamp order, the log order is kept for a context and
+     * equal timestamps of different contexts follow the order of the list.
+     */
+    protected void replayUsers(List<SimulationContext> contexts) {
+        int[] positions = new int[contexts.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, contexts.size()),
+                Comparator.<Integer> comparingLong(
+                        i -> contexts.get(i).userEvents.getTime(positions[i])).thenComparingInt(i -> i));
+        for (int i = 0; i < contexts.size(); i++) {
+            if (contexts.get(i).userEvents.size() > 0) {
+                queue.add(i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            SimulationContext context = contexts.get(i);
+            UserEvents events = context.userEvents;
+            String scenario = context.scenarioNames.get(events.getScenarioId(positions[i]));
+            getScenarioId(scenario);
+            if (events.isStart(positions[i])) {
+                addUser(scenario);
+            } else {
+                endUser(scenario);
+            }
+            if (++positions[i] < events.size()) {
+                queue.add(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the active users, in-flight requests, throughput and latency over time.
+     *
+     * @since 7.0
+     */
+    public Timeline getTimeline() {
+        return timeline;
     }
 
     public void computeStat() {
+        if (isWindowed()) {
+            // users running during the whole window
+            users.values().forEach(count -> count.maximum = max(count.maximum, count.current));
+            if (usersBeforeWindow > 0 && from != Long.MIN_VALUE) {
+                timeline.addUsers(from, usersBeforeWindow);
+            }
+        }
+        timeline.compute();
         maxUsers = users.values().stream().mapToInt(CountMax::getMax).sum();
         simStat.computeStat(maxUsers);
-        reqStats.values()
-                .forEach(request -> {
-                    CountMax userCount = users.get(request.scenario);
-                    int maxUsersForScenario = (userCount != null) ? userCount.maximum : 1;
-                    request.computeStat(simStat.duration, maxUsersForScenario);
-                });
+        List<List<RequestStat>> byRequest = new ArrayList<>(requestNames.size());
+        List<List<RequestStat>> byScenario = new ArrayList<>(scenarioNames.size());
+        requestNames.forEach(name -> byRequest.add(new ArrayList<>(1)));
+        scenarioNames.forEach(name -> byScenario.add(new ArrayList<>()));
+        long[] keys = scenarioReqStats.keys();
+        Arrays.sort(keys);
+        for (long key : keys) {
+            RequestStat request = scenarioReqStats.get(key);
+            request.computeStat(simStat.duration, getScenarioMaxUsers(request.scenario));
+            byScenario.get(LongObjectMap.high(key)).add(request);
+            byRequest.get(LongObjectMap.low(key)).add(request);
+        }
+        reqStats.clear();
+        for (List<RequestStat> requests : byRequest) {
+            if (requests.size() == 1) {
+                RequestStat request = requests.get(0);
+                reqStats.put(request.request, request);
+            } else if (requests.size() > 1) {
+                RequestStat rollup = rollup(requests);
+                reqStats.put(rollup.request, rollup);
+            }
+        }
+        this.requests = sortByAverage(reqStats.values());
+        scenarios.clear();
+        for (int i = 0; i < byScenario.size(); i++) {
+            if (!byScenario.get(i).isEmpty()) {
+                scenarios.add(new ScenarioStat(scenarioNames.get(i), byScenario.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Deletes the durations spilled to disk once the simulation has been rendered, statistics are kept but box plots can
+     * not be computed anymore.
+     *
+     * @since 7.0
+     */
+    public void release() {
+        simStat.release();
+        scenarioReqStats.values().forEach(RequestStat::release);
+        reqStats.values().forEach(RequestStat::release);
+    }
+
+    /**
+     * Rolls up a request of several scenarios, durations are read with a k-way merge of the scenario requests.
+     */
+    protected RequestStat rollup(List<RequestStat> requests) {
+        List<String> names = requests.stream().map(request -> request.scenario).collect(Collectors.toList());
+        DurationStore durations = DurationStore.merged(
+                requests.stream().map(request -> request.durations).collect(Collectors.toList()));
+        RequestStat ret = new RequestStat(durations, simulationName, String.join(" ", names),
+                requests.get(0).request, this.start, apdexT);
+        int rollupMaxUsers = 0;
+        for (RequestStat request : requests) {
+            ret.mergeMeasures(request);
+            rollupMaxUsers += getScenarioMaxUsers(request.scenario);
+        }
+        ret.computeStat(simStat.duration, rollupMaxUsers);
+        return ret;
+    }
+
+    protected int getScenarioMaxUsers(String scenario) {
+        if (UNKNOWN_SCENARIO.equals(scenario)) {
+            return Math.max(1, maxUsers);
+        }
+        CountMax userCount = users.get(scenario);
+        return (userCount != null) ? userCount.maximum : 1;
     }
 
     public void setScenarioName(String name) {
@@ -104,6 +479,26 @@ public class SimulationContext {
         return this;
     }
 
+    /**
+     * Renders the chart series of the report as literals or as references to a binary payload.
+     *
+     * @since 7.0
+     */
+    public SimulationContext setChartData(ChartData chartData) {
+        this.chartData = chartData;
+        timeline.setChartData(chartData);
+        simStat.setChartData(chartData);
+        reqStats.values().forEach(request -> request.setChartData(chartData));
+        return this;
+    }
+
+    /**
+     * @since 7.0
+     */
+    public ChartData getChartData() {
+        return chartData;
+    }
+
     @Override
     public String toString() {
         return simStat.toString() + "\n"
@@ -120,6 +515,27 @@ public class SimulationContext {
         count.incr();
     }
 
+    /**
+     * @since 7.0
+     */
+    public void addUser(String scenario, long timestamp) {
+        if (timestamp > to) {
+            return;
+        }
+        if (timestamp < from) {
+            resumeUsers(scenario, 1);
+        } else {
+            addUser(scenario);
+            timeline.addUser(timestamp);
+            if (userEvents != null) {
+                userEvents.add(timestamp, getScenarioId(scenario), true);
+            }
+        }
+        if (recordListener != null) {
+            recordListener.onUser(getScenarioId(scenario), timestamp, true);
+        }
+    }
+
     public void endUser(String scenario) {
         CountMax count = users.get(scenario);
         if (count != null) {
@@ -127,6 +543,69 @@ public class SimulationContext {
         }
     }
 
+    /**
+     * @since 7.0
+     */
+    public void endUser(String scenario, long timestamp) {
+        if (timestamp > to) {
+            return;
+        }
+        if (timestamp < from) {
+            resumeUsers(scenario, -1);
+        } else {
+            endUser(scenario);
+            timeline.endUser(timestamp);
+            if (userEvents != null) {
+                userEvents.add(timestamp, getScenarioId(scenario), false);
+            }
+        }
+        if (recordListener != null) {
+            recordListener.onUser(getScenarioId(scenario), timestamp, false);
+        }
+    }
+
+    /**
+     * @since 7.0
+     */
+    public interface RecordListener {
+        /**
+         * Called once the simulation name, scenario and start are known, before any other record.
+         */
+        default void onRun(SimulationContext context) {
+        }
+
+        default void onUser(int scenarioId, long timestamp, boolean start) {
+        }
+
+        void onRequest(int scenarioId, int requestId, long start, long end, boolean success);
+    }
+
+    public class ScenarioStat {
+        protected final String name;
+
+        protected final int maxUsers;
+
+        protected final List<RequestStat> requests;
+
+        protected ScenarioStat(String name, List<RequestStat> requests) {
+            this.name = name;
+            this.maxUsers = getScenarioMaxUsers(name);
+            this.requests = sortByAverage(requests);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMaxUsers() {
+            return maxUsers;
+        }
+
+        public List<RequestStat> getRequests() {
+            return requests;
+        }
+    }
+
     class CountMax {
         int current = 0;
         int maximum = 0;
@@ -137,6 +616,8 @@ public class SimulationContext {
         }
 
         public void decr() {
+            // users running since the start of a time window
+            maximum = max(current, maximum);
             current -= 1;
         }
 
@@ -194,7 +675,7 @@ public class SimulationContext {
 
             // Sort requests by average response time for better readability
             List<RequestStat> sortedRequests = new ArrayList<>(reqStats.values());
-            sortedRequests.sort((a, b) -> (int) (1000 * (b.avg - a.avg))); // Sort by average time (descending)
+            sortedRequests.sort(BY_AVERAGE.reversed()); // Sort by average time (descending)
 
             for (RequestStat stat : sortedRequests) {
                 double successRate = stat.successCount * 100.0 / stat.count;
@@ -16,27 +16,52 @@ package org.nuxeo.tools.gatling.report;
  *     Benoit Delbosc
  */
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base of the simulation log parsers, holds the parsing options, the time index and the resume state shared by all the
+ * log formats. Text logs are parsed by {@link SimulationParserText}.
+ */
 public abstract class SimulationParser {
 
-    protected static final String OK = "OK";
+    private static final Logger log = LoggerFactory.getLogger(SimulationParser.class);
 
-    protected static final String REQUEST = "REQUEST";
+    protected final File file;
 
-    protected static final String RUN = "RUN";
+    protected final Float apdexT;
 
-    protected static final String USER = "USER";
+    protected long maxHeapBudget;
 
-    protected static final String START = "START";
+    protected HeapBudget heapBudget;
 
-    protected static final String END = "END";
+    protected RequestFilter filter;
 
-    protected final File file;
+    protected SimulationContext.RecordListener recordListener;
 
-    protected final Float apdexT;
+    protected long from = Long.MIN_VALUE;
+
+    protected long to = Long.MAX_VALUE;
+
+    protected File timeIndexFile;
+
+    protected int timeIndexInterval = TimeIndex.DEFAULT_INTERVAL;
+
+    protected long gzipSpan = GzipIndexer.DEFAULT_SPAN;
+
+    protected int threads = ParallelGzipInputStream.DEFAULT_THREADS;
+
+    protected InputStream input;
+
+    protected boolean mergeable;
 
     public SimulationParser(File file, Float apdexT) {
         this.file = file;
@@ -48,78 +73,242 @@ public abstract class SimulationParser {
         this.apdexT = null;
     }
 
-    public SimulationContext parse() throws IOException {
-        SimulationContext ret = new SimulationContext(file.getAbsolutePath(), apdexT);
-        try (SimulationReader reader = new SimulationReader(file)) {
-            List<String> line;
-            String name;
-            String scenario;
-            long start, end;
-            boolean success;
-            List<String> header = reader.readNext();
-            checkLine(header);
-
-            ret.setSimulationName(getSimulationName(header));
-            ret.setScenarioName(getScenario(header));
-            ret.setStart(Long.parseLong(getSimulationStart(header)));
-
-            while ((line = reader.readNext()) != null) {
-                scenario = getScenario(line);
-
-                switch (getType(line)) {
-                    case RUN:
-                        break;
-                    case REQUEST:
-                        name = getRequestName(line);
-                        start = getRequestStart(line);
-                        end = getRequestEnd(line);
-                        success = getRequestSuccess(line);
-                        ret.addRequest(scenario, name, start, end, success);
-                        break;
-                    case USER:
-                        switch (getUserType(line)) {
-                            case START:
-                                ret.addUser(scenario);
-                                break;
-                            case END:
-                                ret.endUser(scenario);
-                                break;
-                        }
-                        break;
-                }
-            }
-        }
-        ret.computeStat();
-        return ret;
+    /**
+     * Limits the memory used to store exact durations, above this size in bytes durations are spilled to disk.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setMaxHeapBudget(long maxHeapBudget) {
+        this.maxHeapBudget = maxHeapBudget;
+        return this;
+    }
+
+    /**
+     * Shares a heap budget with the contexts of other parsers, replaces {@link #setMaxHeapBudget(long)}. Parsers
+     * sharing a budget can run concurrently.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setHeapBudget(HeapBudget heapBudget) {
+        this.heapBudget = heapBudget;
+        return this;
+    }
+
+    /**
+     * Drops requests rejected by the filter while parsing, before any stat is updated.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setFilter(RequestFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Receives the parsed requests, the log is always parsed when a listener is set.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setRecordListener(SimulationContext.RecordListener recordListener) {
+        this.recordListener = recordListener;
+        return this;
+    }
+
+    /**
+     * Only reports requests started in {@code [from, to]}, timestamps in milliseconds.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setTimeWindow(long from, long to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * Uses a {@link TimeIndex} to parse only the part of the log covering the time window, the index is built when
+     * the file is missing or outdated. A gzip log with an index is also decompressed by regions concurrently.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setTimeIndex(File timeIndexFile) {
+        this.timeIndexFile = timeIndexFile;
+        return this;
+    }
+
+    /**
+     * Same as {@link #setTimeIndex(File)} with a checkpoint every {@code interval} records.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setTimeIndex(File timeIndexFile, int interval) {
+        this.timeIndexInterval = interval;
+        return setTimeIndex(timeIndexFile);
+    }
+
+    /**
+     * Same as {@link #setTimeIndex(File, int)} with a gzip checkpoint every {@code gzipSpan} uncompressed bytes.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setTimeIndex(File timeIndexFile, int interval, long gzipSpan) {
+        this.gzipSpan = gzipSpan;
+        return setTimeIndex(timeIndexFile, interval);
     }
 
-    protected void checkLine(List<String> line) {
-        if (line.size() <= 2) {
-            invalidFile();
+    /**
+     * Maximum number of threads decompressing a gzip log, defaults to the number of processors. Members of multi-member
+     * gzip logs, or regions of a gzip log with a time index, are decompressed concurrently.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Opens the whole uncompressed log through its index when its regions can be decompressed concurrently.
+     *
+     * @since 7.0
+     */
+    protected InputStream openSplittable(TimeIndex index) throws IOException {
+        if (index == null || isWindowed() || threads <= 1 || !index.isSplittable()) {
+            return null;
         }
+        log.debug("Decompressing " + file.getAbsolutePath() + " with " + threads + " threads");
+        return index.open(file, threads);
     }
 
-    protected abstract String getSimulationName(List<String> line);
+    /**
+     * Parses an uncompressed stream instead of the file, the file only names the simulation, there is no time index.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setInput(InputStream input) {
+        this.input = input;
+        return this;
+    }
 
-    protected abstract String getSimulationStart(List<String> line);
+    /**
+     * Parses a context that can be merged with the contexts of other injectors, see
+     * {@link SimulationContext#merge(String, List, HeapBudget)}. Its stats are not computed, only the merged context is.
+     *
+     * @since 7.0
+     */
+    public SimulationParser setMergeable(boolean mergeable) {
+        this.mergeable = mergeable;
+        return this;
+    }
 
-    protected abstract String getScenario(List<String> line);
+    protected boolean isWindowed() {
+        return from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+    }
 
-    protected abstract String getType(List<String> line);
+    /**
+     * Notifies the record listener that the simulation metadata are set.
+     *
+     * @since 7.0
+     */
+    protected void fireRun(SimulationContext context) {
+        if (recordListener != null) {
+            recordListener.onRun(context);
+        }
+    }
 
-    protected abstract String getUserType(List<String> line);
+    protected SimulationContext createContext() {
+        SimulationContext ret = new SimulationContext(file.getAbsolutePath(), apdexT,
+                heapBudget != null ? heapBudget : HeapBudget.of(maxHeapBudget));
+        return ret.setRecordListener(recordListener).setTimeWindow(from, to).setMergeable(mergeable);
+    }
 
-    protected abstract String getRequestName(List<String> line);
+    /**
+     * Computes the stats of the parsed context unless it is parsed to be merged.
+     *
+     * @since 7.0
+     */
+    protected void computeStat(SimulationContext context) {
+        if (!mergeable) {
+            context.computeStat();
+        }
+    }
 
-    protected abstract Long getRequestStart(List<String> line);
+    /**
+     * Returns the valid time index of the log or {@code null}.
+     *
+     * @since 7.0
+     */
+    protected TimeIndex loadTimeIndex() {
+        return timeIndexFile == null || input != null ? null : TimeIndex.load(timeIndexFile, this);
+    }
 
-    protected abstract Long getRequestEnd(List<String> line);
+    /**
+     * @since 7.0
+     */
+    protected void storeTimeIndex(TimeIndex.Builder builder) {
+        try {
+            builder.build().store(timeIndexFile);
+            log.info("Time index written to " + timeIndexFile.getAbsolutePath());
+        } catch (IOException e) {
+            log.warn("Can not write time index " + timeIndexFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
 
-    protected abstract boolean getRequestSuccess(List<String> line);
+    /**
+     * Restores the parser state and the running users at a checkpoint of the index.
+     *
+     * @since 7.0
+     */
+    protected Map<String, Integer> resume(SimulationContext context, TimeIndex index, int checkpoint)
+            throws IOException {
+        readResumeState(index.getState());
+        Map<String, Integer> ret = index.getUsers(checkpoint);
+        ret.forEach((scenario, count) -> {
+            if (filter == null || filter.acceptScenario(context.getScenarioId(scenario), scenario)) {
+                context.resumeUsers(scenario, count);
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * Returns the user to scenario mapping of parsers attributing requests to scenarios through their user.
+     *
+     * @since 7.0
+     */
+    protected Map<String, String> getUserScenarios() {
+        return null;
+    }
 
-    protected SimulationContext invalidFile() {
-        throw new IllegalArgumentException(String.format(
-                "Invalid simulation file: %s expecting " + "Gatling 2.1, 2.3.1 or 3.x format", file.getAbsolutePath()));
+    /**
+     * Writes the state needed to parse the log from any {@link TimeIndex} checkpoint, once the whole log is parsed.
+     *
+     * @since 7.0
+     */
+    protected void writeResumeState(DataOutputStream out) throws IOException {
+        Map<String, String> userScenarios = getUserScenarios();
+        out.writeInt(userScenarios == null ? 0 : userScenarios.size());
+        if (userScenarios != null) {
+            for (Map.Entry<String, String> entry : userScenarios.entrySet()) {
+                SummaryCache.writeString(out, entry.getKey());
+                SummaryCache.writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @since 7.0
+     */
+    protected void readResumeState(DataInputStream in) throws IOException {
+        Map<String, String> userScenarios = getUserScenarios();
+        for (int i = in.readInt(); i > 0; i--) {
+            String user = SummaryCache.readString(in);
+            String scenario = SummaryCache.readString(in);
+            if (userScenarios != null) {
+                userScenarios.put(user, scenario);
+            }
+        }
     }
 
+    public abstract SimulationContext parse() throws IOException;
 }
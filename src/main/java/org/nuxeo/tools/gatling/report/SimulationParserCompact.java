@@ -0,0 +1,220 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Parser for compact logs written by the {@link Transcoder}.
+ *
+ * @since 7.0
+ */
+public class SimulationParserCompact extends SimulationParser {
+
+    protected static final int BUFFER_SIZE = 256 * 1024;
+
+    public SimulationParserCompact(File file, Float apdexT) {
+        super(file, apdexT);
+    }
+
+    public SimulationParserCompact(File file) {
+        super(file);
+    }
+
+    /**
+     * Returns true if the file starts like a compact log, once uncompressed.
+     */
+    public static boolean isCompact(File file) {
+        try (InputStream in = Compression.open(file)) {
+            return isCompact(in.readNBytes(4));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if the uncompressed content starts like a compact log.
+     */
+    public static boolean isCompact(byte[] head) {
+        return head.length >= 4 && ((head[0] & 0xFF) << 24 | (head[1] & 0xFF) << 16 | (head[2] & 0xFF) << 8
+                | (head[3] & 0xFF)) == Transcoder.MAGIC;
+    }
+
+    @Override
+    public SimulationContext parse() throws IOException {
+        SimulationContext ret = createContext();
+        try (Input in = new Input(input != null ? input : Compression.open(file))) {
+            if (in.readInt() != Transcoder.MAGIC) {
+                throw new IOException("Not a compact simulation log: " + file.getAbsolutePath());
+            }
+            int version = in.read();
+            if (version != Transcoder.VERSION) {
+                throw new IOException("Unsupported compact simulation log version: " + version);
+            }
+            ret.setSimulationName(in.readString());
+            ret.setScenarioName(in.readString());
+            ret.setStart(in.readLong());
+            fireRun(ret);
+
+            // file identifiers to context identifiers
+            String[] scenarios = new String[16];
+            int[] scenarioIds = new int[16];
+            int[] requestIds = new int[64];
+            int scenarioCount = 0;
+            int requestCount = 0;
+            long previous = ret.start;
+            int type;
+            while ((type = in.read()) >= 0) {
+                switch (type) {
+                case Transcoder.DEFINE_SCENARIO:
+                    if (scenarioCount == scenarios.length) {
+                        scenarios = Arrays.copyOf(scenarios, scenarioCount * 2);
+                        scenarioIds = Arrays.copyOf(scenarioIds, scenarioCount * 2);
+                    }
+                    scenarios[scenarioCount] = in.readString();
+                    scenarioIds[scenarioCount] = ret.getScenarioId(scenarios[scenarioCount]);
+                    scenarioCount++;
+                    break;
+                case Transcoder.DEFINE_REQUEST:
+                    if (requestCount == requestIds.length) {
+                        requestIds = Arrays.copyOf(requestIds, requestCount * 2);
+                    }
+                    requestIds[requestCount++] = ret.getRequestId(in.readString());
+                    break;
+                case Transcoder.USER_START:
+                case Transcoder.USER_END:
+                    int scenario = (int) in.readVarLong();
+                    previous += Varints.unZigZag(in.readVarLong());
+                    String scenarioName = scenarios[scenario];
+                    if (filter != null && !filter.acceptScenario(scenarioIds[scenario], scenarioName)) {
+                        break;
+                    }
+                    if (type == Transcoder.USER_START) {
+                        ret.addUser(scenarioName, previous);
+                    } else {
+                        ret.endUser(scenarioName, previous);
+                    }
+                    break;
+                case Transcoder.REQUEST_OK:
+                case Transcoder.REQUEST_KO:
+                    int scenarioId = scenarioIds[(int) in.readVarLong()];
+                    int requestId = requestIds[(int) in.readVarLong()];
+                    previous += Varints.unZigZag(in.readVarLong());
+                    long end = previous + Varints.unZigZag(in.readVarLong());
+                    if (filter != null && !(filter.acceptScenario(scenarioId, ret.scenarioNames.get(scenarioId))
+                            && filter.acceptRequest(requestId, ret.requestNames.get(requestId)))) {
+                        break;
+                    }
+                    ret.addRequest(scenarioId, requestId, previous, end, type == Transcoder.REQUEST_OK);
+                    break;
+                default:
+                    throw new IOException("Invalid record type " + type + " in " + file.getAbsolutePath());
+                }
+            }
+        }
+        computeStat(ret);
+        return ret;
+    }
+
+    protected static class Input implements AutoCloseable {
+        protected final InputStream in;
+
+        protected final byte[] buffer = new byte[BUFFER_SIZE];
+
+        protected int position;
+
+        protected int limit;
+
+        protected Input(InputStream in) {
+            this.in = in;
+        }
+
+        protected int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        protected int readByte() throws IOException {
+            int ret = read();
+            if (ret < 0) {
+                throw new EOFException("Truncated compact simulation log");
+            }
+            return ret;
+        }
+
+        protected int readInt() throws IOException {
+            return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        }
+
+        protected long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        protected long readVarLong() throws IOException {
+            long ret = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                ret |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return ret;
+        }
+
+        protected String readString() throws IOException {
+            int length = (int) readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length;) {
+                if (position == limit && !fill()) {
+                    throw new EOFException("Truncated compact simulation log");
+                }
+                int count = Math.min(length - i, limit - position);
+                System.arraycopy(buffer, position, bytes, i, count);
+                position += count;
+                i += count;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        protected boolean fill() throws IOException {
+            int count = in.read(buffer, 0, buffer.length);
+            if (count <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = count;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Parser of the text simulation logs, records are read as lines of tab separated values.
+ *
+ * @since 7.0
+ */
+public abstract class SimulationParserText extends SimulationParser {
+
+    protected static final String OK = "OK";
+
+    protected static final String REQUEST = "REQUEST";
+
+    protected static final String RUN = "RUN";
+
+    protected static final String USER = "USER";
+
+    protected static final String START = "START";
+
+    protected static final String END = "END";
+
+    public SimulationParserText(File file, Float apdexT) {
+        super(file, apdexT);
+    }
+
+    public SimulationParserText(File file) {
+        super(file);
+    }
+
+    @Override
+    public SimulationContext parse() throws IOException {
+        SimulationContext ret = createContext();
+        TimeIndex index = loadTimeIndex();
+        if (index != null && isWindowed()) {
+            parseIndexed(ret, index);
+        } else if (timeIndexFile != null && index == null && input == null) {
+            TimeIndex.Builder builder = new TimeIndex.Builder(this, timeIndexInterval, gzipSpan);
+            try (SimulationReader reader = new SimulationReader(builder.open(file), SimulationReader.newCsvParser())) {
+                parseHeader(ret, reader);
+                parseRecords(ret, reader, builder);
+            }
+            storeTimeIndex(builder);
+        } else {
+            InputStream in = input != null ? input : openSplittable(index);
+            try (SimulationReader reader = in == null ? new SimulationReader(file, threads)
+                    : new SimulationReader(in, SimulationReader.newCsvParser())) {
+                parseHeader(ret, reader);
+                parseRecords(ret, reader, null);
+            }
+        }
+        computeStat(ret);
+        return ret;
+    }
+
+    /**
+     * Parses the records of the time window, starting from the closest checkpoint.
+     *
+     * @since 7.0
+     */
+    protected void parseIndexed(SimulationContext context, TimeIndex index) throws IOException {
+        try (SimulationReader reader = new SimulationReader(file)) {
+            parseHeader(context, reader);
+        }
+        int first = index.getFirst(from);
+        int end = index.getEnd(to);
+        if (first >= end) {
+            return;
+        }
+        resume(context, index, first);
+        try (SimulationReader reader = new SimulationReader(index.open(file, first, end),
+                SimulationReader.newCsvParser())) {
+            parseRecords(context, reader, null);
+        }
+    }
+
+    protected void parseHeader(SimulationContext context, SimulationReader reader) throws IOException {
+        List<String> header = reader.readNext();
+        checkLine(header);
+        context.setSimulationName(getSimulationName(header));
+        context.setScenarioName(getScenario(header));
+        context.setStart(Long.parseLong(getSimulationStart(header)));
+        fireRun(context);
+    }
+
+    /**
+     * Parses the records up to the end of the reader, the index builder is {@code null} when no index is built.
+     */
+    protected void parseRecords(SimulationContext context, SimulationReader reader, TimeIndex.Builder index)
+            throws IOException {
+        List<String> line;
+        String name;
+        String scenario;
+        String userType;
+        int scenarioId, requestId;
+        long start, end;
+        boolean success;
+        while ((line = reader.readNext()) != null) {
+            if (index != null) {
+                index.mark(reader.getPosition());
+            }
+            scenario = getScenario(line);
+
+            switch (getType(line)) {
+                case RUN:
+                    break;
+                case REQUEST:
+                    name = getRequestName(line);
+                    scenarioId = context.getScenarioId(scenario);
+                    requestId = context.getRequestId(name);
+                    if (index != null) {
+                        index.addTime(getRequestStart(line));
+                    }
+                    if (filter != null && !(filter.acceptScenario(scenarioId, scenario)
+                            && filter.acceptRequest(requestId, name))) {
+                        break;
+                    }
+                    start = getRequestStart(line);
+                    end = getRequestEnd(line);
+                    success = getRequestSuccess(line);
+                    context.addRequest(scenarioId, requestId, start, end, success);
+                    break;
+                case USER:
+                    userType = getUserType(line);
+                    if (index != null && (START.equals(userType) || END.equals(userType))) {
+                        boolean started = START.equals(userType);
+                        index.addUser(scenario, started, started ? getUserStart(line) : getUserEnd(line));
+                    }
+                    if (filter != null && !filter.acceptScenario(context.getScenarioId(scenario), scenario)) {
+                        break;
+                    }
+                    switch (userType) {
+                        case START:
+                            context.addUser(scenario, getUserStart(line));
+                            break;
+                        case END:
+                            context.endUser(scenario, getUserEnd(line));
+                            break;
+                    }
+                    break;
+            }
+        }
+    }
+
+    protected void checkLine(List<String> line) {
+        if (line.size() <= 2) {
+            invalidFile();
+        }
+    }
+
+    protected abstract String getSimulationName(List<String> line);
+
+    protected abstract String getSimulationStart(List<String> line);
+
+    protected abstract String getScenario(List<String> line);
+
+    protected abstract String getType(List<String> line);
+
+    protected abstract String getUserType(List<String> line);
+
+    protected abstract Long getUserStart(List<String> line);
+
+    protected abstract Long getUserEnd(List<String> line);
+
+    protected abstract String getRequestName(List<String> line);
+
+    protected abstract Long getRequestStart(List<String> line);
+
+    protected abstract Long getRequestEnd(List<String> line);
+
+    protected abstract boolean getRequestSuccess(List<String> line);
+
+    protected SimulationContext invalidFile() {
+        throw new IllegalArgumentException(String.format(
+                "Invalid simulation file: %s expecting " + "Gatling 2.1, 2.3.1 or 3.x format", file.getAbsolutePath()));
+    }
+}
@@ -22,7 +22,7 @@ import java.util.List;
 /**
  * Gatling 2.1.7 simulation format
  */
-public class SimulationParserV2 extends SimulationParser {
+public class SimulationParserV2 extends SimulationParserText {
 
     public SimulationParserV2(File file, Float apdexT) {
         super(file, apdexT);
@@ -52,6 +52,14 @@ public class SimulationParserV2 extends SimulationParser {
         return line.get(3);
     }
 
+    protected Long getUserStart(List<String> line) {
+        return Long.parseLong(line.get(4));
+    }
+
+    protected Long getUserEnd(List<String> line) {
+        return Long.parseLong(line.get(line.size() - 1));
+    }
+
     protected String getRequestName(List<String> line) {
         return line.get(4);
     }
@@ -23,7 +23,7 @@ import java.util.List;
 /**
  * Gatling 2.3.1 simulation format
  */
-public class SimulationParserV23 extends SimulationParser {
+public class SimulationParserV23 extends SimulationParserText {
 
     public SimulationParserV23(File file, Float apdexT) {
         super(file, apdexT);
@@ -53,6 +53,14 @@ public class SimulationParserV23 extends SimulationParser {
         return line.get(3);
     }
 
+    protected Long getUserStart(List<String> line) {
+        return Long.parseLong(line.get(4));
+    }
+
+    protected Long getUserEnd(List<String> line) {
+        return Long.parseLong(line.get(line.size() - 1));
+    }
+
     protected String getRequestName(List<String> line) {
         return line.get(4);
     }
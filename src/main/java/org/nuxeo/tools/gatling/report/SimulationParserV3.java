@@ -24,7 +24,7 @@ import java.util.Map;
 /**
  * Gatling 3.? simulation format
  */
-public class SimulationParserV3 extends SimulationParser {
+public class SimulationParserV3 extends SimulationParserText {
 
     protected final Map<String, String> userIdToScenarioMap;
 
@@ -67,6 +67,14 @@ public class SimulationParserV3 extends SimulationParser {
         return line.get(3);
     }
 
+    protected Long getUserStart(List<String> line) {
+        return Long.parseLong(line.get(4));
+    }
+
+    protected Long getUserEnd(List<String> line) {
+        return Long.parseLong(line.get(line.size() - 1));
+    }
+
     protected String getRequestName(List<String> line) {
         return line.get(3);
     }
@@ -89,5 +97,8 @@ public class SimulationParserV3 extends SimulationParser {
         userIdToScenarioMap.put(userId, scenario);
     }
 
-
+    @Override
+    protected Map<String, String> getUserScenarios() {
+        return userIdToScenarioMap;
+    }
 }
@@ -18,8 +18,10 @@ package org.nuxeo.tools.gatling.report;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -31,7 +33,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,14 +65,22 @@ public class SimulationParserV313 extends SimulationParser {
     private int errorRecords = 0;
     private int groupRecords = 0;
 
-    // Store scenario to user mapping
-    protected final Map<String, String> userScenario = new HashMap<>();
-
     // Store simulation metadata
     protected String simulationClassName;
     protected long simulationStart;
     protected String[] scenarioNames;
 
+    // Active users per scenario index, used to attribute requests to a scenario
+    protected int[] activeUsers;
+
+    // Time index built while parsing, null when not building
+    protected TimeIndex.Builder indexBuilder;
+
+    // Bytes read from the uncompressed log and log offset of the buffer start
+    protected long streamPosition;
+
+    protected long bufferOffset;
+
     public SimulationParserV313(File file, Float apdexT) {
         super(file, apdexT);
         log.debug("Created parser for file: {} with apdexT={}", file.getAbsolutePath(), apdexT);
@@ -126,15 +135,23 @@ public class SimulationParserV313 extends SimulationParser {
     @Override
     public SimulationContext parse() throws IOException {
         log.info("Starting to parse binary simulation log: {}", file.getAbsolutePath());
-        SimulationContext ret = new SimulationContext(file.getAbsolutePath(), apdexT);
-
-        // Check if the file is gzipped
-        boolean isGzipped = isGzippedFile(file);
-        log.info("Detected {} file format", isGzipped ? "gzipped" : "standard");
-
-        if (isGzipped) {
-            // Handle gzipped file with InputStream
-            parseGzippedFile(ret);
+        SimulationContext ret = createContext();
+
+        // Check if the file is compressed
+        Compression compression = input != null ? Compression.NONE : Compression.of(file);
+        log.info("Detected {} file format",
+                compression == Compression.NONE ? "standard" : compression.name().toLowerCase() + " compressed");
+
+        TimeIndex index = loadTimeIndex();
+        if (input != null) {
+            parseStream(ret, input);
+        } else if (index != null && isWindowed()) {
+            parseIndexed(ret, index);
+        } else if (timeIndexFile != null && index == null) {
+            parseAndIndex(ret);
+        } else if (compression != Compression.NONE) {
+            // Handle compressed file with InputStream
+            parseCompressedFile(ret, compression, openSplittable(index));
         } else {
             // Handle regular file with RandomAccessFile
             parseRegularFile(ret);
@@ -144,7 +161,7 @@ public class SimulationParserV313 extends SimulationParser {
                 totalRecords, userRecords, requestRecords, errorRecords, groupRecords);
 
         log.debug("Computing statistics");
-        ret.computeStat();
+        computeStat(ret);
 
         return ret;
     }
@@ -168,15 +185,19 @@ public class SimulationParserV313 extends SimulationParser {
     }
 
     /**
-     * Process a gzipped file
+     * Process a compressed file, gzip members or regions of the time index are decompressed concurrently
      */
-    private void parseGzippedFile(SimulationContext context) throws IOException {
-        try (FileInputStream fis = new FileInputStream(file);
-                BufferedInputStream bis = new BufferedInputStream(fis);
-                GZIPInputStream gzis = new GZIPInputStream(bis);
-                ReadableByteChannel channel = Channels.newChannel(gzis)) {
+    private void parseCompressedFile(SimulationContext context, Compression compression, InputStream splittable)
+            throws IOException {
+        log.debug("Processing {} compressed file", compression);
+        parseStream(context, splittable != null ? splittable : compression.open(file, threads));
+    }
 
-            log.debug("Processing gzipped file");
+    /**
+     * Process an uncompressed stream
+     */
+    private void parseStream(SimulationContext context, InputStream in) throws IOException {
+        try (ReadableByteChannel channel = Channels.newChannel(in)) {
             ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
 
             // Process the RUN record first
@@ -187,17 +208,81 @@ public class SimulationParserV313 extends SimulationParser {
         }
     }
 
+    /**
+     * Parses the whole file while building its time index
+     */
+    private void parseAndIndex(SimulationContext context) throws IOException {
+        indexBuilder = new TimeIndex.Builder(this, timeIndexInterval);
+        try (ReadableByteChannel channel = Channels.newChannel(indexBuilder.open(file))) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            processRunRecord(channel, buffer, context);
+            processRemainingRecords(channel, buffer, context);
+            storeTimeIndex(indexBuilder);
+        } finally {
+            indexBuilder = null;
+        }
+    }
+
+    /**
+     * Parses the records of the time window, starting from the closest checkpoint of the index
+     */
+    protected void parseIndexed(SimulationContext context, TimeIndex index) throws IOException {
+        try (InputStream in = Compression.open(file); ReadableByteChannel channel = Channels.newChannel(in)) {
+            processRunRecord(channel, ByteBuffer.allocate(BUFFER_SIZE), context);
+        }
+        int first = index.getFirst(from);
+        int end = index.getEnd(to);
+        if (first >= end) {
+            return;
+        }
+        Map<String, Integer> users = resume(context, index, first);
+        for (int i = 0; i < scenarioNames.length; i++) {
+            activeUsers[i] = users.getOrDefault(scenarioNames[i], 0);
+        }
+        try (ReadableByteChannel channel = Channels.newChannel(index.open(file, first, end))) {
+            processRemainingRecords(channel, ByteBuffer.allocate(BUFFER_SIZE), context);
+        }
+    }
+
+    /**
+     * Records are attributed to scenarios by the active users, the state is the string cache.
+     */
+    @Override
+    protected void writeResumeState(DataOutputStream out) throws IOException {
+        out.writeInt(stringCache.size());
+        for (Map.Entry<Integer, String> entry : stringCache.entrySet()) {
+            byte[] bytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(entry.getKey());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    protected void readResumeState(DataInputStream in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            int index = in.readInt();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            stringCache.put(index, new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
     /**
      * Process the RUN record at the beginning of the file
      * Modified to accept ReadableByteChannel instead of only FileChannel
      */
     private void processRunRecord(ReadableByteChannel channel, ByteBuffer buffer, SimulationContext context)
             throws IOException {
-        int bytesRead = channel.read(buffer);
-        if (bytesRead <= 0) {
+        // decompressing channels can return less than available, the RUN record must be fully buffered
+        int bytesRead;
+        while (buffer.hasRemaining() && (bytesRead = channel.read(buffer)) > 0) {
+            streamPosition += bytesRead;
+        }
+        if (buffer.position() == 0) {
             throw new IOException("Empty file or failed to read simulation log");
         }
-        log.debug("Initial read: {} bytes", bytesRead);
+        log.debug("Initial read: {} bytes", buffer.position());
 
         buffer.flip();
 
@@ -217,6 +302,7 @@ public class SimulationParserV313 extends SimulationParser {
                 if (scenarioNames.length > 0) {
                     context.setScenarioName(scenarioNames[0]);
                 }
+                fireRun(context);
 
                 log.info("Parsed simulation: {}, scenarios: {}, start: {}",
                         simulationClassName, scenarioNames.length, simulationStart);
@@ -254,6 +340,7 @@ public class SimulationParserV313 extends SimulationParser {
         int bytesRead = channel.read(buffer);
 
         if (bytesRead > 0) {
+            streamPosition += bytesRead;
             log.trace("Read {} bytes from file", bytesRead);
         }
 
@@ -263,6 +350,7 @@ public class SimulationParserV313 extends SimulationParser {
         }
 
         buffer.flip();
+        bufferOffset = streamPosition - buffer.limit();
         processBuffer(buffer, context);
         buffer.compact();
 
@@ -322,6 +410,10 @@ public class SimulationParserV313 extends SimulationParser {
             return false;
         }
 
+        if (indexBuilder != null) {
+            indexBuilder.mark(bufferOffset + recordStart);
+        }
+
         // Advance past the record type byte
         buffer.get();
 
@@ -399,24 +491,6 @@ public class SimulationParserV313 extends SimulationParser {
         }
     }
 
-    /**
-     * Determines if a file is gzipped by checking its magic number.
-     */
-    private static boolean isGzippedFile(File file) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            if (raf.length() < 2) {
-                return false;
-            }
-
-            // Check for gzip magic number (0x1F 0x8B)
-            int byte1 = raf.read();
-            int byte2 = raf.read();
-            return byte1 == 0x1F && byte2 == 0x8B;
-        } catch (IOException e) {
-            return false;
-        }
-    }
-
     /**
      * Handle errors that occur while processing a record
      */
@@ -509,6 +583,7 @@ public class SimulationParserV313 extends SimulationParser {
         log.debug("Number of scenarios: {}", scenarioCount);
 
         scenarioNames = new String[scenarioCount];
+        activeUsers = new int[scenarioCount];
         for (int i = 0; i < scenarioCount; i++) {
             scenarioNames[i] = readString(buffer);
             log.debug("Scenario {}: {}", i, scenarioNames[i]);
@@ -539,20 +614,27 @@ public class SimulationParserV313 extends SimulationParser {
         long timestamp = simulationStart + relativeTimestamp;
 
         String scenarioName = getScenarioName(scenarioIndex);
-        String userId = "user-" + scenarioName + "-" + System.nanoTime(); // Generate unique user ID
+        if (indexBuilder != null) {
+            indexBuilder.addUser(scenarioName, isStart, timestamp);
+        }
 
-        log.trace("USER event: scenario={}, isStart={}, timestamp={}",
-                scenarioName, isStart, timestamp);
+        if (log.isTraceEnabled()) {
+            log.trace("USER event: scenario={}, isStart={}, timestamp={}", scenarioName, isStart, timestamp);
+        }
 
-        // Store scenario mapping
-        userScenario.put(userId, scenarioName);
+        if (scenarioIndex >= 0 && scenarioIndex < activeUsers.length) {
+            activeUsers[scenarioIndex] += isStart ? 1 : -1;
+        }
+        if (filter != null && !filter.acceptScenario(context.getScenarioId(scenarioName), scenarioName)) {
+            return;
+        }
 
         // Update the context with user events
         if (isStart) {
-            context.addUser(scenarioName);
+            context.addUser(scenarioName, timestamp);
             log.trace("Added user to scenario: {}", scenarioName);
         } else {
-            context.endUser(scenarioName);
+            context.endUser(scenarioName, timestamp);
             log.trace("Ended user in scenario: {}", scenarioName);
         }
     }
@@ -581,17 +663,49 @@ public class SimulationParserV313 extends SimulationParser {
 
         long startTimestamp = simulationStart + relativeStartTime;
         long endTimestamp = simulationStart + relativeEndTime;
-        long duration = endTimestamp - startTimestamp;
+        if (indexBuilder != null) {
+            indexBuilder.addTime(startTimestamp);
+        }
 
-        log.trace("REQUEST: name={}, start={}, end={}, duration={}ms, success={}, message={}",
-                requestName, startTimestamp, endTimestamp, duration, success,
-                message.isEmpty() ? "[none]" : message);
+        String scenarioName = getRequestScenario();
+        int scenarioId = context.getScenarioId(scenarioName);
+        int requestId = context.getRequestId(requestName);
+        if (filter != null && !(filter.acceptScenario(scenarioId, scenarioName)
+                && filter.acceptRequest(requestId, requestName))) {
+            return;
+        }
 
-        // Use first scenario if we can't determine the actual one
-        String scenarioName = scenarioNames.length > 0 ? scenarioNames[0] : "default";
+        if (log.isTraceEnabled()) {
+            log.trace("REQUEST: name={}, start={}, end={}, duration={}ms, success={}, message={}",
+                    requestName, startTimestamp, endTimestamp, endTimestamp - startTimestamp, success,
+                    message.isEmpty() ? "[none]" : message);
+        }
 
         // Add the request to the context
-        context.addRequest(scenarioName, requestName, startTimestamp, endTimestamp, success);
+        context.addRequest(scenarioId, requestId, startTimestamp, endTimestamp, success);
+    }
+
+    /**
+     * Binary request records do not reference their scenario, a request is attributed to the only scenario having
+     * active users, or to {@link SimulationContext#UNKNOWN_SCENARIO} when several scenarios are running.
+     */
+    protected String getRequestScenario() {
+        if (scenarioNames.length == 0) {
+            return "default";
+        }
+        if (scenarioNames.length == 1) {
+            return scenarioNames[0];
+        }
+        int found = -1;
+        for (int i = 0; i < activeUsers.length; i++) {
+            if (activeUsers[i] > 0) {
+                if (found >= 0) {
+                    return SimulationContext.UNKNOWN_SCENARIO;
+                }
+                found = i;
+            }
+        }
+        return found >= 0 ? scenarioNames[found] : SimulationContext.UNKNOWN_SCENARIO;
     }
 
     /**
@@ -713,65 +827,4 @@ public class SimulationParserV313 extends SimulationParser {
         log.warn("Invalid scenario index: {}, using 'unknown'", index);
         return "unknown";
     }
-
-    // Implementation of required abstract methods
-    // These are mostly placeholders as the actual parsing happens in our custom
-    // parse() method
-
-    @Override
-    protected String getSimulationName(List<String> line) {
-        return simulationClassName;
-    }
-
-    @Override
-    protected String getSimulationStart(List<String> line) {
-        return String.valueOf(simulationStart);
-    }
-
-    @Override
-    protected String getScenario(List<String> line) {
-        if (RUN.equals(line.get(0))) {
-            return scenarioNames.length > 0 ? scenarioNames[0] : "";
-        } else if (USER.equals(line.get(0))) {
-            String user = line.get(2);
-            if (START.equals(line.get(3))) {
-                String ret = line.get(1);
-                userScenario.put(user, ret);
-            }
-            return userScenario.get(user);
-        } else {
-            String user = line.get(1);
-            return userScenario.get(user);
-        }
-    }
-
-    @Override
-    protected String getType(List<String> line) {
-        return line.get(0);
-    }
-
-    @Override
-    protected String getUserType(List<String> line) {
-        return line.get(2);
-    }
-
-    @Override
-    protected String getRequestName(List<String> line) {
-        return line.get(2);
-    }
-
-    @Override
-    protected Long getRequestStart(List<String> line) {
-        return Long.parseLong(line.get(3));
-    }
-
-    @Override
-    protected Long getRequestEnd(List<String> line) {
-        return Long.parseLong(line.get(4));
-    }
-
-    @Override
-    protected boolean getRequestSuccess(List<String> line) {
-        return OK.equals(line.get(5));
-    }
-}
\ No newline at end of file
+}
@@ -24,7 +24,7 @@ import java.util.Map;
 /**
  * Gatling 3.2 simulation format
  */
-public class SimulationParserV32 extends SimulationParser {
+public class SimulationParserV32 extends SimulationParserText {
 
     final protected Map<String, String> userScenario = new HashMap<>();
 
@@ -68,6 +68,14 @@ public class SimulationParserV32 extends SimulationParser {
         return line.get(3);
     }
 
+    protected Long getUserStart(List<String> line) {
+        return Long.parseLong(line.get(4));
+    }
+
+    protected Long getUserEnd(List<String> line) {
+        return Long.parseLong(line.get(line.size() - 1));
+    }
+
     protected String getRequestName(List<String> line) {
         return line.get(3);
     }
@@ -83,4 +91,9 @@ public class SimulationParserV32 extends SimulationParser {
     protected boolean getRequestSuccess(List<String> line) {
         return OK.equals(line.get(6));
     }
+
+    @Override
+    protected Map<String, String> getUserScenarios() {
+        return userScenario;
+    }
 }
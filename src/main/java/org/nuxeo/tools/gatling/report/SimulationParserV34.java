@@ -24,7 +24,7 @@ import java.util.Map;
 /**
  * Gatling 3.4 simulation format
  */
-public class SimulationParserV34 extends SimulationParser {
+public class SimulationParserV34 extends SimulationParserText {
 
     final protected Map<String, String> userScenario = new HashMap<>();
 
@@ -72,6 +72,14 @@ public class SimulationParserV34 extends SimulationParser {
         return line.get(2);
     }
 
+    protected Long getUserStart(List<String> line) {
+        return Long.parseLong(line.get(3));
+    }
+
+    protected Long getUserEnd(List<String> line) {
+        return Long.parseLong(line.get(line.size() - 1));
+    }
+
     protected String getRequestName(List<String> line) {
         return line.get(2);
     }
@@ -87,4 +95,9 @@ public class SimulationParserV34 extends SimulationParser {
     protected boolean getRequestSuccess(List<String> line) {
         return OK.equals(line.get(5));
     }
+
+    @Override
+    protected Map<String, String> getUserScenarios() {
+        return userScenario;
+    }
 }
@@ -24,7 +24,7 @@ import java.util.Map;
 /**q
  * Gatling 3.5 simulation format
  */
-public class SimulationParserV35 extends SimulationParser {
+public class SimulationParserV35 extends SimulationParserText {
 
     final protected Map<String, String> userScenario = new HashMap<>();
 
@@ -68,6 +68,14 @@ public class SimulationParserV35 extends SimulationParser {
         return line.get(2);
     }
 
+    protected Long getUserStart(List<String> line) {
+        return Long.parseLong(line.get(3));
+    }
+
+    protected Long getUserEnd(List<String> line) {
+        return Long.parseLong(line.get(line.size() - 1));
+    }
+
     protected String getRequestName(List<String> line) {
         return line.get(2);
     }
@@ -83,4 +91,9 @@ public class SimulationParserV35 extends SimulationParser {
     protected boolean getRequestSuccess(List<String> line) {
         return OK.equals(line.get(5));
     }
+
+    @Override
+    protected Map<String, String> getUserScenarios() {
+        return userScenario;
+    }
 }
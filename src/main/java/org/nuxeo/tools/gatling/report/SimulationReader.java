@@ -20,7 +20,10 @@ package org.nuxeo.tools.gatling.report;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 
 import net.quux00.simplecsv.CsvParser;
@@ -36,21 +39,151 @@ public class SimulationReader extends CsvReader {
 
     protected static final String ASSERTION = "assertion";
 
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    // byte input when positions are tracked
+    protected final InputStream input;
+
+    protected final CsvParser csvParser;
+
+    protected byte[] buffer;
+
+    protected int position;
+
+    protected int limit;
+
+    // stream offset of buffer[0]
+    protected long offset;
+
+    protected long linePosition;
+
     public SimulationReader(File file) throws IOException {
-        this(Utils.getReaderFor(file), 0,
-                new CsvParserBuilder().trimWhitespace(true).allowUnbalancedQuotes(true).separator('\t').build());
+        this(Utils.getReaderFor(file), 0, newCsvParser());
+    }
+
+    /**
+     * @since 7.0
+     */
+    public SimulationReader(File file, int threads) throws IOException {
+        this(Utils.getReaderFor(file, threads), 0, newCsvParser());
     }
 
     public SimulationReader(Reader reader, int line, CsvParser csvParser) {
         super(reader, line, csvParser);
+        this.input = null;
+        this.csvParser = csvParser;
+    }
+
+    /**
+     * Reads lines from an uncompressed byte stream, keeping track of their position, see {@link #getPosition()}.
+     *
+     * @since 7.0
+     */
+    public SimulationReader(InputStream input, CsvParser csvParser) {
+        super(Reader.nullReader(), 0, csvParser);
+        this.input = input;
+        this.csvParser = csvParser;
+        buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * @since 7.0
+     */
+    public static CsvParser newCsvParser() {
+        return new CsvParserBuilder().trimWhitespace(true).allowUnbalancedQuotes(true).separator('\t').build();
+    }
+
+    /**
+     * Returns the stream offset of the last line read, only tracked when reading from an input stream.
+     *
+     * @since 7.0
+     */
+    public long getPosition() {
+        return linePosition;
     }
 
     @Override
     public List<String> readNext() throws IOException {
-        List<String> ret = super.readNext();
+        List<String> ret = input == null ? super.readNext() : readLine();
         if (ret != null && !ret.isEmpty() && ret.get(0).toLowerCase().startsWith(ASSERTION)) {
             return readNext();
         }
         return ret;
     }
+
+    protected List<String> readLine() throws IOException {
+        List<String> ret = null;
+        while (ret == null) {
+            int scanned = 0;
+            int end;
+            while ((end = indexOfNewLine(position + scanned)) < 0) {
+                scanned = limit - position;
+                if (!fill()) {
+                    if (position == limit) {
+                        return null;
+                    }
+                    end = limit;
+                    break;
+                }
+            }
+            ret = parseLine(end, Math.min(end + 1, limit));
+        }
+        return ret;
+    }
+
+    protected int indexOfNewLine(int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the line ending at {@code end}, returns {@code null} for an empty line.
+     */
+    protected List<String> parseLine(int end, int next) {
+        linePosition = offset + position;
+        int start = position;
+        position = next;
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return null;
+        }
+        return csvParser.parse(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads more bytes keeping the current line, returns false at the end of the stream.
+     */
+    protected boolean fill() throws IOException {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            offset += position;
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int count = input.read(buffer, limit, buffer.length - limit);
+        if (count <= 0) {
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (input != null) {
+                input.close();
+            }
+        }
+    }
 }
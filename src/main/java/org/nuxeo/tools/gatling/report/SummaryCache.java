@@ -0,0 +1,451 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the parsed summary of a simulation so unchanged logs are not parsed again.
+ * <p>
+ * The summary is a binary snapshot of the computed {@link SimulationContext}: request stats, duration histograms,
+ * users and timeline, no raw record is kept. It is keyed by the log path, size, modification time and a checksum of
+ * the head and tail of the log, along with the parsing parameters. The summary is written next to the log or in a
+ * cache directory.
+ *
+ * @since 7.0
+ */
+public class SummaryCache {
+    private static final Logger log = LoggerFactory.getLogger(SummaryCache.class);
+
+    protected static final int MAGIC = 0x47525331; // GRS1
+
+    protected static final int VERSION = 2;
+
+    protected static final String EXTENSION = ".summary";
+
+    // bytes read at the head and at the tail of a log to compute its checksum
+    protected static final int SAMPLE_SIZE = 64 * 1024;
+
+    protected static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    protected final File directory;
+
+    /**
+     * @param directory where summaries are written, next to the simulation logs when {@code null}
+     */
+    public SummaryCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the summary of the parser simulation, the log is parsed only when there is no valid summary.
+     */
+    public SimulationContext parse(SimulationParser parser) throws IOException {
+        File summary = getSummaryFile(parser.file);
+        Key key = Key.of(parser);
+        // requests and user events are only available when parsing
+        SimulationContext ret = parser.recordListener == null && !parser.mergeable ? load(summary, key, parser)
+                : null;
+        if (ret != null) {
+            log.info("Using parsed summary " + summary.getAbsolutePath());
+            return ret;
+        }
+        ret = parser.parse();
+        try {
+            store(summary, key, ret);
+        } catch (IOException e) {
+            log.warn("Can not write parsed summary " + summary.getAbsolutePath() + ": " + e.getMessage());
+        }
+        return ret;
+    }
+
+    protected File getSummaryFile(File simulation) {
+        if (directory == null) {
+            return new File(simulation.getAbsolutePath() + EXTENSION);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(simulation.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        return new File(directory, simulation.getName() + "-" + Long.toHexString(crc.getValue()) + EXTENSION);
+    }
+
+    protected SimulationContext load(File summary, Key key, SimulationParser parser) {
+        if (!summary.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(summary), IO_BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(Key.read(in))) {
+                log.debug("Outdated parsed summary " + summary.getAbsolutePath());
+                return null;
+            }
+            return readContext(in, parser);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring invalid parsed summary " + summary.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    protected void store(File summary, Key key, SimulationContext context) throws IOException {
+        if (directory != null) {
+            Files.createDirectories(directory.toPath());
+        }
+        File tmp = new File(summary.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), IO_BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            key.write(out);
+            writeContext(out, context);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), summary.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    protected void writeContext(DataOutputStream out, SimulationContext context) throws IOException {
+        writeString(out, context.simulationName);
+        writeString(out, context.scenarioName);
+        out.writeLong(context.start);
+        out.writeInt(context.maxUsers);
+        out.writeInt(context.users.size());
+        for (Map.Entry<String, SimulationContext.CountMax> entry : context.users.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().maximum);
+        }
+        // each stat is written once, roll-ups and scenarios refer to them by index
+        Map<RequestStat, Integer> indexes = new IdentityHashMap<>();
+        List<RequestStat> stats = new ArrayList<>();
+        indexes.put(context.simStat, 0);
+        stats.add(context.simStat);
+        for (SimulationContext.ScenarioStat scenario : context.scenarios) {
+            for (RequestStat request : scenario.requests) {
+                indexes.computeIfAbsent(request, k -> register(stats, k));
+            }
+        }
+        for (RequestStat request : context.reqStats.values()) {
+            indexes.computeIfAbsent(request, k -> register(stats, k));
+        }
+        out.writeInt(stats.size());
+        for (RequestStat stat : stats) {
+            writeStat(out, stat);
+        }
+        out.writeInt(context.scenarios.size());
+        for (SimulationContext.ScenarioStat scenario : context.scenarios) {
+            writeString(out, scenario.name);
+            out.writeInt(scenario.requests.size());
+            for (RequestStat request : scenario.requests) {
+                out.writeInt(indexes.get(request));
+            }
+        }
+        out.writeInt(context.reqStats.size());
+        for (RequestStat request : context.reqStats.values()) {
+            out.writeInt(indexes.get(request));
+        }
+        writeTimeline(out, context.timeline);
+    }
+
+    protected static int register(List<RequestStat> stats, RequestStat stat) {
+        stats.add(stat);
+        return stats.size() - 1;
+    }
+
+    protected SimulationContext readContext(DataInputStream in, SimulationParser parser) throws IOException {
+        SimulationContext ret = parser.createContext();
+        ret.simulationName = readString(in);
+        ret.scenarioName = readString(in);
+        ret.start = in.readLong();
+        ret.maxUsers = in.readInt();
+        int userCount = in.readInt();
+        for (int i = 0; i < userCount; i++) {
+            SimulationContext.CountMax count = ret.new CountMax();
+            ret.users.put(readString(in), count);
+            count.maximum = in.readInt();
+        }
+        int statCount = in.readInt();
+        List<RequestStat> stats = new ArrayList<>(statCount);
+        for (int i = 0; i < statCount; i++) {
+            stats.add(readStat(in, i == 0 ? ret.simStat : null, ret));
+        }
+        int scenarioCount = in.readInt();
+        for (int i = 0; i < scenarioCount; i++) {
+            String name = readString(in);
+            int scenarioId = ret.getScenarioId(name);
+            int requestCount = in.readInt();
+            List<RequestStat> requests = new ArrayList<>(requestCount);
+            for (int j = 0; j < requestCount; j++) {
+                RequestStat request = stats.get(in.readInt());
+                requests.add(request);
+                ret.scenarioReqStats.put(LongObjectMap.pack(scenarioId, ret.getRequestId(request.request)), request);
+            }
+            ret.scenarios.add(ret.new ScenarioStat(name, requests));
+        }
+        int requestCount = in.readInt();
+        for (int i = 0; i < requestCount; i++) {
+            RequestStat request = stats.get(in.readInt());
+            ret.reqStats.put(request.request, request);
+        }
+        readTimeline(in, ret.timeline);
+        return ret;
+    }
+
+    protected void writeStat(DataOutputStream out, RequestStat stat) throws IOException {
+        writeString(out, stat.simulation);
+        writeString(out, stat.scenario);
+        writeString(out, stat.request);
+        writeString(out, stat.startDate);
+        out.writeLong(stat.start);
+        out.writeLong(stat.end);
+        out.writeLong(stat.count);
+        out.writeLong(stat.successCount);
+        out.writeLong(stat.errorCount);
+        out.writeLong(stat.min);
+        out.writeLong(stat.max);
+        out.writeLong(stat.stddev);
+        out.writeLong(stat.p50);
+        out.writeLong(stat.p90);
+        out.writeLong(stat.p95);
+        out.writeLong(stat.p99);
+        out.writeDouble(stat.rps);
+        out.writeDouble(stat.avg);
+        out.writeDouble(stat.duration);
+        out.writeInt(stat.maxUsers);
+        out.writeInt(stat.apdex.satisfied);
+        out.writeInt(stat.apdex.tolerating);
+        out.writeInt(stat.apdex.frustrated);
+        writeHistogram(out, stat.durations);
+        writeSeries(out, stat.series);
+    }
+
+    /**
+     * Reads a stat into the target or into a new stat of the context when target is {@code null}.
+     */
+    protected RequestStat readStat(DataInputStream in, RequestStat target, SimulationContext context)
+            throws IOException {
+        String simulation = readString(in);
+        String scenario = readString(in);
+        String request = readString(in);
+        RequestStat ret = target;
+        if (ret == null) {
+            ret = new RequestStat(simulation, scenario, request, 0, context.apdexT, context.heapBudget);
+        }
+        ret.simulation = simulation;
+        ret.scenario = scenario;
+        ret.startDate = readString(in);
+        ret.start = in.readLong();
+        ret.end = in.readLong();
+        ret.count = in.readLong();
+        ret.successCount = in.readLong();
+        ret.errorCount = in.readLong();
+        ret.min = in.readLong();
+        ret.max = in.readLong();
+        ret.stddev = in.readLong();
+        ret.p50 = in.readLong();
+        ret.p90 = in.readLong();
+        ret.p95 = in.readLong();
+        ret.p99 = in.readLong();
+        ret.rps = in.readDouble();
+        ret.avg = in.readDouble();
+        ret.duration = in.readDouble();
+        ret.maxUsers = in.readInt();
+        ret.apdex.satisfied = in.readInt();
+        ret.apdex.tolerating = in.readInt();
+        ret.apdex.frustrated = in.readInt();
+        readHistogram(in, ret.durations);
+        readSeries(in, ret.series);
+        return ret;
+    }
+
+    /**
+     * Writes the distinct durations in ascending order with their counts.
+     */
+    protected void writeHistogram(DataOutputStream out, DurationStore durations) throws IOException {
+        List<long[]> bins = new ArrayList<>();
+        try (DurationStore.SortedCursor cursor = durations.sortedCursor()) {
+            long[] bin = null;
+            while (cursor.hasNext()) {
+                long value = cursor.next();
+                if (bin == null || bin[0] != value) {
+                    bin = new long[] { value, 0 };
+                    bins.add(bin);
+                }
+                bin[1]++;
+            }
+        }
+        out.writeInt(bins.size());
+        long previous = 0;
+        for (long[] bin : bins) {
+            Varints.writeVarLong(out, Varints.zigZag(bin[0] - previous));
+            Varints.writeVarLong(out, bin[1]);
+            previous = bin[0];
+        }
+    }
+
+    protected void readHistogram(DataInputStream in, DurationStore target) throws IOException {
+        int size = in.readInt();
+        long[] values = new long[size];
+        long[] counts = new long[size];
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += Varints.unZigZag(Varints.readVarLong(in));
+            values[i] = previous;
+            counts[i] = Varints.readVarLong(in);
+        }
+        target.setHistogram(values, counts);
+    }
+
+    protected void writeSeries(DataOutputStream out, RequestSeries series) throws IOException {
+        out.writeInt(series.bucketMs);
+        out.writeLong(series.origin);
+        out.writeInt(series.last);
+        for (int i = 0; i < series.size(); i++) {
+            Varints.writeVarLong(out, series.completed[i]);
+            Varints.writeVarLong(out, series.durationSums[i]);
+        }
+    }
+
+    protected void readSeries(DataInputStream in, RequestSeries series) throws IOException {
+        if (in.readInt() != series.bucketMs) {
+            throw new IOException("Unexpected series bucket width");
+        }
+        long origin = in.readLong();
+        int last = in.readInt();
+        for (int i = 0; i <= last; i++) {
+            int completed = (int) Varints.readVarLong(in);
+            long sum = Varints.readVarLong(in);
+            if (completed > 0) {
+                int slot = series.slot(origin + i);
+                series.completed[slot] += completed;
+                series.durationSums[slot] += sum;
+            }
+        }
+    }
+
+    protected void writeTimeline(DataOutputStream out, Timeline timeline) throws IOException {
+        out.writeInt(timeline.bucketMs);
+        out.writeBoolean(timeline.initialized);
+        out.writeLong(timeline.origin);
+        out.writeInt(timeline.last);
+        for (int i = 0; i < timeline.size(); i++) {
+            out.writeInt(timeline.userDeltas[i]);
+            out.writeInt(timeline.requestDeltas[i]);
+            out.writeInt(timeline.completed[i]);
+            out.writeInt(timeline.errors[i]);
+            out.writeLong(timeline.durationSums[i]);
+        }
+    }
+
+    protected void readTimeline(DataInputStream in, Timeline timeline) throws IOException {
+        if (in.readInt() != timeline.bucketMs) {
+            throw new IOException("Unexpected timeline bucket width");
+        }
+        timeline.initialized = in.readBoolean();
+        timeline.origin = in.readLong();
+        timeline.last = in.readInt();
+        if (timeline.size() > timeline.userDeltas.length) {
+            timeline.grow(timeline.size());
+        }
+        for (int i = 0; i < timeline.size(); i++) {
+            timeline.userDeltas[i] = in.readInt();
+            timeline.requestDeltas[i] = in.readInt();
+            timeline.completed[i] = in.readInt();
+            timeline.errors[i] = in.readInt();
+            timeline.durationSums[i] = in.readLong();
+        }
+        timeline.compute();
+    }
+
+    protected static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Identifies a simulation log and the parameters used to parse it.
+     */
+    protected record Key(String path, long size, long lastModified, long checksum, String parameters) {
+
+        protected static Key of(SimulationParser parser) throws IOException {
+            String parameters = parser.getClass().getSimpleName() + " apdexT=" + parser.apdexT + " filter="
+                    + parser.filter + " window=" + parser.from + ".." + parser.to;
+            return of(parser.file, parameters);
+        }
+
+        protected static Key of(File file, String parameters) throws IOException {
+            return new Key(file.getAbsolutePath(), file.length(), file.lastModified(), checksum(file), parameters);
+        }
+
+        /**
+         * Checksum of the head and tail of the file, enough to detect a log that has been replaced or appended.
+         */
+        protected static long checksum(File file) throws IOException {
+            CRC32C crc = new CRC32C();
+            byte[] buffer = new byte[SAMPLE_SIZE];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                long length = raf.length();
+                int read = (int) Math.min(SAMPLE_SIZE, length);
+                raf.readFully(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                if (length > SAMPLE_SIZE) {
+                    read = (int) Math.min(SAMPLE_SIZE, length - SAMPLE_SIZE);
+                    raf.seek(length - read);
+                    raf.readFully(buffer, 0, read);
+                    crc.update(buffer, 0, read);
+                }
+            }
+            return crc.getValue();
+        }
+
+        protected void write(DataOutputStream out) throws IOException {
+            out.writeUTF(path);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeLong(checksum);
+            out.writeUTF(parameters);
+        }
+
+        protected static Key read(DataInputStream in) throws IOException {
+            return new Key(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.nuxeo.tools.gatling.report.SummaryCache.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sparse index of a simulation log from record time to position, used to parse only the part of a log covering a
+ * time window.
+ * <p>
+ * The index is built while parsing the whole log. Every {@code interval} records a checkpoint holds the offset of the
+ * record in the uncompressed log, the users running at this point and the time range of the records up to the next
+ * checkpoint. Gzip logs also get {@link GzipCheckpoint}s to start decompressing near a record, along with the offsets
+ * of their gzip members. The state needed by the parser to resume in the middle of the log is kept once for the whole
+ * log. The index is stored next to the log or in a cache directory, it is keyed like the {@link SummaryCache} so a
+ * modified log invalidates it.
+ *
+ * @since 7.0
+ */
+public class TimeIndex {
+    private static final Logger log = LoggerFactory.getLogger(TimeIndex.class);
+
+    protected static final int MAGIC = 0x47525431; // GRT1
+
+    protected static final int VERSION = 1;
+
+    public static final String EXTENSION = ".tidx";
+
+    public static final int DEFAULT_INTERVAL = 10_000;
+
+    protected static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    protected final Key key;
+
+    protected final List<String> scenarios;
+
+    protected final List<Checkpoint> checkpoints;
+
+    // windows are kept compressed
+    protected final List<GzipCheckpoint> gzipCheckpoints;
+
+    protected final long[] members;
+
+    protected final byte[] state;
+
+    protected TimeIndex(Key key, List<String> scenarios, List<Checkpoint> checkpoints,
+            List<GzipCheckpoint> gzipCheckpoints, long[] members, byte[] state) {
+        this.key = key;
+        this.scenarios = scenarios;
+        this.checkpoints = checkpoints;
+        this.gzipCheckpoints = gzipCheckpoints;
+        this.members = members;
+        this.state = state;
+    }
+
+    /**
+     * Returns the index file of a simulation log.
+     *
+     * @param directory where indexes are written, next to the simulation logs when {@code null}
+     */
+    public static File getIndexFile(File simulation, File directory) {
+        if (directory == null) {
+            return new File(simulation.getAbsolutePath() + EXTENSION);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(simulation.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        return new File(directory, simulation.getName() + "-" + Long.toHexString(crc.getValue()) + EXTENSION);
+    }
+
+    protected static Key getKey(SimulationParser parser) throws IOException {
+        return Key.of(parser.file, parser.getClass().getSimpleName());
+    }
+
+    /**
+     * Returns the index of the parser log, {@code null} when it is missing, outdated or invalid.
+     */
+    public static TimeIndex load(File index, SimulationParser parser) {
+        if (!index.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(index), IO_BUFFER_SIZE))) {
+            Key key = getKey(parser);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(Key.read(in))) {
+                log.debug("Outdated time index " + index.getAbsolutePath());
+                return null;
+            }
+            List<String> scenarios = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                scenarios.add(SummaryCache.readString(in));
+            }
+            long[] members = new long[in.readInt()];
+            for (int i = 0; i < members.length; i++) {
+                members[i] = in.readLong();
+            }
+            int count = in.readInt();
+            List<GzipCheckpoint> gzipCheckpoints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long bitOffset = in.readLong();
+                long outOffset = in.readLong();
+                byte[] window = new byte[in.readInt()];
+                in.readFully(window);
+                gzipCheckpoints.add(new GzipCheckpoint(bitOffset, outOffset, window));
+            }
+            count = in.readInt();
+            List<Checkpoint> checkpoints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Checkpoint checkpoint = new Checkpoint(in.readLong(), new int[(int) Varints.readVarLong(in)]);
+                checkpoint.minTime = in.readLong();
+                checkpoint.maxTime = in.readLong();
+                for (int j = 0; j < checkpoint.users.length; j++) {
+                    checkpoint.users[j] = (int) Varints.unZigZag(Varints.readVarLong(in));
+                }
+                checkpoints.add(checkpoint);
+            }
+            byte[] state = new byte[in.readInt()];
+            in.readFully(state);
+            return new TimeIndex(key, scenarios, checkpoints, gzipCheckpoints, members, state);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring invalid time index " + index.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void store(File index) throws IOException {
+        File tmp = new File(index.getAbsolutePath() + ".tmp");
+        if (index.getParentFile() != null) {
+            Files.createDirectories(index.getParentFile().toPath());
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), IO_BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            key.write(out);
+            out.writeInt(scenarios.size());
+            for (String scenario : scenarios) {
+                SummaryCache.writeString(out, scenario);
+            }
+            out.writeInt(members.length);
+            for (long member : members) {
+                out.writeLong(member);
+            }
+            out.writeInt(gzipCheckpoints.size());
+            for (GzipCheckpoint checkpoint : gzipCheckpoints) {
+                out.writeLong(checkpoint.bitOffset());
+                out.writeLong(checkpoint.outOffset());
+                out.writeInt(checkpoint.window().length);
+                out.write(checkpoint.window());
+            }
+            out.writeInt(checkpoints.size());
+            for (Checkpoint checkpoint : checkpoints) {
+                out.writeLong(checkpoint.offset);
+                Varints.writeVarLong(out, checkpoint.users.length);
+                out.writeLong(checkpoint.minTime);
+                out.writeLong(checkpoint.maxTime);
+                for (int users : checkpoint.users) {
+                    Varints.writeVarLong(out, Varints.zigZag(users));
+                }
+            }
+            out.writeInt(state.length);
+            out.write(state);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int size() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Returns the first checkpoint to read so that no record at or after {@code from} is missed, {@link #size()}
+     * when all the records are older.
+     */
+    public int getFirst(long from) {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < checkpoints.size(); i++) {
+            max = Math.max(max, checkpoints.get(i).maxTime);
+            if (max >= from) {
+                return i;
+            }
+        }
+        return checkpoints.size();
+    }
+
+    /**
+     * Returns the checkpoint from which all the records are after {@code to}, {@link #size()} to read until the end
+     * of the log.
+     */
+    public int getEnd(long to) {
+        int ret = checkpoints.size();
+        long min = Long.MAX_VALUE;
+        for (int i = checkpoints.size() - 1; i >= 0; i--) {
+            min = Math.min(min, checkpoints.get(i).minTime);
+            if (min <= to) {
+                break;
+            }
+            ret = i;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of running users per scenario at a checkpoint.
+     */
+    public Map<String, Integer> getUsers(int checkpoint) {
+        Map<String, Integer> ret = new LinkedHashMap<>();
+        int[] users = checkpoints.get(checkpoint).users;
+        for (int i = 0; i < users.length; i++) {
+            if (users[i] != 0) {
+                ret.put(scenarios.get(i), users[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the parser state written by {@link SimulationParser#writeResumeState(DataOutputStream)}.
+     */
+    public DataInputStream getState() {
+        return new DataInputStream(new ByteArrayInputStream(state));
+    }
+
+    /**
+     * Returns true if the log is gzipped with enough checkpoints to be decompressed by regions.
+     *
+     * @since 7.0
+     */
+    public boolean isSplittable() {
+        return gzipCheckpoints.size() > 1;
+    }
+
+    /**
+     * Opens the whole uncompressed log, regions between gzip checkpoints are decompressed concurrently.
+     *
+     * @since 7.0
+     */
+    public InputStream open(File file, int threads) throws IOException {
+        if (!isSplittable()) {
+            return Compression.open(file);
+        }
+        List<Callable<byte[]>> regions = new ArrayList<>(gzipCheckpoints.size());
+        for (int i = 0; i < gzipCheckpoints.size(); i++) {
+            GzipCheckpoint checkpoint = gzipCheckpoints.get(i);
+            long length = i + 1 < gzipCheckpoints.size()
+                    ? gzipCheckpoints.get(i + 1).outOffset() - checkpoint.outOffset() : -1;
+            long nextMember = getNextMember(checkpoint.bitOffset() >>> 3);
+            regions.add(() -> {
+                GzipCheckpoint start = new GzipCheckpoint(checkpoint.bitOffset(), checkpoint.outOffset(),
+                        inflate(checkpoint.window()));
+                try (InputStream in = start.open(file, nextMember)) {
+                    return length < 0 ? in.readAllBytes() : ParallelGzipInputStream.readRegion(in, length);
+                }
+            });
+        }
+        return new ParallelGzipInputStream(regions, threads);
+    }
+
+    /**
+     * Opens the uncompressed log from the {@code first} checkpoint up to the {@code end} checkpoint.
+     */
+    public InputStream open(File file, int first, int end) throws IOException {
+        long start = checkpoints.get(first).offset;
+        InputStream ret;
+        Compression compression = Compression.of(file);
+        if (compression == Compression.NONE) {
+            FileInputStream in = new FileInputStream(file);
+            in.getChannel().position(start);
+            ret = in;
+        } else if (gzipCheckpoints.isEmpty()) {
+            // no checkpoint for this compression, decompress up to the offset
+            ret = compression.open(file, 1);
+            try {
+                ret.skipNBytes(start);
+            } catch (IOException e) {
+                ret.close();
+                throw e;
+            }
+        } else {
+            GzipCheckpoint checkpoint = getGzipCheckpoint(start);
+            ret = checkpoint.open(file, getNextMember(checkpoint.bitOffset() >>> 3));
+            try {
+                ret.skipNBytes(start - checkpoint.outOffset());
+            } catch (IOException e) {
+                ret.close();
+                throw e;
+            }
+        }
+        if (end < checkpoints.size()) {
+            ret = new LimitedInputStream(ret, checkpoints.get(end).offset - start);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the last gzip checkpoint before the offset with its window uncompressed.
+     */
+    protected GzipCheckpoint getGzipCheckpoint(long offset) throws IOException {
+        int low = 0;
+        int high = gzipCheckpoints.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (gzipCheckpoints.get(middle).outOffset() <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        GzipCheckpoint ret = gzipCheckpoints.get(low);
+        return new GzipCheckpoint(ret.bitOffset(), ret.outOffset(), inflate(ret.window()));
+    }
+
+    protected long getNextMember(long offset) {
+        for (long member : members) {
+            if (member > offset) {
+                return member;
+            }
+        }
+        return -1;
+    }
+
+    protected static byte[] deflate(byte[] window) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(window);
+            deflater.finish();
+            ByteArrayOutputStream ret = new ByteArrayOutputStream(window.length / 2 + 16);
+            ret.write(window.length >>> 24);
+            ret.write(window.length >>> 16);
+            ret.write(window.length >>> 8);
+            ret.write(window.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                ret.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return ret.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    protected static byte[] inflate(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            int length = (compressed[0] & 0xFF) << 24 | (compressed[1] & 0xFF) << 16 | (compressed[2] & 0xFF) << 8
+                    | (compressed[3] & 0xFF);
+            byte[] ret = new byte[length];
+            inflater.setInput(compressed, 4, compressed.length - 4);
+            int count = 0;
+            while (count < length && !inflater.finished()) {
+                int read = inflater.inflate(ret, count, length - count);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += read;
+            }
+            if (count != length) {
+                throw new IOException("Invalid time index window");
+            }
+            return ret;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid time index window", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * A record position in the uncompressed log.
+     */
+    protected static class Checkpoint {
+        protected final long offset;
+
+        // running users per scenario
+        protected final int[] users;
+
+        // time range of the records up to the next checkpoint
+        protected long minTime = Long.MAX_VALUE;
+
+        protected long maxTime = Long.MIN_VALUE;
+
+        protected Checkpoint(long offset, int[] users) {
+            this.offset = offset;
+            this.users = users;
+        }
+    }
+
+    /**
+     * Builds the index while a parser reads the whole log.
+     */
+    public static class Builder {
+        protected final SimulationParser parser;
+
+        protected final int interval;
+
+        protected final Map<String, Integer> scenarioIds = new HashMap<>();
+
+        protected final List<String> scenarios = new ArrayList<>();
+
+        protected int[] users = new int[8];
+
+        protected final List<Checkpoint> checkpoints = new ArrayList<>();
+
+        protected Checkpoint current;
+
+        protected int count;
+
+        protected Key key;
+
+        protected GzipIndexer gzip;
+
+        protected final long span;
+
+        public Builder(SimulationParser parser) {
+            this(parser, DEFAULT_INTERVAL);
+        }
+
+        public Builder(SimulationParser parser, int interval) {
+            this(parser, interval, GzipIndexer.DEFAULT_SPAN);
+        }
+
+        /**
+         * @param span uncompressed bytes between gzip checkpoints
+         */
+        public Builder(SimulationParser parser, int interval, long span) {
+            this.parser = parser;
+            this.interval = interval;
+            this.span = span;
+        }
+
+        /**
+         * Opens the uncompressed log, gzip checkpoints are recorded while it is read.
+         */
+        public InputStream open(File file) throws IOException {
+            key = getKey(parser);
+            Compression compression = Compression.of(file);
+            if (compression == Compression.GZIP) {
+                gzip = new GzipIndexer(new FileInputStream(file), span);
+                return gzip;
+            }
+            return compression.open(file, 1);
+        }
+
+        /**
+         * Called before each record with its offset in the uncompressed log.
+         */
+        public void mark(long offset) {
+            if (current == null || count >= interval) {
+                current = new Checkpoint(offset, Arrays.copyOf(users, scenarios.size()));
+                checkpoints.add(current);
+                count = 0;
+            }
+        }
+
+        public void addTime(long timestamp) {
+            count++;
+            if (current != null) {
+                current.minTime = Math.min(current.minTime, timestamp);
+                current.maxTime = Math.max(current.maxTime, timestamp);
+            }
+        }
+
+        public void addUser(String scenario, boolean start, long timestamp) {
+            Integer id = scenarioIds.get(scenario);
+            if (id == null) {
+                id = scenarios.size();
+                scenarios.add(scenario);
+                scenarioIds.put(scenario, id);
+                if (id == users.length) {
+                    users = Arrays.copyOf(users, id * 2);
+                }
+            }
+            users[id] += start ? 1 : -1;
+            addTime(timestamp);
+        }
+
+        public TimeIndex build() throws IOException {
+            ByteArrayOutputStream state = new ByteArrayOutputStream();
+            parser.writeResumeState(new DataOutputStream(state));
+            List<GzipCheckpoint> gzipCheckpoints = new ArrayList<>();
+            long[] members = new long[0];
+            if (gzip != null) {
+                for (GzipCheckpoint checkpoint : gzip.getCheckpoints()) {
+                    gzipCheckpoints.add(new GzipCheckpoint(checkpoint.bitOffset(), checkpoint.outOffset(),
+                            deflate(checkpoint.window())));
+                }
+                members = gzip.getMembers().stream().mapToLong(Long::longValue).toArray();
+            }
+            return new TimeIndex(key, scenarios, checkpoints, gzipCheckpoints, members, state.toByteArray());
+        }
+    }
+
+    /**
+     * Reads up to a number of bytes.
+     */
+    protected static class LimitedInputStream extends FilterInputStream {
+        protected long remaining;
+
+        protected LimitedInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int ret = in.read();
+            if (ret >= 0) {
+                remaining--;
+            }
+            return ret;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int ret = in.read(b, off, (int) Math.min(len, remaining));
+            if (ret > 0) {
+                remaining -= ret;
+            }
+            return ret;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long ret = in.skip(Math.min(n, remaining));
+            remaining -= ret;
+            return ret;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Arrays;
+
+/**
+ * Activity of a simulation over time buckets: active users, in-flight requests, throughput and latency.
+ * <p>
+ * User and request intervals are recorded in difference arrays (+1 on the start bucket, -1 after the end bucket), the
+ * concurrency series are then computed with a single prefix sum sweep. Memory is proportional to the number of buckets,
+ * no state is kept per user or per request. Buckets are aligned on epoch multiples of the bucket width.
+ *
+ * @since 7.0
+ */
+public class Timeline {
+    public static final int DEFAULT_BUCKET_MS = 1000;
+
+    protected static final int INITIAL_CAPACITY = 256;
+
+    protected final int bucketMs;
+
+    // absolute bucket index of the first slot
+    protected long origin;
+
+    protected boolean initialized;
+
+    // last bucket holding an event
+    protected int last = -1;
+
+    protected int[] userDeltas = new int[INITIAL_CAPACITY];
+
+    protected int[] requestDeltas = new int[INITIAL_CAPACITY];
+
+    protected int[] completed = new int[INITIAL_CAPACITY];
+
+    protected int[] errors = new int[INITIAL_CAPACITY];
+
+    protected long[] durationSums = new long[INITIAL_CAPACITY];
+
+    protected int[] activeUsers;
+
+    protected int[] activeRequests;
+
+    protected ChartData chartData = new ChartData();
+
+    public Timeline() {
+        this(DEFAULT_BUCKET_MS);
+    }
+
+    public Timeline(int bucketMs) {
+        this.bucketMs = bucketMs;
+    }
+
+    public int getBucketMs() {
+        return bucketMs;
+    }
+
+    public void addUser(long timestamp) {
+        if (timestamp > 0) {
+            userDeltas[slot(timestamp, 0)]++;
+        }
+    }
+
+    /**
+     * Adds users already running at the timestamp.
+     */
+    public void addUsers(long timestamp, int count) {
+        if (timestamp > 0) {
+            userDeltas[slot(timestamp, 0)] += count;
+        }
+    }
+
+    public void endUser(long timestamp) {
+        if (timestamp > 0) {
+            userDeltas[slot(timestamp, 1)]--;
+        }
+    }
+
+    public void addRequest(long start, long end, boolean success) {
+        if (start <= 0 || end < start) {
+            return;
+        }
+        requestDeltas[slot(start, 0)]++;
+        requestDeltas[slot(end, 1)]--;
+        int slot = slot(end, 0);
+        completed[slot]++;
+        durationSums[slot] += end - start;
+        if (!success) {
+            errors[slot]++;
+        }
+    }
+
+    /**
+     * Adds the activity of another timeline with the same bucket width, concurrency needs to be computed again.
+     */
+    public void merge(Timeline other) {
+        if (other.bucketMs != bucketMs) {
+            throw new IllegalArgumentException("Can not merge timelines of " + other.bucketMs + " and " + bucketMs
+                    + " ms buckets");
+        }
+        if (other.isEmpty()) {
+            return;
+        }
+        // covers the other buckets including the end deltas after its last bucket
+        slot(other.getTime(0), 0);
+        slot(other.getTime(other.last), 1);
+        int offset = (int) (other.origin - origin);
+        int length = Math.min(other.last + 2, other.userDeltas.length);
+        for (int i = 0; i < length; i++) {
+            userDeltas[offset + i] += other.userDeltas[i];
+            requestDeltas[offset + i] += other.requestDeltas[i];
+            completed[offset + i] += other.completed[i];
+            errors[offset + i] += other.errors[i];
+            durationSums[offset + i] += other.durationSums[i];
+        }
+    }
+
+    /**
+     * Sweeps the difference arrays to compute the concurrency series.
+     */
+    public void compute() {
+        int length = size();
+        activeUsers = new int[length];
+        activeRequests = new int[length];
+        int users = 0;
+        int requests = 0;
+        for (int i = 0; i < length; i++) {
+            users += userDeltas[i];
+            requests += requestDeltas[i];
+            activeUsers[i] = users;
+            activeRequests[i] = requests;
+        }
+    }
+
+    public int size() {
+        return last + 1;
+    }
+
+    public boolean isEmpty() {
+        return last < 0;
+    }
+
+    public long getTime(int bucket) {
+        return (origin + bucket) * bucketMs;
+    }
+
+    public int getActiveUsers(int bucket) {
+        return activeUsers[bucket];
+    }
+
+    public int getActiveRequests(int bucket) {
+        return activeRequests[bucket];
+    }
+
+    public int getCompleted(int bucket) {
+        return completed[bucket];
+    }
+
+    public int getErrors(int bucket) {
+        return errors[bucket];
+    }
+
+    public double getThroughput(int bucket) {
+        return completed[bucket] * 1000.0 / bucketMs;
+    }
+
+    /**
+     * Returns the average duration of requests completed in the bucket or {@code NaN} when there is none.
+     */
+    public double getLatency(int bucket) {
+        if (completed[bucket] == 0) {
+            return Double.NaN;
+        }
+        return (double) durationSums[bucket] / completed[bucket];
+    }
+
+    public int getMaxActiveUsers() {
+        return activeUsers == null ? 0 : Arrays.stream(activeUsers).max().orElse(0);
+    }
+
+    public int getMaxActiveRequests() {
+        return activeRequests == null ? 0 : Arrays.stream(activeRequests).max().orElse(0);
+    }
+
+    // JavaScript arrays used by the templates
+
+    /**
+     * Renders the series as literals or as references to a binary payload.
+     */
+    public Timeline setChartData(ChartData chartData) {
+        this.chartData = chartData;
+        return this;
+    }
+
+    /**
+     * Bucket times shifted to the system default zone, so they match the report dates once plotted.
+     */
+    public String getTimes() {
+        return chartData.longs(getLocalTimes(), size());
+    }
+
+    protected long[] getLocalTimes() {
+        long[] ret = new long[size()];
+        ZoneRules rules = ZoneId.systemDefault().getRules();
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = ChartData.toLocalTime(getTime(i), rules);
+        }
+        return ret;
+    }
+
+    public String getUsers() {
+        return chartData.ints(activeUsers, size());
+    }
+
+    public String getRequests() {
+        return chartData.ints(activeRequests, size());
+    }
+
+    public String getRps() {
+        return chartData.floats(throughputs(), size());
+    }
+
+    public String getLatencies() {
+        return chartData.floats(latencies(), size());
+    }
+
+    // multi-resolution series of the WebGL charts
+
+    public String getUsersPyramid() {
+        return chartData.pyramid(getLocalTimes(), toDoubles(activeUsers), null, size());
+    }
+
+    public String getRequestsPyramid() {
+        return chartData.pyramid(getLocalTimes(), toDoubles(activeRequests), null, size());
+    }
+
+    public String getRpsPyramid() {
+        return chartData.pyramid(getLocalTimes(), throughputs(), null, size());
+    }
+
+    public String getLatenciesPyramid() {
+        return chartData.pyramid(getLocalTimes(), latencies(), null, size());
+    }
+
+    protected double[] throughputs() {
+        double[] ret = new double[size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = getThroughput(i);
+        }
+        return ret;
+    }
+
+    protected double[] latencies() {
+        double[] ret = new double[size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = getLatency(i);
+        }
+        return ret;
+    }
+
+    protected double[] toDoubles(int[] values) {
+        double[] ret = new double[size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = values[i];
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the array slot of the bucket containing the timestamp plus an offset, arrays are grown as needed.
+     */
+    protected int slot(long timestamp, int offset) {
+        long bucket = Math.floorDiv(timestamp, bucketMs) + offset;
+        if (!initialized) {
+            origin = bucket - offset;
+            initialized = true;
+        }
+        if (bucket < origin) {
+            shift((int) (origin - bucket));
+        }
+        int ret = (int) (bucket - origin);
+        if (ret >= userDeltas.length) {
+            grow(ret + 1);
+        }
+        last = Math.max(last, ret - offset);
+        return ret;
+    }
+
+    protected void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, userDeltas.length * 2);
+        userDeltas = Arrays.copyOf(userDeltas, capacity);
+        requestDeltas = Arrays.copyOf(requestDeltas, capacity);
+        completed = Arrays.copyOf(completed, capacity);
+        errors = Arrays.copyOf(errors, capacity);
+        durationSums = Arrays.copyOf(durationSums, capacity);
+    }
+
+    protected void shift(int count) {
+        int capacity = Math.max(userDeltas.length, last + 2 + count);
+        userDeltas = shift(userDeltas, count, capacity);
+        requestDeltas = shift(requestDeltas, count, capacity);
+        completed = shift(completed, count, capacity);
+        errors = shift(errors, count, capacity);
+        long[] sums = new long[capacity];
+        System.arraycopy(durationSums, 0, sums, count, Math.min(durationSums.length, capacity - count));
+        durationSums = sums;
+        origin -= count;
+        last += count;
+    }
+
+    protected static int[] shift(int[] values, int count, int capacity) {
+        int[] ret = new int[capacity];
+        System.arraycopy(values, 0, ret, count, Math.min(values.length, capacity - count));
+        return ret;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts a simulation log of any supported format into a compact binary log read by
+ * {@link SimulationParserCompact}.
+ * <p>
+ * The compact log starts with the simulation metadata followed by a stream of records. Scenario and request names
+ * are defined once in a dictionary record then referenced by identifier, timestamps are zigzag varint deltas from the
+ * previous record and request durations are varints.
+ *
+ * @since 7.0
+ */
+public class Transcoder implements SimulationContext.RecordListener, Closeable {
+    protected static final int MAGIC = 0x47524231; // GRB1
+
+    protected static final int VERSION = 1;
+
+    public static final String EXTENSION = ".grb";
+
+    protected static final String[] COMPRESSED_EXTENSIONS = { ".gz", ".zst", ".lz4" };
+
+    protected static final int DEFINE_SCENARIO = 1;
+
+    protected static final int DEFINE_REQUEST = 2;
+
+    protected static final int USER_START = 3;
+
+    protected static final int USER_END = 4;
+
+    protected static final int REQUEST_OK = 5;
+
+    protected static final int REQUEST_KO = 6;
+
+    protected final File file;
+
+    protected final DataOutputStream out;
+
+    protected SimulationContext context;
+
+    protected int scenarioCount;
+
+    protected int requestCount;
+
+    protected long previous;
+
+    public Transcoder(File file) throws IOException {
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    }
+
+    /**
+     * Transcodes a simulation log, returns the parsed simulation.
+     */
+    public static SimulationContext transcode(File simulation, File output) throws IOException {
+        try (Transcoder transcoder = new Transcoder(output)) {
+            return ParserFactory.getParser(simulation).setRecordListener(transcoder).parse();
+        }
+    }
+
+    /**
+     * Returns the name of the compact log of a simulation log.
+     */
+    public static String getTranscodedName(File simulation) {
+        String name = simulation.getName();
+        for (String extension : COMPRESSED_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                name = name.substring(0, name.length() - extension.length());
+                break;
+            }
+        }
+        return name + EXTENSION;
+    }
+
+    @Override
+    public void onRun(SimulationContext context) {
+        this.context = context;
+        previous = context.start;
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeString(out, context.simulationName);
+            writeString(out, context.scenarioName);
+            out.writeLong(context.start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not write " + file, e);
+        }
+    }
+
+    @Override
+    public void onUser(int scenarioId, long timestamp, boolean start) {
+        try {
+            defineScenarios(scenarioId);
+            out.writeByte(start ? USER_START : USER_END);
+            Varints.writeVarLong(out, scenarioId);
+            Varints.writeVarLong(out, Varints.zigZag(timestamp - previous));
+            previous = timestamp;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not write " + file, e);
+        }
+    }
+
+    @Override
+    public void onRequest(int scenarioId, int requestId, long start, long end, boolean success) {
+        try {
+            defineScenarios(scenarioId);
+            while (requestCount <= requestId) {
+                out.writeByte(DEFINE_REQUEST);
+                writeString(out, context.getRequestNames().get(requestCount++));
+            }
+            out.writeByte(success ? REQUEST_OK : REQUEST_KO);
+            Varints.writeVarLong(out, scenarioId);
+            Varints.writeVarLong(out, requestId);
+            Varints.writeVarLong(out, Varints.zigZag(start - previous));
+            Varints.writeVarLong(out, Varints.zigZag(end - start));
+            previous = start;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can not write " + file, e);
+        }
+    }
+
+    protected void defineScenarios(int scenarioId) throws IOException {
+        while (scenarioCount <= scenarioId) {
+            out.writeByte(DEFINE_SCENARIO);
+            writeString(out, context.getScenarioNames().get(scenarioCount++));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (context == null) {
+            throw new IOException("No simulation metadata written to " + file);
+        }
+    }
+
+    /**
+     * Writes a nullable string as its UTF-8 length plus one followed by its bytes, 0 for {@code null}.
+     */
+    protected static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            Varints.writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        Varints.writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+}
@@ -16,15 +16,26 @@
  */
 package org.nuxeo.tools.gatling.report;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.nuxeo.tools.gatling.report.HistoryStore.Column;
+
 public class TrendContext {
 
+    // summary columns read from a history store
+    protected static final Set<Column> HISTORY_COLUMNS = EnumSet.of(Column.AVG, Column.STDDEV, Column.RPS);
+
     protected final String scenario;
 
     protected final TrendStat all = new TrendStat();
@@ -33,6 +44,8 @@ public class TrendContext {
 
     protected List<String> scripts;
 
+    protected ChartData chartData = new ChartData();
+
     public TrendContext(List<SimulationContext> stats) {
         Set<String> names = new HashSet<>();
         List<String> requestNames = getRequestListSorted(stats.get(0));
@@ -44,11 +57,50 @@ public class TrendContext {
         orderedStats.sort((a, b) -> (int) (a.simStat.start - b.simStat.start));
         for (SimulationContext simStat : orderedStats) {
             names.add(simStat.simulationName);
-            all.add(simStat.simStat);
+            long time = simStat.simStat.start;
+            all.add(simStat.simStat, time);
             for (int i = 0; i < requestNames.size(); i++) {
                 String name = requestNames.get(i);
                 RequestStat reqStat = simStat.reqStats.get(name);
-                requests.get(i).add(reqStat);
+                requests.get(i).add(reqStat, time);
+            }
+        }
+        scenario = String.join(" ", names);
+    }
+
+    /**
+     * Builds the trend of the simulation runs recorded in the history, all the runs when simulations is empty.
+     *
+     * @since 7.0
+     */
+    public TrendContext(HistoryStore history, Collection<String> simulations) throws IOException {
+        List<HistoryStore.Summary> summaries = history.read(history.getRuns(simulations), HISTORY_COLUMNS);
+        Set<String> names = new HashSet<>();
+        List<String> requestNames = new ArrayList<>();
+        if (!summaries.isEmpty()) {
+            // the first row is the whole simulation, requests follow sorted by average
+            String[] rows = summaries.get(0).requests();
+            requestNames.addAll(Arrays.asList(rows).subList(1, rows.length));
+            Collections.reverse(requestNames);
+        }
+        for (String requestName : requestNames) {
+            requests.add(new TrendStat());
+        }
+        for (HistoryStore.Summary summary : summaries) {
+            names.add(summary.run().simulation());
+            String startDate = RequestStat.formatDate(summary.run().start());
+            Map<String, Integer> rows = new HashMap<>();
+            for (int row = 0; row < summary.requests().length; row++) {
+                rows.put(summary.requests()[row], row);
+            }
+            all.add(summary, 0, startDate);
+            for (int i = 0; i < requestNames.size(); i++) {
+                Integer row = rows.get(requestNames.get(i));
+                if (row == null) {
+                    requests.get(i).add(null, summary.run().start());
+                } else {
+                    requests.get(i).add(summary, row, startDate);
+                }
             }
         }
         scenario = String.join(" ", names);
@@ -59,6 +111,23 @@ public class TrendContext {
         return this;
     }
 
+    /**
+     * Renders the trend series as literals or as references to a binary payload.
+     *
+     * @since 7.0
+     */
+    public TrendContext setChartData(ChartData chartData) {
+        this.chartData = chartData;
+        return this;
+    }
+
+    /**
+     * @since 7.0
+     */
+    public ChartData getChartData() {
+        return chartData;
+    }
+
     protected List<String> getRequestListSorted(SimulationContext stat) {
         return stat.getRequests().stream().map(s -> s.request).collect(Collectors.toList());
     }
@@ -76,10 +145,16 @@ public class TrendContext {
         protected final List<Double> yvalues = new ArrayList<>();
         protected final List<Long> yerrors = new ArrayList<>();
         protected final List<Double> rps = new ArrayList<>();
+        // run start times in epoch milliseconds
+        protected final List<Long> times = new ArrayList<>();
         protected String name;
         protected Integer indice;
 
-        public void add(RequestStat stat) {
+        /**
+         * Adds the request of a run started at the time, or a gap when the request is {@code null}.
+         */
+        public void add(RequestStat stat, long time) {
+            times.add(time);
             if (stat == null) {
                 xvalues.add(null);
                 yvalues.add(null);
@@ -94,6 +169,67 @@ public class TrendContext {
                 rps.add(stat.rps);
             }
         }
+
+        protected void add(HistoryStore.Summary summary, int row, String startDate) {
+            name = summary.requests()[row];
+            if (indice == null) {
+                indice = RequestStat.statCounter.incrementAndGet();
+            }
+            times.add(summary.run().start());
+            xvalues.add(String.format("'%s'", startDate));
+            yvalues.add(summary.get(Column.AVG, row));
+            yerrors.add((long) summary.get(Column.STDDEV, row));
+            rps.add(summary.get(Column.RPS, row));
+        }
+
+        public String getYvalues() {
+            return render(yvalues);
+        }
+
+        public String getYerrors() {
+            return render(yerrors);
+        }
+
+        public String getRps() {
+            return render(rps);
+        }
+
+        /**
+         * @since 7.0
+         */
+        public String getLatencyPyramid() {
+            return chartData.pyramid(toTimes(), toDoubles(yvalues), toDoubles(yerrors), times.size());
+        }
+
+        /**
+         * @since 7.0
+         */
+        public String getThroughputPyramid() {
+            return chartData.pyramid(toTimes(), toDoubles(rps), null, times.size());
+        }
+
+        /**
+         * Run start times shifted to the system default zone, so they match the report dates once plotted.
+         */
+        protected long[] toTimes() {
+            return times.stream().mapToLong(ChartData::toLocalTime).toArray();
+        }
+
+        protected double[] toDoubles(List<? extends Number> values) {
+            double[] ret = new double[values.size()];
+            for (int i = 0; i < ret.length; i++) {
+                Number value = values.get(i);
+                ret[i] = value == null ? Double.NaN : value.doubleValue();
+            }
+            return ret;
+        }
+
+        protected String render(List<? extends Number> values) {
+            if (chartData.isInline()) {
+                return values.toString();
+            }
+            return chartData.floats(toDoubles(values), values.size());
+        }
     }
 
 }
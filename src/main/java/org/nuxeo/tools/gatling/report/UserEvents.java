@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2025 Nuxeo SA (http://nuxeo.com/) and contributors.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser General Public License
+ * (LGPL) version 2.1 which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl-2.1.html
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.tools.gatling.report;
+
+import java.util.Arrays;
+
+/**
+ * User starts and ends of a simulation in log order, kept in primitive arrays to replay the concurrency of several
+ * logs merged on their timestamps.
+ *
+ * @since 7.0
+ */
+public class UserEvents {
+    protected static final int INITIAL_CAPACITY = 256;
+
+    protected long[] times = new long[INITIAL_CAPACITY];
+
+    // scenario id shifted left, the low bit is set for a start
+    protected int[] events = new int[INITIAL_CAPACITY];
+
+    protected int size;
+
+    public void add(long timestamp, int scenarioId, boolean start) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+        }
+        times[size] = timestamp;
+        events[size] = (scenarioId << 1) | (start ? 1 : 0);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public int getScenarioId(int index) {
+        return events[index] >>> 1;
+    }
+
+    public boolean isStart(int index) {
+        return (events[index] & 1) != 0;
+    }
+}
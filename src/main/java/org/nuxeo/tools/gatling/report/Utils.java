@@ -18,7 +18,6 @@ package org.nuxeo.tools.gatling.report;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
@@ -29,15 +28,14 @@ import java.io.Reader;
 import java.net.Authenticator;
 import java.net.MalformedURLException;
 import java.net.PasswordAuthentication;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.zip.GZIPInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class Utils {
 
-    protected static final String GZ = "gz";
     private static final Logger log = LoggerFactory.getLogger(Utils.class);
 
     public static void setBasicAuth(String user, String password) {
@@ -54,11 +52,12 @@ public class Utils {
     public static String getBaseUrl(String url) {
         URL targetUrl;
         try {
-            targetUrl = new URL(url);
-        } catch (MalformedURLException e) {
+            targetUrl = URI.create(url).toURL();
+        } catch (MalformedURLException | IllegalArgumentException e) {
             throw new IllegalArgumentException("Malformed URL: " + url, e);
         }
-        return targetUrl.getProtocol() + "://" + targetUrl.getHost();
+        String port = targetUrl.getPort() < 0 ? "" : ":" + targetUrl.getPort();
+        return targetUrl.getProtocol() + "://" + targetUrl.getHost() + port;
     }
 
     public static void download(URL src, File dest) throws IOException {
@@ -95,10 +94,20 @@ public class Utils {
     }
 
     public static Reader getReaderFor(File file) throws IOException {
-        if (GZ.equals(getFileExtension(file))) {
-            InputStream fileStream = new FileInputStream(file);
-            InputStream gzipStream = new GZIPInputStream(fileStream);
-            return new InputStreamReader(gzipStream, "UTF-8");
+        return getReaderFor(file, ParallelGzipInputStream.DEFAULT_THREADS);
+    }
+
+    /**
+     * Compressed files are detected from their first bytes, gzip members are decompressed with up to {@code threads}
+     * threads.
+     *
+     * @since 7.0
+     */
+    public static Reader getReaderFor(File file, int threads) throws IOException {
+        Compression compression = Compression.of(file);
+        if (compression != Compression.NONE) {
+            InputStream stream = compression.open(file, threads);
+            return new InputStreamReader(stream, "UTF-8");
         }
         return new FileReader(file);
     }
@@ -0,0 +1,109 @@
+// Decodes the chart data payload into typed arrays: gzip, then for each array a type byte,
+// a little endian int32 length and the values.
+function onReportData(callback) {
+  function decode(buffer) {
+    var view = new DataView(buffer);
+    var ret = [];
+    var offset = 0;
+    while (offset < buffer.byteLength) {
+      var type = view.getUint8(offset);
+      var length = view.getInt32(offset + 1, true);
+      var size = type === 3 ? 8 : 4;
+      var values = buffer.slice(offset + 5, offset + 5 + length * size);
+      ret.push(type === 1 ? new Int32Array(values) : type === 2 ? new Float32Array(values) : new Float64Array(values));
+      offset += 5 + length * size;
+    }
+    return ret;
+  }
+  document.addEventListener('DOMContentLoaded', function () {
+    var element = document.getElementById('report-data');
+    var encoded = (window.reportData || (element && element.textContent) || '').trim();
+    if (!encoded) {
+      // series are rendered as literals
+      callback([]);
+      return;
+    }
+    var bytes = Uint8Array.from(atob(encoded), function (c) { return c.charCodeAt(0); });
+    var stream = new Blob([bytes]).stream().pipeThrough(new DecompressionStream('gzip'));
+    new Response(stream).arrayBuffer().then(decode).then(callback);
+  });
+}
+
+// Multi-resolution series: an array of levels from the coarsest to the full resolution,
+// each level is an array of x, y and optional errors sorted on x.
+function pyramidTrace(levels, trace) {
+  var level = levels[0];
+  trace.x = level[0];
+  trace.y = level[1];
+  if (level.length > 2) {
+    trace.error_y = Object.assign({}, trace.error_y, {array: level[2]});
+  }
+  return trace;
+}
+
+// Plots the finest level having at most budget points in the zoomed range, pyramids are
+// indexed like the traces of the chart, null for the traces to keep.
+function zoomPyramids(div, pyramids, budget) {
+  function toTime(value) {
+    if (typeof value === 'number') {
+      return value;
+    }
+    var date = String(value).trim();
+    if (date.indexOf(' ') < 0 && date.indexOf('T') < 0) {
+      date += ' 00:00';
+    }
+    return Date.parse(date.replace(' ', 'T') + 'Z');
+  }
+  function lowerBound(values, x) {
+    var low = 0, high = values.length;
+    while (low < high) {
+      var middle = (low + high) >>> 1;
+      if (values[middle] < x) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+  function select(levels, x0, x1) {
+    for (var i = levels.length - 1; i >= 0; i--) {
+      var level = levels[i];
+      var first = lowerBound(level[0], x0);
+      var last = lowerBound(level[0], x1);
+      if (last - first <= budget || i === 0) {
+        // one more point on each side so lines cross the edges
+        first = Math.max(0, first - 1);
+        last = Math.min(level[0].length, last + 1);
+        return level.map(function (values) { return Array.prototype.slice.call(values, first, last); });
+      }
+    }
+  }
+  div.on('plotly_relayout', function (event) {
+    var x0 = -Infinity, x1 = Infinity;
+    if (event['xaxis.range[0]'] !== undefined) {
+      x0 = toTime(event['xaxis.range[0]']);
+      x1 = toTime(event['xaxis.range[1]']);
+    } else if (event['xaxis.range']) {
+      x0 = toTime(event['xaxis.range'][0]);
+      x1 = toTime(event['xaxis.range'][1]);
+    } else if (!event['xaxis.autorange']) {
+      return;
+    }
+    var update = {x: [], y: [], 'error_y.array': []};
+    var indices = [];
+    pyramids.forEach(function (levels, i) {
+      if (levels) {
+        var level = select(levels, x0, x1);
+        update.x.push(level[0]);
+        update.y.push(level[1]);
+        update['error_y.array'].push(level[2]);
+        indices.push(i);
+      }
+    });
+    if (!update['error_y.array'].some(function (errors) { return errors; })) {
+      delete update['error_y.array'];
+    }
+    Plotly.restyle(div, update, indices);
+  });
+}
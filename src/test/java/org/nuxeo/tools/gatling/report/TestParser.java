@@ -17,11 +17,34 @@
 package org.nuxeo.tools.gatling.report;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class TestParser {
     protected static final String SIM_SMALL_V2_1 = "simulation-small.log";
@@ -34,6 +57,8 @@ public class TestParser {
 
     protected static final String SIM_SMALL_V3_3 = "simulation-small-v3.3.log";
 
+    protected static final String SIM_SMALL_MULTI_V3_2 = "simulation-small-multi-v3.2.log";
+
     protected static final String SIM_V3_2_GZ = "simulation-v3.2.log.gz";
 
     protected static final String SIM_GZ = "simulation-1.log.gz";
@@ -48,6 +73,9 @@ public class TestParser {
 
     protected static final String SIM_V3_13_GZ = "simulation-v3.13.log.gz";
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void parseSimpleSimulationVersion21() throws Exception {
         SimulationContext ret = ParserFactory.getParser(getResourceFile(SIM_SMALL_V2_1)).parse();
@@ -144,6 +172,482 @@ public class TestParser {
         Assert.assertTrue(ret.toString().contains("_all"));
     }
 
+    @Test
+    public void parseRequestsPerScenario() throws Exception {
+        SimulationContext ret = ParserFactory.getParser(getResourceFile(SIM_SMALL_MULTI_V3_2)).parse();
+        Assert.assertEquals(5, ret.getSimStat().getCount());
+        Assert.assertEquals(3, ret.getRequests().size());
+        Assert.assertEquals(2, ret.getScenarios().size());
+        RequestStat login = ret.reqStats.get("Login");
+        Assert.assertEquals(3, login.getCount());
+        Assert.assertEquals("Browse Upload", login.scenario);
+        Assert.assertEquals(3, login.maxUsers);
+        for (SimulationContext.ScenarioStat scenario : ret.getScenarios()) {
+            RequestStat scenarioLogin = scenario.getRequests()
+                                                .stream()
+                                                .filter(request -> "Login".equals(request.request))
+                                                .findFirst()
+                                                .orElseThrow();
+            if ("Browse".equals(scenario.getName())) {
+                Assert.assertEquals(2, scenario.getMaxUsers());
+                Assert.assertEquals(2, scenarioLogin.getCount());
+            } else {
+                Assert.assertEquals(1, scenario.getMaxUsers());
+                Assert.assertEquals(1, scenarioLogin.getCount());
+            }
+        }
+        // the roll-up reads the durations of the scenarios instead of copying them
+        Assert.assertTrue(login.durations.isMerged());
+        RequestStat copy = new RequestStat("sim", "scn", "Login", 0, null);
+        ret.getScenarios()
+           .forEach(scenario -> scenario.getRequests()
+                                        .stream()
+                                        .filter(request -> "Login".equals(request.request))
+                                        .forEach(copy::merge));
+        copy.computeStat(login.duration, login.maxUsers);
+        Assert.assertEquals(copy.durations.toString(), login.durations.toString());
+        Assert.assertEquals(List.of(copy.min, copy.p50, copy.p95, copy.max, copy.stddev),
+                List.of(login.min, login.p50, login.p95, login.max, login.stddev));
+        Assert.assertEquals(copy.avg, login.avg, 0.001);
+        Assert.assertEquals(copy.apdex.getScore(), login.apdex.getScore(), 0.001);
+        // adding a merged store adds the durations it reads
+        DurationStore added = new DurationStore();
+        added.addAll(login.durations);
+        Assert.assertEquals(login.durations.toString(), added.toString());
+    }
+
+    @Test
+    public void parseWithFilter() throws Exception {
+        SimulationContext ret = ParserFactory.getParser(getResourceFile(SIM_SMALL_MULTI_V3_2))
+                                             .setFilter(RequestFilter.of(List.of("^(Login|Upload)"),
+                                                     List.of("file"), null))
+                                             .parse();
+        Assert.assertEquals(3, ret.getSimStat().getCount());
+        Assert.assertEquals(1, ret.getRequests().size());
+        Assert.assertEquals("Login", ret.getRequests().get(0).request);
+
+        ret = ParserFactory.getParser(getResourceFile(SIM_SMALL_MULTI_V3_2))
+                           .setFilter(RequestFilter.of(null, null, List.of("Upload")))
+                           .parse();
+        Assert.assertEquals(2, ret.getSimStat().getCount());
+        Assert.assertEquals(1, ret.getScenarios().size());
+        Assert.assertEquals(1, ret.getSimStat().maxUsers);
+        Assert.assertNull(RequestFilter.of(List.of(), null, null));
+    }
+
+    @Test
+    public void parseTimeline() throws Exception {
+        SimulationContext ret = ParserFactory.getParser(getResourceFile(SIM_SMALL_MULTI_V3_2)).parse();
+        Timeline timeline = ret.getTimeline();
+        Assert.assertEquals(2, timeline.size());
+        Assert.assertEquals(3, timeline.getMaxActiveUsers());
+        Assert.assertEquals(1, timeline.getActiveUsers(1));
+        Assert.assertEquals(5, timeline.getActiveRequests(0));
+        Assert.assertEquals(1, timeline.getActiveRequests(1));
+        Assert.assertEquals(4, timeline.getCompleted(0));
+        Assert.assertEquals(1, timeline.getErrors(1));
+        Assert.assertEquals(1000.0, timeline.getLatency(1), 0.01);
+    }
+
+    @Test
+    public void parseWithSpilledDurations() throws Exception {
+        SimulationContext inMemory = ParserFactory.getParser(getResourceFile(SIM_V3_5_GZ)).parse();
+        SimulationContext spilled = ParserFactory.getParser(getResourceFile(SIM_V3_5_GZ))
+                                                 .setMaxHeapBudget(16 * 1024)
+                                                 .parse();
+        Assert.assertTrue(spilled.getSimStat().durations.isSpilled());
+        Assert.assertEquals(inMemory.toString(), spilled.toString());
+        spilled.release();
+        Assert.assertFalse(spilled.getSimStat().durations.isSpilled());
+    }
+
+    @Test
+    public void mergeSpilledRunsByTier() throws Exception {
+        // 128 durations are spilled when adding the next one
+        DurationStore store = DurationStore.of(new HeapBudget(1024));
+        Random random = new Random(42);
+        long sum = 0;
+        for (int i = 0; i < 128 * (DurationStore.MAX_MERGE_FAN_IN * DurationStore.MAX_MERGE_FAN_IN + 4); i++) {
+            long duration = random.nextInt(100000);
+            store.add(duration);
+            sum += duration;
+        }
+        Assert.assertEquals(List.of(2, 0, 0, 0), store.runs.stream().map(DurationStore.Run::tier).toList());
+        long count = 0;
+        long previous = 0;
+        long total = 0;
+        try (DurationStore.SortedCursor cursor = store.sortedCursor()) {
+            while (cursor.hasNext()) {
+                long value = cursor.next();
+                Assert.assertTrue(value >= previous);
+                previous = value;
+                total += value;
+                count++;
+            }
+        }
+        Assert.assertEquals(store.count(), count);
+        Assert.assertEquals(sum, total);
+
+        List<File> runs = store.runs.stream().map(DurationStore.Run::file).toList();
+        Assert.assertTrue(runs.stream().allMatch(File::isFile));
+        store.release();
+        Assert.assertTrue(runs.stream().noneMatch(File::exists));
+    }
+
+    @Test
+    public void shareHeapBudgetConcurrently() throws Exception {
+        HeapBudget budget = new HeapBudget(16 * 1024);
+        List<DurationStore> stores = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            DurationStore store = DurationStore.of(budget);
+            stores.add(store);
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    store.add(j % 1000);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (DurationStore store : stores) {
+            Assert.assertTrue(store.isSpilled());
+            long count = 0;
+            long total = 0;
+            try (DurationStore.SortedCursor cursor = store.sortedCursor()) {
+                while (cursor.hasNext()) {
+                    total += cursor.next();
+                    count++;
+                }
+            }
+            Assert.assertEquals(100000, count);
+            Assert.assertEquals(100 * 999 * 1000 / 2, total);
+            store.release();
+        }
+        Assert.assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void parseWithSummaryCache() throws Exception {
+        for (String resource : List.of(SIM_SMALL_MULTI_V3_2, SIM_V3_13_GZ)) {
+            File log = new File(folder.getRoot(), resource);
+            Files.copy(getResourceFile(resource).toPath(), log.toPath());
+            SummaryCache cache = new SummaryCache(new File(folder.getRoot(), "cache"));
+            SimulationContext parsed = cache.parse(ParserFactory.getParser(log));
+            File summary = cache.getSummaryFile(log);
+            Assert.assertTrue(summary.isFile());
+
+            SimulationParser parser = ParserFactory.getParser(log);
+            SimulationContext loaded = cache.load(summary, SummaryCache.Key.of(parser), parser);
+            Assert.assertNotNull(loaded);
+            Assert.assertEquals(parsed.toString(), loaded.toString());
+            Assert.assertEquals(parsed.getSimStat().durations.toString(), loaded.getSimStat().durations.toString());
+            Assert.assertEquals(parsed.getScenarios().size(), loaded.getScenarios().size());
+            Assert.assertEquals(parsed.getTimeline().getUsers(), loaded.getTimeline().getUsers());
+            Assert.assertEquals(parsed.getTimeline().getLatencies(), loaded.getTimeline().getLatencies());
+
+            // restored durations are expanded within the heap budget
+            parser = ParserFactory.getParser(log).setMaxHeapBudget(1024);
+            loaded = cache.load(summary, SummaryCache.Key.of(parser), parser);
+            Assert.assertNotNull(loaded.heapBudget);
+            for (RequestStat request : loaded.getRequests()) {
+                Assert.assertSame(loaded.heapBudget, request.durations.budget);
+            }
+
+            // parameters and file changes invalidate the summary
+            parser = ParserFactory.getParser(log, 0.5f);
+            Assert.assertNull(cache.load(summary, SummaryCache.Key.of(parser), parser));
+            Assert.assertTrue(log.setLastModified(log.lastModified() - 10000));
+            parser = ParserFactory.getParser(log);
+            Assert.assertNull(cache.load(summary, SummaryCache.Key.of(parser), parser));
+        }
+    }
+
+    @Test
+    public void exportRecords() throws Exception {
+        File file = new File(folder.getRoot(), "simulation.records");
+        SimulationContext context;
+        try (RecordWriter records = new RecordWriter(file, 1000)) {
+            context = ParserFactory.getParser(getResourceFile(SIM_V3_5_GZ)).setRecordListener(records).parse();
+            records.setContext(context);
+        }
+        RequestStat simStat = context.getSimStat();
+        try (RecordReader reader = new RecordReader(file)) {
+            Assert.assertEquals(simStat.getCount(), reader.getCount());
+            Assert.assertTrue(reader.getBlockCount() > 2);
+            long[] totals = new long[3];
+            reader.scan(EnumSet.of(RecordWriter.Column.DURATION, RecordWriter.Column.SUCCESS), batch -> {
+                Assert.assertNull(batch.getStarts());
+                for (int i = 0; i < batch.size(); i++) {
+                    totals[0] += batch.getDurations()[i];
+                    totals[1] += batch.getSuccess()[i] ? 0 : 1;
+                }
+            });
+            Assert.assertEquals(simStat.durations.sum(), totals[0]);
+            Assert.assertEquals(simStat.errorCount, totals[1]);
+
+            // a time range only reads overlapping blocks
+            long from = simStat.start + (simStat.end - simStat.start) / 3;
+            long to = from + 10000;
+            long[] expected = new long[1];
+            reader.scan(EnumSet.of(RecordWriter.Column.START), batch -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.getStarts()[i] >= from && batch.getStarts()[i] <= to) {
+                        expected[0]++;
+                    }
+                }
+            });
+            long[] ranged = new long[2];
+            reader.scan(from, to, EnumSet.of(RecordWriter.Column.REQUEST), batch -> {
+                ranged[0] += batch.size();
+                ranged[1]++;
+                Assert.assertNotNull(reader.getRequestNames().get(batch.getRequestIds()[0]));
+            });
+            Assert.assertEquals(expected[0], ranged[0]);
+            Assert.assertTrue(ranged[1] < reader.getBlockCount());
+        }
+    }
+
+    @Test
+    public void parseTranscodedSimulation() throws Exception {
+        for (String resource : List.of(SIM_V2_3, SIM_SMALL_MULTI_V3_2, SIM_V3_5_GZ, SIM_V3_13)) {
+            File file = getResourceFile(resource);
+            File compact = new File(folder.getRoot(), Transcoder.getTranscodedName(file));
+            SimulationContext expected = Transcoder.transcode(file, compact);
+            SimulationParser parser = ParserFactory.getParser(compact);
+            Assert.assertTrue(parser instanceof SimulationParserCompact);
+            SimulationContext ret = parser.parse();
+            Assert.assertEquals(expected.toString(), ret.toString());
+            Assert.assertEquals(expected.getTimeline().getUsers(), ret.getTimeline().getUsers());
+            Assert.assertEquals(expected.getScenarios().size(), ret.getScenarios().size());
+        }
+    }
+
+    @Test
+    public void parseWithTimeIndex() throws Exception {
+        for (String resource : List.of(SIM_V2_3, SIM_V3_2_GZ, SIM_V3_5_GZ)) {
+            File log = new File(folder.getRoot(), resource);
+            Files.copy(getResourceFile(resource).toPath(), log.toPath());
+            File indexFile = TimeIndex.getIndexFile(log, null);
+            // the index is built by a full parse
+            SimulationContext expected = ParserFactory.getParser(log).parse();
+            SimulationContext ret = ParserFactory.getParser(log).setTimeIndex(indexFile, 100).parse();
+            Assert.assertTrue(indexFile.isFile());
+            Assert.assertEquals(expected.toString(), ret.toString());
+
+            RequestStat simStat = expected.getSimStat();
+            long from = simStat.start + (simStat.end - simStat.start) / 2;
+            long to = from + (simStat.end - simStat.start) / 4;
+            TimeIndex index = TimeIndex.load(indexFile, ParserFactory.getParser(log));
+            Assert.assertNotNull(index);
+            Assert.assertTrue(index.getFirst(from) > 0);
+            Assert.assertTrue(index.getEnd(to) < index.size());
+
+            // the window is parsed from the closest checkpoint with the same result as a full scan
+            SimulationContext scan = ParserFactory.getParser(log).setTimeWindow(from, to).parse();
+            ret = ParserFactory.getParser(log).setTimeWindow(from, to).setTimeIndex(indexFile).parse();
+            Assert.assertTrue(scan.getSimStat().getCount() > 0);
+            Assert.assertTrue(scan.getSimStat().getCount() < simStat.getCount());
+            Assert.assertEquals(scan.toString(), ret.toString());
+            Assert.assertEquals(scan.getTimeline().getUsers(), ret.getTimeline().getUsers());
+
+            // a modified log invalidates the index
+            Assert.assertTrue(log.setLastModified(log.lastModified() - 10000));
+            Assert.assertNull(TimeIndex.load(indexFile, ParserFactory.getParser(log)));
+        }
+    }
+
+    @Test
+    public void parseGzipRegionsConcurrently() throws Exception {
+        for (String resource : List.of(SIM_V3_2_GZ, SIM_V3_5_GZ)) {
+            File log = new File(folder.getRoot(), resource);
+            Files.copy(getResourceFile(resource).toPath(), log.toPath());
+            File indexFile = TimeIndex.getIndexFile(log, null);
+            SimulationContext expected = ParserFactory.getParser(log).parse();
+            ParserFactory.getParser(log).setTimeIndex(indexFile, 1000, 64 * 1024).parse();
+            TimeIndex index = TimeIndex.load(indexFile, ParserFactory.getParser(log));
+            Assert.assertNotNull(index);
+            Assert.assertTrue(index.isSplittable());
+
+            byte[] content;
+            try (InputStream in = new GZIPInputStream(new FileInputStream(log))) {
+                content = in.readAllBytes();
+            }
+            try (InputStream in = index.open(log, 4)) {
+                Assert.assertArrayEquals(content, in.readAllBytes());
+            }
+            SimulationContext ret = ParserFactory.getParser(log).setTimeIndex(indexFile).setThreads(4).parse();
+            Assert.assertEquals(expected.toString(), ret.toString());
+            Assert.assertEquals(expected.getTimeline().getUsers(), ret.getTimeline().getUsers());
+        }
+    }
+
+    @Test
+    public void parseMultiMemberGzip() throws Exception {
+        byte[] content;
+        try (InputStream in = new GZIPInputStream(new FileInputStream(getResourceFile(SIM_V3_2_GZ)))) {
+            content = in.readAllBytes();
+        }
+        // like pigz or concatenated gzip files, with trailing zeros
+        File log = new File(folder.getRoot(), "simulation-members.log.gz");
+        try (OutputStream out = new FileOutputStream(log)) {
+            for (int offset = 0; offset < content.length; offset += 50_000) {
+                GZIPOutputStream member = new GZIPOutputStream(out);
+                member.write(content, offset, Math.min(50_000, content.length - offset));
+                member.finish();
+            }
+            out.write(new byte[8]);
+        }
+        try (InputStream in = GzipMembers.open(log, 4)) {
+            Assert.assertArrayEquals(content, in.readAllBytes());
+        }
+        SimulationContext expected = ParserFactory.getParser(getResourceFile(SIM_V3_2_GZ)).parse();
+        SimulationContext ret = ParserFactory.getParser(log).setThreads(4).parse();
+        Assert.assertEquals(expected.toString().replace(getResourceFile(SIM_V3_2_GZ).getAbsolutePath(),
+                log.getAbsolutePath()), ret.toString());
+    }
+
+    @Test
+    public void parseZstdAndLz4() throws Exception {
+        for (String resource : List.of(SIM_V3_5_GZ, SIM_V3_13)) {
+            File source = getResourceFile(resource);
+            byte[] content;
+            try (InputStream in = Compression.open(source)) {
+                content = in.readAllBytes();
+            }
+            SimulationContext expected = ParserFactory.getParser(source).parse();
+            for (Compression compression : List.of(Compression.ZSTD, Compression.LZ4)) {
+                // detected from the content, not from the name
+                File log = new File(folder.getRoot(), compression + "-" + resource.replace(".gz", ""));
+                try (OutputStream out = compression == Compression.ZSTD
+                        ? new ZstdCompressorOutputStream(new FileOutputStream(log))
+                        : new FramedLZ4CompressorOutputStream(new FileOutputStream(log))) {
+                    out.write(content);
+                }
+                Assert.assertEquals(compression, Compression.of(log));
+                SimulationParser parser = ParserFactory.getParser(log);
+                Assert.assertEquals(ParserFactory.getParser(source).getClass(), parser.getClass());
+                SimulationContext ret = parser.parse();
+                Assert.assertEquals(expected.getSimStat().toString(), ret.getSimStat().toString());
+                Assert.assertEquals(expected.getRequests().size(), ret.getRequests().size());
+            }
+        }
+    }
+
+    @Test
+    public void parseArchive() throws Exception {
+        List<String> resources = List.of(SIM_V2_3, SIM_V3_5_GZ, SIM_V3_13);
+        File tar = folder.newFile("results.tar.gz");
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tar)))) {
+            out.putArchiveEntry(new TarArchiveEntry("./results/"));
+            out.closeArchiveEntry();
+            for (String resource : resources) {
+                File source = getResourceFile(resource);
+                out.putArchiveEntry(new TarArchiveEntry(source, "./results/" + resource.replace("simulation-", "run-")
+                        + "/simulation.log" + (resource.endsWith(".gz") ? ".gz" : "")));
+                Files.copy(source.toPath(), out);
+                out.closeArchiveEntry();
+            }
+            out.putArchiveEntry(new TarArchiveEntry(getResourceFile(SIM_V3_13), "./results/README"));
+            Files.copy(getResourceFile(SIM_V3_13).toPath(), out);
+            out.closeArchiveEntry();
+        }
+        File zip = folder.newFile("results.zip");
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(new FileOutputStream(zip))) {
+            for (String resource : resources) {
+                out.putArchiveEntry(new ZipArchiveEntry(resource));
+                Files.copy(getResourceFile(resource).toPath(), out);
+                out.closeArchiveEntry();
+            }
+        }
+        Assert.assertTrue(SimulationArchive.isArchive(tar));
+        Assert.assertTrue(SimulationArchive.isArchive(zip));
+        Assert.assertFalse(SimulationArchive.isArchive(getResourceFile(SIM_V3_5_GZ)));
+
+        // all the simulation logs are discovered in one pass
+        for (File file : List.of(tar, zip)) {
+            List<SimulationContext> contexts = new ArrayList<>();
+            new SimulationArchive(file).select(file.getPath())
+                                       .read(null, (selection, parser) -> contexts.add(parser.parse()));
+            Assert.assertEquals(resources.size(), contexts.size());
+            for (int i = 0; i < resources.size(); i++) {
+                SimulationContext expected = ParserFactory.getParser(getResourceFile(resources.get(i))).parse();
+                Assert.assertEquals(expected.getSimStat().toString(), contexts.get(i).getSimStat().toString());
+                Assert.assertEquals(expected.getRequests().size(), contexts.get(i).getRequests().size());
+            }
+        }
+
+        // selected entries
+        String selected = tar.getPath() + "!/results/run-v3.13.log/simulation.log";
+        List<String> selections = new ArrayList<>();
+        List<SimulationContext> contexts = new ArrayList<>();
+        new SimulationArchive(tar).select(selected)
+                                  .select(tar.getPath() + "!/results/missing/simulation.log")
+                                  .read(null, (selection, parser) -> {
+                                      selections.add(selection);
+                                      contexts.add(parser.parse());
+                                  });
+        Assert.assertEquals(List.of(selected), selections);
+        SimulationContext expected = ParserFactory.getParser(getResourceFile(SIM_V3_13)).parse();
+        Assert.assertEquals(expected.getSimStat().toString(), contexts.get(0).getSimStat().toString());
+    }
+
+    @Test
+    public void mergeInjectorLogs() throws Exception {
+        // logs where requests are not attributed to a scenario through their user
+        for (String resource : List.of(SIM_V3_5_GZ, SIM_V2_3)) {
+            File source = getResourceFile(resource);
+            List<String> lines;
+            try (InputStream in = Compression.open(source)) {
+                lines = List.of(new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n"));
+            }
+            // records dispatched to injectors in turn, each log starts with the run record
+            int injectors = 3;
+            int run = lines.get(0).startsWith("RUN") ? 0 : 1;
+            List<StringBuilder> logs = new ArrayList<>();
+            for (int i = 0; i < injectors; i++) {
+                logs.add(new StringBuilder());
+                for (int j = 0; j <= run; j++) {
+                    logs.get(i).append(lines.get(j)).append('\n');
+                }
+            }
+            for (int j = run + 1; j < lines.size(); j++) {
+                logs.get(j % injectors).append(lines.get(j)).append('\n');
+            }
+            List<File> files = new ArrayList<>();
+            for (int i = 0; i < injectors; i++) {
+                File log = new File(folder.getRoot(), "injector-" + i + "-" + resource.replace(".gz", ""));
+                Files.writeString(log.toPath(), logs.get(i));
+                files.add(log);
+            }
+            SimulationContext expected = ParserFactory.getParser(source).parse();
+            // without limit, then with a budget shared by the logs and the merged simulation
+            for (HeapBudget budget : Arrays.asList(null, new HeapBudget(16 * 1024))) {
+                // logs are parsed concurrently like App does
+                List<SimulationContext> contexts = files.parallelStream().map(log -> {
+                    try {
+                        return ParserFactory.getParser(log).setMergeable(true).setHeapBudget(budget).parse();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).toList();
+                // merged stats read the stores of the logs, they are only computed once merged
+                Assert.assertTrue(contexts.get(0).getRequests().isEmpty());
+                SimulationContext ret = SimulationContext.merge("merged", contexts, budget);
+                Assert.assertTrue(ret.getSimStat().durations.isMerged());
+                Assert.assertEquals(expected.toString(), ret.toString());
+                Assert.assertEquals(expected.getTimeline().getUsers(), ret.getTimeline().getUsers());
+                Assert.assertEquals(expected.getTimeline().getRequests(), ret.getTimeline().getRequests());
+                Assert.assertEquals(expected.getTimeline().getLatencies(), ret.getTimeline().getLatencies());
+                ret.release();
+                Assert.assertTrue(contexts.get(0).getSimStat().durations.released);
+            }
+        }
+    }
+
     protected File getResourceFile(String filename) throws FileNotFoundException {
         ClassLoader classLoader = getClass().getClassLoader();
         if (classLoader.getResource(filename) == null) {
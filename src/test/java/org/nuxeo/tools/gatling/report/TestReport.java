@@ -16,19 +16,46 @@
  */
 package org.nuxeo.tools.gatling.report;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 
 public class TestReport {
 
@@ -38,6 +65,9 @@ public class TestReport {
     protected static final List<String> SIMS_GZ = Arrays.asList("simulation.log.1.gz", "simulation.log.2.gz",
             "simulation.log.3.gz", "simulation.log.4.gz", "simulation-v3.13.log.gz");
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void generateSimulationReport() throws Exception {
         List<SimulationContext> stats = Collections.singletonList(ParserFactory.getParser(getResourceFile(SIM_GZ)).parse());
@@ -48,6 +78,354 @@ public class TestReport {
         Assert.assertTrue(writer.toString().contains("sim50bench"));
     }
 
+    @Test
+    public void generateBoxStatistics() throws Exception {
+        RequestStat stat = new RequestStat("sim", "scn", "req", 0, null);
+        for (int i = 1; i <= 100; i++) {
+            stat.add(i, 2 * i, true);
+        }
+        stat.add(1, 1001, true);
+        stat.add(1, 2001, true);
+        stat.computeStat(1);
+        BoxStat box = stat.getBox();
+        Assert.assertEquals(25.8, box.getQ1(), 0);
+        Assert.assertEquals(51.5, box.getMedian(), 0);
+        Assert.assertEquals(77.3, box.getQ3(), 0);
+        Assert.assertEquals(1, box.getLowerFence(), 0);
+        Assert.assertEquals(100, box.getUpperFence(), 0);
+        Assert.assertEquals("[1000,2000]", box.getOutliers());
+        for (int i = 0; i < 10; i++) {
+            stat.add(1, 3001 + i, true);
+        }
+        stat.computeStat(1);
+        // extremes are kept when outliers are capped
+        Assert.assertEquals("[1000,3004,3009]", BoxStat.of(stat.durations, stat.avg, stat.stddev, 3).getOutliers());
+
+        // the report holds the box statistics, not every duration
+        SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        Writer writer = new StringWriter();
+        new Report(Collections.singletonList(context)).setWriter(writer).create();
+        String report = writer.toString();
+        Assert.assertTrue(report.contains("q1: [" + context.getSimStat().getBox().getQ1() + "]"));
+        Assert.assertFalse(report.contains(context.getSimStat().durations.toString()));
+    }
+
+    @Test
+    public void generateReportWithChartData() throws Exception {
+        SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        String users = context.getTimeline().getUsers();
+        Writer writer = new StringWriter();
+        new Report(Collections.singletonList(context)).setWriter(writer)
+                                                      .setChartData(ChartData.Mode.EMBEDDED)
+                                                      .create();
+        String report = writer.toString();
+        Assert.assertFalse(report.contains(users));
+        // a single level of times and users as the series is under the point budget
+        Assert.assertTrue(report.contains("[[payload[0],payload[1]]],"));
+        String encoded = report.replaceAll("(?s).*<script id=\"report-data\" type=\"application/octet-stream\">",
+                "").replaceAll("(?s)</script>.*", "");
+        ByteBuffer payload;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+            payload = ByteBuffer.wrap(in.readAllBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        // times then users
+        Assert.assertEquals(ChartData.FLOAT64, payload.get());
+        int size = context.getTimeline().size();
+        Assert.assertEquals(size, payload.getInt());
+        payload.position(payload.position() + size * Double.BYTES);
+        Assert.assertEquals(ChartData.FLOAT32, payload.get());
+        Assert.assertEquals(size, payload.getInt());
+        for (int i = 0; i < size; i++) {
+            Assert.assertEquals(context.getTimeline().getActiveUsers(i), payload.getFloat(), 0);
+        }
+
+        // payload written next to the report
+        File dir = folder.newFolder();
+        new Report(Collections.singletonList(context)).setOutputDirectory(dir)
+                                                      .setChartData(ChartData.Mode.FILE)
+                                                      .create();
+        Assert.assertTrue(new File(dir, "index.data.js").isFile());
+        String html = Files.readString(new File(dir, "index.html").toPath());
+        Assert.assertTrue(html.contains("<script src=\"index.data.js\"></script>"));
+    }
+
+    @Test
+    public void writePrecompressedReport() throws Exception {
+        SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        File dir = folder.newFolder();
+        Set<Compression> compressions = EnumSet.of(Compression.GZIP, Compression.ZSTD);
+        new Report(Collections.singletonList(context)).setOutputDirectory(dir)
+                                                      .setChartData(ChartData.Mode.FILE)
+                                                      .setPrecompression(compressions)
+                                                      .create();
+        for (String name : List.of("index.html", "index.data.js")) {
+            byte[] expected = Files.readAllBytes(new File(dir, name).toPath());
+            for (Compression compression : compressions) {
+                File variant = PrecompressedOutputStream.getVariant(new File(dir, name), compression);
+                Assert.assertEquals(compression, Compression.of(variant));
+                try (InputStream in = Compression.open(variant)) {
+                    Assert.assertArrayEquals(expected, in.readAllBytes());
+                }
+            }
+        }
+
+        // reports share a single copy of an asset named after its content
+        File assets = new File(folder.getRoot(), "assets");
+        URL src = getClass().getResource("/html/chart-data.js");
+        String first = new Report(Collections.singletonList(context)).setOutputDirectory(folder.newFolder())
+                                                                     .setAssetDirectory(assets)
+                                                                     .setPrecompression(compressions)
+                                                                     .getOrCreateAsset(src, "chart-data.js");
+        String second = new Report(Collections.singletonList(context)).setOutputDirectory(folder.newFolder())
+                                                                      .setAssetDirectory(assets)
+                                                                      .getOrCreateAsset(src, "chart-data.js");
+        Assert.assertEquals(first, second);
+        Assert.assertTrue(first, first.matches("\\.\\./assets/chart-data-[0-9a-f]{16}\\.js"));
+        Assert.assertEquals(3, assets.list().length);
+        try (InputStream in = src.openStream()) {
+            Assert.assertArrayEquals(in.readAllBytes(), Files.readAllBytes(new File(dir, first).toPath()));
+        }
+    }
+
+    @Test
+    public void downloadGraphiteImages() throws Exception {
+        Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/dashboard/load/test", exchange -> respond(exchange, 200,
+                "{\"state\":{\"graphs\":[[\"t1\",{\"title\":\"CPU\"},\"/render?target=cpu\"],"
+                        + "[\"t2\",{\"title\":\"Memory\"},\"/render?target=mem\"]]}}"));
+        server.createContext("/render", exchange -> {
+            String target = exchange.getRequestURI().getQuery().replaceAll("target=(\\w+).*", "$1");
+            int hit = hits.computeIfAbsent(target, k -> new AtomicInteger()).incrementAndGet();
+            // the first render of the memory fails and is retried
+            respond(exchange, "mem".equals(target) && hit == 1 ? 503 : 200, "png " + target);
+        });
+        server.start();
+        try {
+            SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+            String url = "http://localhost:" + server.getAddress().getPort() + "/dashboard/#test";
+            File cache = folder.newFolder();
+            for (int i = 0; i < 2; i++) {
+                File dir = folder.newFolder();
+                Graphite graphite = Graphite.of(url, null, null, context, dir, ZoneId.of("UTC"), cache);
+                Assert.assertEquals(2, graphite.getImages().size());
+                Assert.assertEquals("png cpu",
+                        Files.readString(new File(dir, graphite.getImages().get(0).filename).toPath()));
+            }
+            // the second report reads the images from the cache
+            Assert.assertEquals(1, hits.get("cpu").get());
+            Assert.assertEquals(2, hits.get("mem").get());
+            // the HTML and YAML reports of a simulation share its images
+            File dir = folder.newFolder();
+            for (boolean yaml : List.of(false, true)) {
+                new Report(List.of(context)).setOutputDirectory(dir)
+                                            .includeGraphite(url, null, null, ZoneId.of("UTC"))
+                                            .yamlReport(yaml)
+                                            .setFilename(yaml ? "index.yml" : "index.html")
+                                            .create();
+            }
+            Assert.assertEquals(2, hits.get("cpu").get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    protected static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void shareComputedRequests() throws Exception {
+        SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        List<RequestStat> requests = context.getRequests();
+        Assert.assertSame(requests, context.getRequests());
+        Assert.assertThrows(UnsupportedOperationException.class, () -> requests.remove(0));
+        for (int i = 1; i < requests.size(); i++) {
+            Assert.assertTrue(requests.get(i - 1).avg <= requests.get(i).avg);
+        }
+        RequestStat request = requests.get(0);
+        Assert.assertSame(request.average(), request.average());
+        Assert.assertEquals(String.format(Locale.ENGLISH, "%.1f", request.rps), request.throughput());
+
+        DiffContext diff = new DiffContext(Arrays.asList(context, context));
+        Assert.assertSame(diff.getDiffRequests(), diff.getDiffRequests());
+        Assert.assertEquals(requests.size(), diff.getDiffRequests().size());
+    }
+
+    @Test
+    public void generateMultiPageReport() throws Exception {
+        SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        File dir = folder.newFolder();
+        new Report(Collections.singletonList(context)).setOutputDirectory(dir)
+                                                      .setChartData(ChartData.Mode.FILE)
+                                                      .multiPage(true)
+                                                      .create();
+        String overview = Files.readString(new File(dir, "index.html").toPath());
+        Assert.assertFalse(overview.contains("type: 'box'"));
+        List<RequestStat> requests = context.getRequests();
+        for (int i = 0; i < requests.size(); i++) {
+            String name = "index-request-" + (i + 1);
+            Assert.assertTrue(overview.contains("<a href=\"" + name + ".html\">" + requests.get(i).request + "</a>"));
+            String page = Files.readString(new File(dir, name + ".html").toPath());
+            Assert.assertTrue(page.contains("<h1>" + requests.get(i).request + "</h1>"));
+            Assert.assertTrue(page.contains("<script src=\"" + Report.DEFAULT_CDN_SCRIPT + "\"></script>"));
+            Assert.assertTrue(page.contains("<script src=\"" + name + ".data.js\"></script>"));
+            Assert.assertTrue(new File(dir, name + ".data.js").isFile());
+        }
+    }
+
+    @Test
+    public void downsampleTimeSeries() throws Exception {
+        int length = 10000;
+        long[] x = new long[length];
+        double[] y = new double[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = 1000L * i;
+            y[i] = i % 100 == 0 ? Double.NaN : 10;
+        }
+        y[4321] = 500;
+        int[] indices = Downsampler.lttb(x, y, length, 100);
+        Assert.assertEquals(100, indices.length);
+        Assert.assertEquals(1, indices[0]);
+        Assert.assertEquals(length - 1, indices[99]);
+        Assert.assertTrue(Arrays.stream(indices).anyMatch(i -> i == 4321));
+        Assert.assertTrue(Arrays.stream(indices).noneMatch(i -> Double.isNaN(y[i])));
+        for (int i = 1; i < indices.length; i++) {
+            Assert.assertTrue(indices[i - 1] < indices[i]);
+        }
+
+        // levels of 100, 400, 1600 and 6400 points then the full resolution
+        String pyramid = new ChartData().setPoints(100).pyramid(x, y, null, length);
+        Assert.assertEquals(5, pyramid.split("\\],\\[\\[").length);
+        Assert.assertTrue(pyramid.endsWith(",10.0,10.0]]]"));
+        Assert.assertEquals("[[[0,1000],[10.0,null]]]",
+                new ChartData().pyramid(x, new double[] { 10, Double.NaN }, null, 2));
+
+        // per request series follow the simulation timeline
+        SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        Timeline timeline = context.getTimeline();
+        long completed = 0;
+        for (RequestStat request : context.getRequests()) {
+            RequestSeries series = request.getSeries();
+            for (int i = 0; i < series.size(); i++) {
+                completed += series.getCompleted(i);
+            }
+        }
+        Assert.assertEquals(context.simStat.count, completed);
+        int total = 0;
+        for (int i = 0; i < timeline.size(); i++) {
+            total += timeline.getCompleted(i);
+        }
+        Assert.assertEquals(total, completed);
+        Writer writer = new StringWriter();
+        new Report(Collections.singletonList(context)).setWriter(writer).create();
+        Assert.assertTrue(writer.toString().contains("type: 'scattergl'"));
+    }
+
+    @Test
+    public void reuseCompiledTemplates() throws Exception {
+        List<SimulationContext> stats = Collections.singletonList(
+                ParserFactory.getParser(getResourceFile(SIM_GZ)).parse());
+        Report report = new Report(stats);
+        Assert.assertSame(report.getMustache(), new Report(stats).getMustache());
+
+        File template = folder.newFile("custom.mustache");
+        Files.writeString(template.toPath(),
+                "{{#requests}}{{request}}: {{#boxTask}}{{median}}{{/boxTask}}\n{{/requests}}");
+        Writer writer = new StringWriter();
+        new Report(stats).setTemplate(template.getAbsolutePath()).setWriter(writer).create();
+        RequestStat first = stats.get(0).getRequests().get(0);
+        Assert.assertTrue(writer.toString().startsWith(first.request + ": " + first.getBox().getMedian() + "\n"));
+        report.setTemplate(template.getAbsolutePath());
+        Assert.assertSame(report.getMustache(),
+                new Report(stats).setTemplate(template.getAbsolutePath()).getMustache());
+
+        // compiled again once modified
+        Files.writeString(template.toPath(), "{{simStat.count}}");
+        Assert.assertTrue(template.setLastModified(template.lastModified() + 2000));
+        writer = new StringWriter();
+        new Report(stats).setTemplate(template.getAbsolutePath()).setWriter(writer).create();
+        Assert.assertEquals(String.valueOf(stats.get(0).simStat.count), writer.toString());
+    }
+
+    @Test
+    public void writeJsonReport() throws Exception {
+        SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        Writer writer = new StringWriter();
+        new JsonReport(Collections.singletonList(context)).write(writer);
+        JSONObject root = (JSONObject) new JSONParser().parse(writer.toString());
+        Assert.assertEquals("simulation", root.get("type"));
+        JSONObject simulation = (JSONObject) root.get("simulation");
+        JSONObject stat = (JSONObject) simulation.get("stat");
+        Assert.assertEquals(context.simStat.count, stat.get("count"));
+        Assert.assertEquals(context.simStat.p95, ((JSONObject) stat.get("percentiles")).get("p95"));
+        JSONArray requests = (JSONArray) simulation.get("requests");
+        Assert.assertEquals(context.getRequests().size(), requests.size());
+        JSONObject request = (JSONObject) requests.get(0);
+        Assert.assertEquals(context.getRequests().get(0).request, request.get("request"));
+        Assert.assertEquals(context.getRequests().get(0).avg, (Double) request.get("avg"), 0);
+        JSONObject series = (JSONObject) request.get("series");
+        Assert.assertEquals(context.getRequests().get(0).series.size(), ((JSONArray) series.get("time")).size());
+        JSONObject timeline = (JSONObject) simulation.get("timeline");
+        Assert.assertEquals(context.timeline.size(), ((JSONArray) timeline.get("users")).size());
+
+        // diff and trend
+        SimulationContext other = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        writer = new StringWriter();
+        new JsonReport(Arrays.asList(context, other)).write(writer);
+        root = (JSONObject) new JSONParser().parse(writer.toString());
+        Assert.assertEquals("diff", root.get("type"));
+        Assert.assertEquals(0.0, (Double) ((JSONObject) root.get("simulation")).get("avg"), 0);
+        writer = new StringWriter();
+        new JsonReport(Arrays.asList(context, other, context)).write(writer);
+        root = (JSONObject) new JSONParser().parse(writer.toString());
+        Assert.assertEquals("trend", root.get("type"));
+        JSONArray runs = (JSONArray) ((JSONObject) root.get("simulation")).get("runs");
+        Assert.assertEquals(3, runs.size());
+        Assert.assertEquals(context.simStat.start, ((JSONObject) runs.get(0)).get("start"));
+
+        // escaping and non finite values
+        writer = new StringWriter();
+        try (JsonWriter json = new JsonWriter(writer)) {
+            json.beginArray().value("a\"\\\n\u0001").value(Double.NaN).beginObject().endObject().endArray();
+        }
+        Assert.assertEquals("[\"a\\\"\\\\\\n\\u0001\",null,{}]", writer.toString());
+        Assert.assertEquals(Report.Format.JSON, Report.Format.of(" json"));
+    }
+
+    @Test
+    public void writeCsvLikeToString() throws Exception {
+        SimulationContext context = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        String expected = RequestStat.header() + System.lineSeparator() + context + System.lineSeparator();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(out)) {
+            writer.writeHeader().write(context);
+        }
+        Assert.assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+
+        out = new ByteArrayOutputStream();
+        try (CsvWriter writer = new CsvWriter(out, true)) {
+            writer.write(context);
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            Assert.assertEquals(context + System.lineSeparator(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        // ties, signs and values out of the fast path are formatted like %.2f
+        for (double value : new double[] { 0.125, 1.005, 2.675, -0.001, -0.0, -0.125, 0.045, 12345678.125, 1e20,
+                Double.NaN, Double.NEGATIVE_INFINITY, (float) 0.9 }) {
+            out = new ByteArrayOutputStream();
+            try (CsvWriter writer = new CsvWriter(out)) {
+                writer.writeDecimal(value);
+            }
+            Assert.assertEquals(String.format(Locale.ENGLISH, "%.2f", value), out.toString(StandardCharsets.UTF_8));
+        }
+    }
+
     @Test
     public void generateSimulationReport313() throws Exception {
 
@@ -75,6 +453,46 @@ public class TestReport {
         Assert.assertTrue(writer.toString().contains("Trend report"));
     }
 
+    @Test
+    public void generateTrendReportFromHistory() throws Exception {
+        List<SimulationContext> stats = new ArrayList<>(SIMS_GZ.size());
+        for (String file : SIMS_GZ) {
+            stats.add(ParserFactory.getParser(getResourceFile(file)).parse());
+        }
+        File file = new File(folder.getRoot(), "history.bin");
+        HistoryStore history = HistoryStore.open(file);
+        for (SimulationContext stat : stats) {
+            Assert.assertTrue(history.append(stat));
+        }
+        Assert.assertFalse(history.append(stats.get(0)));
+
+        history = HistoryStore.open(file);
+        Assert.assertEquals(SIMS_GZ.size(), history.getRuns(null).size());
+        // runs are read from the index, segments not indexed are read from the history
+        Assert.assertEquals(SIMS_GZ.size(), history.indexedRuns);
+        File copy = new File(folder.getRoot(), "copy.bin");
+        File index = new File(folder.getRoot(), "copy.bin.idx");
+        Files.copy(file.toPath(), copy.toPath());
+        byte[] indexBytes = Files.readAllBytes(new File(folder.getRoot(), "history.bin.idx").toPath());
+        Files.write(index.toPath(), Arrays.copyOf(indexBytes, indexBytes.length - 3));
+        HistoryStore first = HistoryStore.open(copy);
+        HistoryStore second = HistoryStore.open(copy);
+        Assert.assertEquals(SIMS_GZ.size() - 1, first.indexedRuns);
+        Assert.assertEquals(history.getRuns(null).stream().map(HistoryStore.Run::start).toList(),
+                first.getRuns(null).stream().map(HistoryStore.Run::start).toList());
+        // a store reads the runs appended by another one before appending
+        SimulationContext extra = ParserFactory.getParser(getResourceFile(SIM_GZ)).parse();
+        Assert.assertTrue(first.append(extra));
+        Assert.assertFalse(second.append(extra));
+        Assert.assertEquals(SIMS_GZ.size() + 1, second.getRuns(null).size());
+        Assert.assertEquals(SIMS_GZ.size() + 1, HistoryStore.open(copy).indexedRuns);
+        Assert.assertEquals(new TrendContext(stats).all.yvalues, new TrendContext(history, null).all.yvalues);
+
+        Writer writer = new StringWriter();
+        new Report(Collections.emptyList()).setHistory(history).setWriter(writer).create();
+        Assert.assertTrue(writer.toString().contains("Trend report"));
+    }
+
     protected File getResourceFile(String filename) throws FileNotFoundException {
         ClassLoader classLoader = getClass().getClassLoader();
         if (classLoader.getResource(filename) == null) {